@@ -32,9 +32,14 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
 
 import org.jbehave.core.failures.BatchFailures;
 
@@ -53,15 +58,119 @@ public interface Gherkin {
 		// boolean enabled() default true;
 	}
 
+	/**
+	 * <p>
+	 * The timings recorded for a story, its scenarios, and their steps while it was performed. The
+	 * start and end times come from {@link System#nanoTime()}, so they're only meaningful relative
+	 * to each other.
+	 * </p>
+	 */
+	public static final class Timing {
+
+		public static enum Kind {
+			//
+			STORY, //
+			SCENARIO, //
+			STEP, //
+			//
+			;
+		}
+
+		// In order of increasing severity, such that a parent's outcome is its worst child's
+		public static enum Outcome {
+			//
+			SUCCESSFUL, //
+			NOT_PERFORMED, //
+			PENDING, //
+			FAILED, //
+			//
+			;
+		}
+
+		private final Kind kind;
+		private final String name;
+		private final long start;
+		private final long end;
+		private final Outcome outcome;
+		private final Throwable failure;
+		private final List<Timing> children;
+
+		public Timing(Kind kind, String name, long start, long end, Outcome outcome, Throwable failure,
+			List<Timing> children) {
+			this.kind = Objects.requireNonNull(kind, "Must provide the kind of element timed");
+			this.name = name;
+			this.start = start;
+			this.end = Math.max(start, end);
+			this.outcome = Objects.requireNonNull(outcome, "Must provide the outcome");
+			this.failure = failure;
+			this.children = ((children != null) && !children.isEmpty())
+				? Collections.unmodifiableList(new ArrayList<>(children))
+				: Collections.emptyList();
+		}
+
+		public Kind getKind() {
+			return this.kind;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public long getStartNanos() {
+			return this.start;
+		}
+
+		public long getEndNanos() {
+			return this.end;
+		}
+
+		public long getDurationNanos() {
+			return this.end - this.start;
+		}
+
+		public Outcome getOutcome() {
+			return this.outcome;
+		}
+
+		public Throwable getFailure() {
+			return this.failure;
+		}
+
+		public List<Timing> getChildren() {
+			return this.children;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Timing [kind=%s, name=%s, duration=%dns, outcome=%s, children=%d]", this.kind,
+				this.name, getDurationNanos(), this.outcome, this.children.size());
+		}
+	}
+
 	public static abstract class Result<STORY> {
 
 		protected final STORY story;
-		protected final String output;
+		protected final byte[] output;
+		protected final Charset charset;
 		protected final Collection<Throwable> failures;
+		protected final Timing timing;
+		private volatile String text = null;
 
 		public Result(STORY story, String output, BatchFailures failures) {
+			this(story, (output != null ? output : "").getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8,
+				failures);
+			this.text = output;
+		}
+
+		public Result(STORY story, byte[] output, Charset charset, BatchFailures failures) {
+			this(story, output, charset, failures, null);
+		}
+
+		public Result(STORY story, byte[] output, Charset charset, BatchFailures failures, Timing timing) {
 			this.story = story;
-			this.output = output;
+			this.timing = timing;
+			this.output = (output != null ? output : new byte[0]);
+			this.charset = Objects.requireNonNull(charset, "Must provide the output's charset");
 			this.failures = Collections.unmodifiableCollection(new ArrayList<>(failures.values()));
 		}
 
@@ -71,19 +180,123 @@ public interface Gherkin {
 			return this.story;
 		}
 
+		/**
+		 * <p>
+		 * Returns the output as text, decoding it on the first call. Callers which only need to pass
+		 * the output along should use {@link #getOutputBytes()} instead.
+		 * </p>
+		 */
 		public final String getOutput() {
+			String text = this.text;
+			if (text == null) {
+				text = render(this.output, this.charset);
+				this.text = text;
+			}
+			return text;
+		}
+
+		/**
+		 * <p>
+		 * Renders the raw output as text, for {@link #getOutput()}. Formats which aren't text should
+		 * override this to render their output in a human-readable form.
+		 * </p>
+		 */
+		protected String render(byte[] output, Charset charset) {
+			return new String(output, charset);
+		}
+
+		public String getContentType() {
+			return "text/plain";
+		}
+
+		/**
+		 * <p>
+		 * Returns {@code true} if the {@link #getOutputBytes() raw output} isn't text.
+		 * </p>
+		 */
+		public boolean isBinary() {
+			return false;
+		}
+
+		/**
+		 * <p>
+		 * Returns the raw output, encoded with {@link #getCharset()}. The array is not copied, so it
+		 * must not be modified.
+		 * </p>
+		 */
+		public final byte[] getOutputBytes() {
 			return this.output;
 		}
 
+		public final Charset getCharset() {
+			return this.charset;
+		}
+
 		public final Collection<Throwable> getFailures() {
 			return this.failures;
 		}
+
+		/**
+		 * <p>
+		 * Returns the timings recorded while the story was performed, or {@code null} if they weren't
+		 * requested.
+		 * </p>
+		 */
+		public final Timing getTiming() {
+			return this.timing;
+		}
 	}
 
+	/**
+	 * <p>
+	 * A story which has been parsed and had its steps resolved, such that it can be performed as
+	 * many times as needed with only the step execution itself being repeated. Instances are not
+	 * thread-safe, and should only be performed by the thread that prepared them.
+	 * </p>
+	 */
+	public static interface PreparedStory {
+
+		public default Result<?> perform() throws Exception {
+			return perform(null, null);
+		}
+
+		public default Result<?> perform(Runnable interruptChecker, Function<String, Object> variables)
+			throws Exception {
+			return perform(interruptChecker, variables, false);
+		}
+
+		/**
+		 * <p>
+		 * Perform the story. If {@code recordTimings} is {@code true}, the result will also carry the
+		 * {@link Timing timings} for the story, each of its scenarios, and their steps. Recording them
+		 * has a (small) cost, so it should only be requested when they'll be used.
+		 * </p>
+		 */
+		public Result<?> perform(Runnable interruptChecker, Function<String, Object> variables, boolean recordTimings)
+			throws Exception;
+
+	}
+
+	public PreparedStory prepareStory(String name, String story) throws Exception;
+
 	public default Result<?> runStory(String name, String story) throws Exception {
 		return runStory(name, story, null);
 	}
 
-	public Result<?> runStory(String name, String story, Runnable interruptChecker) throws Exception;
+	public default Result<?> runStory(String name, String story, Runnable interruptChecker) throws Exception {
+		return runStory(name, story, interruptChecker, null);
+	}
+
+	/**
+	 * <p>
+	 * Run the given story. If a {@code variables} resolver is given, any <code>${name}</code>
+	 * placeholders left in the story's step parameters will be resolved through it as each step is
+	 * executed, which allows the same (parsed) story to be re-used with different values.
+	 * </p>
+	 */
+	public default Result<?> runStory(String name, String story, Runnable interruptChecker,
+		Function<String, Object> variables) throws Exception {
+		return prepareStory(name, story).perform(interruptChecker, variables);
+	}
 
 }
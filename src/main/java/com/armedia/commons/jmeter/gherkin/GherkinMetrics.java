@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.armedia.commons.jmeter.tools.JSR223Script;
+
+/**
+ * <p>
+ * Counters for what the Gherkin engines do internally, which can be published through JMX. The
+ * counters are {@link LongAdder}s, so the threads recording into them don't contend with each
+ * other. The windowed values are computed lazily: the window (60 seconds, unless set through the
+ * {@link #WINDOW} system property) is only rolled over when they're read, so if they're read less
+ * often than that, the last window will have lasted as long as it took for them to be read again.
+ * </p>
+ */
+public class GherkinMetrics implements GherkinMetricsMBean {
+
+	public static enum Counter {
+		//
+		STORY_PARSES, //
+		STORY_PARSE_NANOS, //
+		STEP_SCAN_NANOS, //
+		CANDIDATE_STEPS, //
+		INTERPOLATIONS, //
+		INTERPOLATION_NANOS, //
+		RUNS, //
+		FAILURES, //
+		PENDING_STEPS, //
+		OUTPUT_BYTES, //
+		//
+		;
+
+		private static final Counter[] VALUES = Counter.values();
+	}
+
+	public static final String DOMAIN = "com.armedia.commons.jmeter.gherkin";
+	public static final String WINDOW = "gherkin.metricsWindow";
+	private static final int DEFAULT_WINDOW = 60;
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS
+		.toNanos(Math.max(1, Integer.getInteger(GherkinMetrics.WINDOW, GherkinMetrics.DEFAULT_WINDOW)));
+
+	/**
+	 * <p>
+	 * Metrics which aren't published anywhere, for engines which weren't given any.
+	 * </p>
+	 */
+	public static final GherkinMetrics NULL = new GherkinMetrics();
+
+	private static final Logger LOG = LoggerFactory.getLogger(GherkinMetrics.class);
+
+	public static GherkinMetrics safe(GherkinMetrics metrics) {
+		return (metrics != null ? metrics : GherkinMetrics.NULL);
+	}
+
+	private final LongAdder[] counters = new LongAdder[Counter.VALUES.length];
+	private final long window;
+	private final LongSupplier ticker;
+
+	private long windowStart;
+	private long[] windowBase;
+	private long[] lastWindow = new long[Counter.VALUES.length];
+	private long lastWindowLength = 0;
+
+	private ObjectName name = null;
+
+	public GherkinMetrics() {
+		this(GherkinMetrics.WINDOW_NANOS, System::nanoTime);
+	}
+
+	GherkinMetrics(long window, LongSupplier ticker) {
+		for (int i = 0; i < this.counters.length; i++) {
+			this.counters[i] = new LongAdder();
+		}
+		this.window = window;
+		this.ticker = Objects.requireNonNull(ticker, "Must provide a ticker");
+		this.windowStart = ticker.getAsLong();
+		this.windowBase = new long[Counter.VALUES.length];
+	}
+
+	public void add(Counter counter, long value) {
+		this.counters[counter.ordinal()].add(value);
+	}
+
+	public void increment(Counter counter) {
+		this.counters[counter.ordinal()].increment();
+	}
+
+	public long get(Counter counter) {
+		return this.counters[counter.ordinal()].sum();
+	}
+
+	public synchronized long getRecent(Counter counter) {
+		roll();
+		return this.lastWindow[counter.ordinal()];
+	}
+
+	private void roll() {
+		final long now = this.ticker.getAsLong();
+		if ((now - this.windowStart) < this.window) { return; }
+		final long[] current = new long[this.counters.length];
+		for (int i = 0; i < current.length; i++) {
+			current[i] = this.counters[i].sum();
+			this.lastWindow[i] = current[i] - this.windowBase[i];
+		}
+		this.windowBase = current;
+		this.lastWindowLength = now - this.windowStart;
+		this.windowStart = now;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	/**
+	 * <p>
+	 * Registers these metrics with the platform's MBean server, under the given name (i.e. the
+	 * name of the configuration they belong to). If that name is already taken (i.e. by another
+	 * configuration with the same name), the given ID is added to it to tell them apart. MBeans
+	 * registered by others are never replaced. Returns {@code false} if they couldn't be registered.
+	 * </p>
+	 */
+	public synchronized boolean register(String name, String id) {
+		if (this.name != null) { return true; }
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final String base = GherkinMetrics.DOMAIN + ":type=GherkinConfig,name="
+				+ ObjectName.quote(String.valueOf(name));
+			ObjectName objectName = new ObjectName(base);
+			if (server.isRegistered(objectName)) {
+				objectName = new ObjectName(base + ",id=" + ObjectName.quote(String.valueOf(id)));
+			}
+			server.registerMBean(this, objectName);
+			this.name = objectName;
+			return true;
+		} catch (JMException e) {
+			GherkinMetrics.LOG.warn("Failed to register the Gherkin metrics for [{}] (#{})", name, id, e);
+			return false;
+		}
+	}
+
+	public synchronized void unregister() {
+		if (this.name == null) { return; }
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		} catch (JMException e) {
+			GherkinMetrics.LOG.warn("Failed to unregister the Gherkin metrics {}", this.name, e);
+		} finally {
+			this.name = null;
+		}
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return this.name;
+	}
+
+	@Override
+	public long getStoryParses() {
+		return get(Counter.STORY_PARSES);
+	}
+
+	@Override
+	public double getStoryParseMillis() {
+		return GherkinMetrics.millis(get(Counter.STORY_PARSE_NANOS));
+	}
+
+	@Override
+	public double getStepScanMillis() {
+		return GherkinMetrics.millis(get(Counter.STEP_SCAN_NANOS));
+	}
+
+	@Override
+	public long getCandidateSteps() {
+		return get(Counter.CANDIDATE_STEPS);
+	}
+
+	@Override
+	public long getInterpolations() {
+		return get(Counter.INTERPOLATIONS);
+	}
+
+	@Override
+	public double getInterpolationMillis() {
+		return GherkinMetrics.millis(get(Counter.INTERPOLATION_NANOS));
+	}
+
+	@Override
+	public long getRuns() {
+		return get(Counter.RUNS);
+	}
+
+	@Override
+	public long getFailures() {
+		return get(Counter.FAILURES);
+	}
+
+	@Override
+	public long getPendingSteps() {
+		return get(Counter.PENDING_STEPS);
+	}
+
+	@Override
+	public long getOutputBytes() {
+		return get(Counter.OUTPUT_BYTES);
+	}
+
+	@Override
+	public long getRecentStoryParses() {
+		return getRecent(Counter.STORY_PARSES);
+	}
+
+	@Override
+	public double getRecentStoryParseMillis() {
+		return GherkinMetrics.millis(getRecent(Counter.STORY_PARSE_NANOS));
+	}
+
+	@Override
+	public double getRecentStepScanMillis() {
+		return GherkinMetrics.millis(getRecent(Counter.STEP_SCAN_NANOS));
+	}
+
+	@Override
+	public long getRecentCandidateSteps() {
+		return getRecent(Counter.CANDIDATE_STEPS);
+	}
+
+	@Override
+	public long getRecentInterpolations() {
+		return getRecent(Counter.INTERPOLATIONS);
+	}
+
+	@Override
+	public double getRecentInterpolationMillis() {
+		return GherkinMetrics.millis(getRecent(Counter.INTERPOLATION_NANOS));
+	}
+
+	@Override
+	public long getRecentRuns() {
+		return getRecent(Counter.RUNS);
+	}
+
+	@Override
+	public long getRecentFailures() {
+		return getRecent(Counter.FAILURES);
+	}
+
+	@Override
+	public long getRecentPendingSteps() {
+		return getRecent(Counter.PENDING_STEPS);
+	}
+
+	@Override
+	public long getRecentOutputBytes() {
+		return getRecent(Counter.OUTPUT_BYTES);
+	}
+
+	@Override
+	public synchronized double getWindowSeconds() {
+		roll();
+		return this.lastWindowLength / 1_000_000_000.0;
+	}
+
+	@Override
+	public long getScriptCacheSize() {
+		return JSR223Script.getCacheStats().getSize();
+	}
+
+	@Override
+	public long getScriptCacheHits() {
+		return JSR223Script.getCacheStats().getHits();
+	}
+
+	@Override
+	public long getScriptCacheMisses() {
+		return JSR223Script.getCacheStats().getMisses();
+	}
+
+	@Override
+	public synchronized void reset() {
+		for (LongAdder counter : this.counters) {
+			counter.reset();
+		}
+		this.windowStart = this.ticker.getAsLong();
+		this.windowBase = new long[this.counters.length];
+		this.lastWindow = new long[this.counters.length];
+		this.lastWindowLength = 0;
+	}
+}
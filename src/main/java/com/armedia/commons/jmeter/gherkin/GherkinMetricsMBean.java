@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin;
+
+/**
+ * <p>
+ * The management interface of {@link GherkinMetrics}. Each counter is available both as its total
+ * since the metrics were created (or {@link #reset() reset}), and as its value over the last
+ * complete window (the {@code Recent*} attributes), which lasted {@link #getWindowSeconds()}.
+ * </p>
+ */
+public interface GherkinMetricsMBean {
+
+	public long getStoryParses();
+
+	public double getStoryParseMillis();
+
+	public double getStepScanMillis();
+
+	public long getCandidateSteps();
+
+	public long getInterpolations();
+
+	public double getInterpolationMillis();
+
+	public long getRuns();
+
+	public long getFailures();
+
+	public long getPendingSteps();
+
+	public long getOutputBytes();
+
+	public long getRecentStoryParses();
+
+	public double getRecentStoryParseMillis();
+
+	public double getRecentStepScanMillis();
+
+	public long getRecentCandidateSteps();
+
+	public long getRecentInterpolations();
+
+	public double getRecentInterpolationMillis();
+
+	public long getRecentRuns();
+
+	public long getRecentFailures();
+
+	public long getRecentPendingSteps();
+
+	public long getRecentOutputBytes();
+
+	public double getWindowSeconds();
+
+	public long getScriptCacheSize();
+
+	public long getScriptCacheHits();
+
+	public long getScriptCacheMisses();
+
+	public void reset();
+}
@@ -31,7 +31,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.Optional;
-import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javax.script.Bindings;
@@ -39,10 +38,10 @@ import javax.script.ScriptException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jmeter.threads.JMeterContextService;
-import org.apache.jmeter.threads.JMeterVariables;
 import org.codehaus.plexus.util.IOUtil;
 
-import com.armedia.commons.jmeter.tools.JSR223Script;
+import com.armedia.commons.jmeter.tools.TextTemplate;
+import com.armedia.commons.jmeter.tools.VariableBindings;
 
 public class GherkinTools {
 
@@ -70,27 +69,14 @@ public class GherkinTools {
 	public static String interpolateText(String content, String[] parameters) throws ScriptException {
 		if (StringUtils.isBlank(content)) { return content; }
 
-		// Quote the backticks
-		content = content.replaceAll("`", "\\`");
+		// The template is only parsed the first time we see this text
+		final TextTemplate template = TextTemplate.compile(content);
 
-		// Wrap in backticks
-		content = "`" + content + "`";
-
-		// Interpolate using JEXL
-		final JMeterVariables vars = JMeterContextService.getContext().getVariables();
-
-		final JSR223Script script;
-		try {
-			script = new JSR223Script.Builder().withLanguage("jexl3").withSource(content).build();
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
-
-		Consumer<Bindings> c = (b) -> vars.getIterator().forEachRemaining((e) -> b.put(e.getKey(), e.getValue()));
-		c = c.andThen((b) -> b.put("args", Optional.ofNullable(parameters).orElse(GherkinTools.NO_PARAMS)));
+		// Interpolate using JEXL, looking up only the variables the expressions actually use
+		final Bindings bindings = new VariableBindings(JMeterContextService.getContext().getVariables());
+		bindings.put("args", Optional.ofNullable(parameters).orElse(GherkinTools.NO_PARAMS));
 		try {
-			Object result = script.execute(c);
-			return (result != null ? result.toString() : null);
+			return template.evaluate(bindings);
 		} catch (IOException e) {
 			throw new UncheckedIOException("Unexpected IOException reading from memory", e);
 		}
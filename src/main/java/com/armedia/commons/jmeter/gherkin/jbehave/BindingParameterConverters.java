@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Type;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jbehave.core.configuration.Keywords;
+import org.jbehave.core.io.ResourceLoader;
+import org.jbehave.core.model.TableParsers;
+import org.jbehave.core.model.TableTransformers;
+import org.jbehave.core.steps.ParameterControls;
+import org.jbehave.core.steps.ParameterConverters;
+
+/**
+ * <p>
+ * A {@link ParameterConverters} instance that resolves <code>${name}</code> placeholders within
+ * step parameter values just before they're converted (i.e. when the step is executed), using the
+ * resolver bound to the current thread. This allows a story to be parsed once, and have its
+ * parameters bound to different values on each execution. Placeholders that can't be resolved are
+ * left untouched.
+ * </p>
+ */
+public class BindingParameterConverters extends ParameterConverters {
+
+	private static final String PLACEHOLDER_START = "${";
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^${}]+)\\}");
+	private static final ParameterConverter<?>[] NO_CONVERTERS = {};
+
+	private final ThreadLocal<Function<String, Object>> resolver = new ThreadLocal<>();
+
+	/**
+	 * <p>
+	 * JBehave adds a converter before running each before/after method, which copies the whole
+	 * converter list every time. The added converter is only needed while that method's parameters
+	 * are converted, so it's returned in an overlay which checks it before delegating to the
+	 * converters it was added to. The overlay holds no converter list of its own, so it's cheap to
+	 * create one on every call.
+	 * </p>
+	 */
+	private static final class Overlay extends ParameterConverters {
+		private final ParameterConverters delegate;
+		private final ParameterConverter<?> extra;
+
+		private Overlay(ParameterConverters delegate, ParameterConverter<?> extra) {
+			// None of these are used, since there are no default converters to build
+			super(null, null, null, null, null, null, null, null, false);
+			this.delegate = delegate;
+			this.extra = extra;
+		}
+
+		@Override
+		protected ParameterConverter<?>[] defaultConverters(Keywords keywords, ResourceLoader resourceLoader,
+			ParameterControls parameterControls, TableParsers tableParsers, TableTransformers tableTransformers,
+			Locale locale, String listSeparator) {
+			return BindingParameterConverters.NO_CONVERTERS;
+		}
+
+		@Override
+		public Object convert(String value, Type type) {
+			if (this.extra.accept(type)) { return this.extra.convertValue(value, type); }
+			return this.delegate.convert(value, type);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public ParameterConverters newInstanceAdding(ParameterConverter converter) {
+			return new Overlay(this, converter);
+		}
+	}
+
+	public Function<String, Object> bindTo(Function<String, Object> resolver) {
+		Function<String, Object> previous = this.resolver.get();
+		if (resolver != null) {
+			this.resolver.set(resolver);
+		} else {
+			this.resolver.remove();
+		}
+		return previous;
+	}
+
+	public String bind(String value) {
+		if ((value == null) || !value.contains(BindingParameterConverters.PLACEHOLDER_START)) { return value; }
+		final Function<String, Object> resolver = this.resolver.get();
+		if (resolver == null) { return value; }
+
+		Matcher m = BindingParameterConverters.PLACEHOLDER.matcher(value);
+		StringBuffer sb = new StringBuffer(value.length());
+		while (m.find()) {
+			Object v = resolver.apply(m.group(1).trim());
+			m.appendReplacement(sb, Matcher.quoteReplacement(v != null ? v.toString() : m.group()));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	@Override
+	public Object convert(String value, Type type) {
+		return super.convert(bind(value), type);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public ParameterConverters newInstanceAdding(ParameterConverter converter) {
+		return new Overlay(this, converter);
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jbehave.core.annotations.AsParameterConverter;
+import org.jbehave.core.configuration.Configuration;
+import org.jbehave.core.steps.InjectableStepsFactory;
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepType;
+import org.jbehave.core.steps.Steps;
+
+/**
+ * <p>
+ * A {@link Steps} implementation which only reflects over each step class once for the whole JVM,
+ * remembering the candidate definitions it found (including pattern variants and aliases, and
+ * having already checked them for duplicates). Each instance then builds its
+ * {@link StepCandidate candidates} from those definitions only once, bound to its own
+ * configuration and steps factory.
+ * </p>
+ */
+final class CachedSteps extends Steps {
+
+	private static final class Candidate {
+		private final String pattern;
+		private final int priority;
+		private final StepType stepType;
+		private final Method method;
+		private final String[] composedSteps;
+
+		private Candidate(StepCandidate candidate) {
+			this.pattern = candidate.getPatternAsString();
+			this.priority = candidate.getPriority();
+			this.stepType = candidate.getStepType();
+			this.method = candidate.getMethod();
+			this.composedSteps = (candidate.isComposite() ? candidate.composedSteps() : null);
+		}
+	}
+
+	private static final class Definitions {
+		private final List<Candidate> candidates;
+		private final List<Method> converters;
+
+		private Definitions(Configuration configuration, Class<?> type, InjectableStepsFactory stepsFactory) {
+			List<Candidate> candidates = new ArrayList<>();
+			for (StepCandidate c : new Steps(configuration, type, stepsFactory).listCandidates()) {
+				candidates.add(new Candidate(c));
+			}
+			this.candidates = Collections.unmodifiableList(candidates);
+
+			List<Method> converters = new ArrayList<>();
+			for (Method m : type.getMethods()) {
+				if (m.isAnnotationPresent(AsParameterConverter.class)) {
+					converters.add(m);
+				}
+			}
+			this.converters = Collections.unmodifiableList(converters);
+		}
+	}
+
+	private static final ConcurrentMap<Class<?>, Definitions> DEFINITIONS = new ConcurrentHashMap<>();
+
+	private static Definitions getDefinitions(Configuration configuration, Class<?> type,
+		InjectableStepsFactory stepsFactory) {
+		return CachedSteps.DEFINITIONS.computeIfAbsent(type,
+			(t) -> new Definitions(configuration, t, stepsFactory));
+	}
+
+	static List<Method> getConverterMethods(Configuration configuration, Class<?> type,
+		InjectableStepsFactory stepsFactory) {
+		return CachedSteps.getDefinitions(configuration, type, stepsFactory).converters;
+	}
+
+	private final Class<?> type;
+	private final InjectableStepsFactory stepsFactory;
+	private final Definitions definitions;
+	private List<StepCandidate> candidates = null;
+
+	CachedSteps(Configuration configuration, Class<?> type, InjectableStepsFactory stepsFactory) {
+		super(configuration, type, stepsFactory);
+		this.type = type;
+		this.stepsFactory = stepsFactory;
+		this.definitions = CachedSteps.getDefinitions(configuration, type, stepsFactory);
+	}
+
+	@Override
+	public List<StepCandidate> listCandidates() {
+		if (this.candidates == null) {
+			List<StepCandidate> candidates = new ArrayList<>(this.definitions.candidates.size());
+			for (Candidate c : this.definitions.candidates) {
+				StepCandidate candidate = createCandidate(c.pattern, c.priority, c.stepType, c.method, this.type,
+					this.stepsFactory);
+				if (c.composedSteps != null) {
+					candidate.composedOf(c.composedSteps);
+				}
+				candidates.add(candidate);
+			}
+			this.candidates = Collections.unmodifiableList(candidates);
+		}
+		// Callers are free to modify the returned list
+		return new ArrayList<>(this.candidates);
+	}
+}
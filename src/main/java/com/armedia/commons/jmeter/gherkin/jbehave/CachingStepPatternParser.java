@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.jbehave.core.model.StepPattern;
+import org.jbehave.core.parsers.StepMatcher;
+import org.jbehave.core.parsers.StepPatternParser;
+import org.jbehave.core.steps.StepType;
+
+import com.armedia.commons.jmeter.tools.BoundedCache;
+import com.armedia.commons.jmeter.tools.ConcurrentMemo;
+
+/**
+ * <p>
+ * A {@link StepPatternParser} which only parses (and compiles) each step pattern once, and hands
+ * out new {@link StepMatcher} instances which share the compiled {@link Pattern}. This is
+ * necessary because {@link StepMatcher} instances keep the state of the last match, and thus
+ * can't be shared between threads, while {@link Pattern} instances can.
+ * </p>
+ * <p>
+ * The parameter values extracted from each step's text are also memoized, since steps are
+ * re-parametrised every time they're performed.
+ * </p>
+ */
+final class CachingStepPatternParser implements StepPatternParser {
+
+	static final String PARAMETER_MEMO_SIZE = "gherkin.jbehave.stepParameterMemoSize";
+	private static final int DEFAULT_PARAMETER_MEMO_SIZE = 4096;
+
+	private static final String[] NO_MATCH = {};
+
+	/**
+	 * <p>
+	 * A {@link StepPattern} which also remembers the pattern it was parsed from, so matches can be
+	 * traced back to the candidate that produced them.
+	 * </p>
+	 */
+	static final class ParsedPattern extends StepPattern {
+		private final String pattern;
+
+		private ParsedPattern(StepType stepType, String pattern, String annotated, String resolved) {
+			super(stepType, annotated, resolved);
+			this.pattern = pattern;
+		}
+
+		String getPattern() {
+			return this.pattern;
+		}
+	}
+
+	private static final class ParametersKey {
+		private final Parsed parsed;
+		private final String text;
+		private final int hash;
+
+		private ParametersKey(Parsed parsed, String text) {
+			this.parsed = parsed;
+			this.text = text;
+			this.hash = Objects.hash(System.identityHashCode(parsed), text);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) { return true; }
+			if (obj == null) { return false; }
+			if (getClass() != obj.getClass()) { return false; }
+			ParametersKey other = ParametersKey.class.cast(obj);
+			if (this.parsed != other.parsed) { return false; }
+			if (!Objects.equals(this.text, other.text)) { return false; }
+			return true;
+		}
+	}
+
+	private final class Parsed {
+		private final ParsedPattern stepPattern;
+		private final Pattern pattern;
+		private final String[] names;
+
+		private Parsed(StepType stepType, String stepPattern) {
+			StepMatcher matcher = CachingStepPatternParser.this.parser.parseStep(stepType, stepPattern);
+			this.stepPattern = new ParsedPattern(stepType, stepPattern, matcher.pattern().annotated(),
+				matcher.pattern().resolved());
+			// The regex parser compiles all its patterns with DOTALL
+			this.pattern = Pattern.compile(matcher.pattern().resolved(), Pattern.DOTALL);
+			this.names = matcher.parameterNames();
+		}
+
+		private String[] groups(Matcher m) {
+			String[] groups = new String[m.groupCount() + 1];
+			for (int i = 0; i < groups.length; i++) {
+				groups[i] = m.group(i);
+			}
+			return groups;
+		}
+
+		private String[] matches(String text) {
+			Matcher m = this.pattern.matcher(text);
+			return (m.matches() ? groups(m) : CachingStepPatternParser.NO_MATCH);
+		}
+
+		private String[] find(String text) {
+			return CachingStepPatternParser.this.parameters.computeIfAbsent(new ParametersKey(this, text), (k) -> {
+				Matcher m = this.pattern.matcher(text);
+				return (m.find() ? groups(m) : CachingStepPatternParser.NO_MATCH);
+			});
+		}
+	}
+
+	private final class ParsedMatcher implements StepMatcher {
+		private final Parsed parsed;
+		private String[] groups = null;
+
+		private ParsedMatcher(Parsed parsed) {
+			this.parsed = parsed;
+		}
+
+		@Override
+		public boolean matches(String stepWithoutStartingWord) {
+			this.groups = this.parsed.matches(stepWithoutStartingWord);
+			return (this.groups != CachingStepPatternParser.NO_MATCH);
+		}
+
+		@Override
+		public boolean find(String stepWithoutStartingWord) {
+			this.groups = this.parsed.find(stepWithoutStartingWord);
+			return (this.groups != CachingStepPatternParser.NO_MATCH);
+		}
+
+		@Override
+		public String parameter(int matchedPosition) {
+			if ((this.groups == null) || (this.groups == CachingStepPatternParser.NO_MATCH)) {
+				throw new IllegalStateException("No match found");
+			}
+			return this.groups[matchedPosition];
+		}
+
+		@Override
+		public String[] parameterNames() {
+			return this.parsed.names;
+		}
+
+		@Override
+		public StepPattern pattern() {
+			return this.parsed.stepPattern;
+		}
+	}
+
+	private final StepPatternParser parser;
+	private final ConcurrentMap<Pair<StepType, String>, Parsed> cache = new ConcurrentHashMap<>();
+	private final ConcurrentMemo<ParametersKey, String[]> parameters = new ConcurrentMemo<>(Math.max(1, Integer
+		.getInteger(CachingStepPatternParser.PARAMETER_MEMO_SIZE, CachingStepPatternParser.DEFAULT_PARAMETER_MEMO_SIZE)));
+
+	CachingStepPatternParser(StepPatternParser parser) {
+		this.parser = Objects.requireNonNull(parser, "Must provide a StepPatternParser to delegate to");
+	}
+
+	@Override
+	public StepMatcher parseStep(StepType stepType, String stepPattern) {
+		return new ParsedMatcher(
+			this.cache.computeIfAbsent(Pair.of(stepType, stepPattern), (k) -> new Parsed(k.getKey(), k.getValue())));
+	}
+
+	int size() {
+		return this.cache.size();
+	}
+
+	BoundedCache.Stats getParameterStats() {
+		return this.parameters.getStats();
+	}
+}
@@ -29,9 +29,11 @@ package com.armedia.commons.jmeter.gherkin.jbehave;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -42,6 +44,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -49,40 +52,94 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import org.apache.commons.lang3.concurrent.ConcurrentException;
+import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.codehaus.plexus.util.IOUtil;
 import org.jbehave.core.annotations.Given;
 import org.jbehave.core.configuration.Configuration;
 import org.jbehave.core.configuration.MostUsefulConfiguration;
 import org.jbehave.core.configuration.UnmodifiableConfiguration;
+import org.jbehave.core.embedder.EmbedderMonitor;
 import org.jbehave.core.embedder.MetaFilter;
+import org.jbehave.core.embedder.NullEmbedderMonitor;
 import org.jbehave.core.embedder.PerformableTree;
-import org.jbehave.core.embedder.PrintStreamEmbedderMonitor;
 import org.jbehave.core.failures.BatchFailures;
 import org.jbehave.core.io.LoadFromClasspath;
 import org.jbehave.core.io.StoryLoader;
 import org.jbehave.core.model.ExamplesTableFactory;
+import org.jbehave.core.model.Scenario;
 import org.jbehave.core.model.Story;
 import org.jbehave.core.model.TableTransformers;
+import org.jbehave.core.parsers.RegexPrefixCapturingPatternParser;
+import org.jbehave.core.reporters.DelegatingStoryReporter;
+import org.jbehave.core.reporters.StoryReporter;
+import org.jbehave.core.reporters.StoryReporterBuilder;
 import org.jbehave.core.steps.AbstractStepsFactory;
+import org.jbehave.core.steps.CandidateSteps;
+import org.jbehave.core.steps.CompositeCandidateSteps;
+import org.jbehave.core.steps.DelegatingStepMonitor;
+import org.jbehave.core.steps.InjectableStepsFactory;
+import org.jbehave.core.steps.MarkUnmatchedStepsAsPending;
 import org.jbehave.core.steps.ParameterConverters;
+import org.jbehave.core.steps.ParameterConverters.ParameterConverter;
+import org.jbehave.core.steps.SilentStepMonitor;
+import org.jbehave.core.steps.Step;
+import org.jbehave.core.steps.StepCreator;
+import org.jbehave.core.steps.StepMonitor;
 import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.CapturePolicy;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.OutputFormat;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.Syntax;
+import com.armedia.commons.jmeter.tools.BoundedCache;
+import com.armedia.commons.jmeter.tools.ConcurrentMemo;
 
 public class JBehaveRunner {
 	private static final Logger LOG = LoggerFactory.getLogger(JBehaveRunner.class);
 
 	public static final class Result extends Gherkin.Result<Story> {
 
-		private Result(Story story, String output, BatchFailures failures) {
-			super(story, output, failures);
+		private final JBehaveSettings.OutputFormat format;
+
+		private Result(Story story, JBehaveSettings.OutputFormat format, byte[] output, BatchFailures failures,
+			Timing timing) {
+			super(story, output, JBehaveRunner.CHARSET, failures, timing);
+			this.format = format;
+		}
+
+		@Override
+		protected String render(byte[] output, Charset charset) {
+			return this.format.render(output, charset);
+		}
+
+		@Override
+		public String getContentType() {
+			return this.format.contentType;
+		}
+
+		@Override
+		public boolean isBinary() {
+			return this.format.isBinary();
 		}
 
 		@Override
@@ -92,35 +149,76 @@ public class JBehaveRunner {
 		}
 	}
 
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
 	private static final StoryLoader LOADER = new LoadFromClasspath(JBehaveRunner.class);
 	private static final ExamplesTableFactory EXAMPLES_TABLE_FACTORY = new ExamplesTableFactory(JBehaveRunner.LOADER,
 		new TableTransformers());
-	private static final ParameterConverters PARAMETER_CONVERTERS = new ParameterConverters().addConverters( //
-		new ParameterConverters.BooleanConverter(), //
-		new ParameterConverters.BooleanListConverter(), //
-		new ParameterConverters.CurrencyConverter(), //
-		new ParameterConverters.NumberConverter(), //
-		new ParameterConverters.NumberListConverter(), //
-		new ParameterConverters.EnumConverter(), //
-		new ParameterConverters.EnumListConverter(), //
-		new ParameterConverters.FluentEnumConverter(), //
-		new ParameterConverters.DateConverter(), //
-		new ParameterConverters.StringConverter(), //
-		new ParameterConverters.StringListConverter(), //
-		new ParameterConverters.ExamplesTableConverter(JBehaveRunner.EXAMPLES_TABLE_FACTORY), //
-		new ParameterConverters.ExamplesTableParametersConverter(JBehaveRunner.EXAMPLES_TABLE_FACTORY), //
-		new ParameterConverters.FileConverter(), //
-		// new ParameterConverters.FunctionalParameterConverter(), //
-		new ParameterConverters.JsonConverter(), //
-		// new ParameterConverters.MethodReturningConverter(), //
-		new ParameterConverters.PatternConverter(), //
-		new ParameterConverters.VerbatimConverter() //
-	);
+	private static final CachingStepPatternParser PATTERN_PARSER = new CachingStepPatternParser(
+		new RegexPrefixCapturingPatternParser());
+	private static final BindingParameterConverters PARAMETER_CONVERTERS = new BindingParameterConverters();
+	static {
+		JBehaveRunner.PARAMETER_CONVERTERS.addConverters( //
+			new ParameterConverters.BooleanConverter(), //
+			new ParameterConverters.BooleanListConverter(), //
+			new ParameterConverters.CurrencyConverter(), //
+			new ParameterConverters.NumberConverter(), //
+			new ParameterConverters.NumberListConverter(), //
+			new ParameterConverters.EnumConverter(), //
+			new ParameterConverters.EnumListConverter(), //
+			new ParameterConverters.FluentEnumConverter(), //
+			new ParameterConverters.DateConverter(), //
+			new ParameterConverters.StringConverter(), //
+			new ParameterConverters.StringListConverter(), //
+			new ParameterConverters.ExamplesTableConverter(JBehaveRunner.EXAMPLES_TABLE_FACTORY), //
+			new ParameterConverters.ExamplesTableParametersConverter(JBehaveRunner.EXAMPLES_TABLE_FACTORY), //
+			new ParameterConverters.FileConverter(), //
+			// new ParameterConverters.FunctionalParameterConverter(), //
+			new ParameterConverters.JsonConverter(), //
+			// new ParameterConverters.MethodReturningConverter(), //
+			new ParameterConverters.PatternConverter(), //
+			new ParameterConverters.VerbatimConverter() //
+		);
+	}
+
+	// The converters are shared by all runners, so converter methods are only registered once, and
+	// are invoked on the step instances of the story being performed by the calling thread
+	private static final Set<Method> CONVERTER_METHODS = ConcurrentHashMap.newKeySet();
+	private static final ThreadLocal<StepsFactory> ACTIVE_STEPS = new ThreadLocal<>();
+	private static final InjectableStepsFactory THREAD_STEPS = new InjectableStepsFactory() {
+		private StepsFactory getActiveSteps() {
+			StepsFactory steps = JBehaveRunner.ACTIVE_STEPS.get();
+			if (steps == null) { throw new IllegalStateException("No story is being performed by this thread"); }
+			return steps;
+		}
+
+		@Override
+		public List<CandidateSteps> createCandidateSteps() {
+			return getActiveSteps().createCandidateSteps();
+		}
+
+		@Override
+		public Object createInstanceOfType(Class<?> type) {
+			return getActiveSteps().createInstanceOfType(type);
+		}
+	};
+
+	private static void registerConverters(Class<?> type, List<Method> methods) {
+		List<ParameterConverter<?>> converters = new ArrayList<>(methods.size());
+		for (Method m : methods) {
+			if (JBehaveRunner.CONVERTER_METHODS.add(m)) {
+				converters.add(new ParameterConverters.MethodReturningConverter(m, type, JBehaveRunner.THREAD_STEPS));
+			}
+		}
+		if (!converters.isEmpty()) {
+			JBehaveRunner.PARAMETER_CONVERTERS.addConverters(converters.toArray(new ParameterConverter<?>[0]));
+		}
+	}
 
 	private static final class StepScanner {
 		private static final Package ANNOTATION_PACKAGE = Given.class.getPackage();
 
 		private final Map<Class<?>, Constructor<?>> constructors;
+		private final Set<Class<?>> stepTypes;
 
 		private static Constructor<?> getConstructor(Class<?> c) {
 			// Skip interfaces
@@ -164,14 +262,134 @@ public class JBehaveRunner {
 			}
 		}
 
-		private StepScanner(Collection<String> prefixes) {
-			Map<Class<?>, Constructor<?>> constructors = new HashMap<>();
-			Set<String> finalPrefixes = new LinkedHashSet<>();
+		// Scanning is expensive and its results don't change, so they're shared by everyone using the
+		// same class loader (and only by them, since each loader may see different step classes)
+		private static final Map<ClassLoader, ConcurrentMap<Set<String>, LazyInitializer<StepScanner>>> SCANNERS = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+		/**
+		 * <p>
+		 * Returns the (shared) scan of the given packages, performing it if needed. Only the scan
+		 * actually performed is counted in the given metrics (which may be {@code null}), and not
+		 * the time other callers spend waiting for it.
+		 * </p>
+		 */
+		private static StepScanner get(Collection<String> prefixes, GherkinMetrics metrics) {
+			Set<String> finalPrefixes = new TreeSet<>();
 			// Add this always, for now...
 			finalPrefixes.add(JBehaveRunner.class.getPackage().getName());
-			finalPrefixes.addAll(prefixes);
+			if (prefixes != null) {
+				prefixes.stream().filter(Objects::nonNull).forEach(finalPrefixes::add);
+			}
+			final Set<String> key = Collections.unmodifiableSet(finalPrefixes);
+			final ClassLoader cl = StepScanner.getClassLoader();
+			final ConcurrentMap<Set<String>, LazyInitializer<StepScanner>> scanners = StepScanner.SCANNERS
+				.computeIfAbsent(cl, (l) -> new ConcurrentHashMap<>());
+			final LazyInitializer<StepScanner> scanner = scanners.computeIfAbsent(key,
+				(k) -> new LazyInitializer<StepScanner>() {
+					@Override
+					protected StepScanner initialize() {
+						final StepScanner scanner = new StepScanner(cl, k);
+						if (metrics != null) {
+							metrics.add(GherkinMetrics.Counter.STEP_SCAN_NANOS, scanner.scanNanos);
+						}
+						return scanner;
+					}
+				});
+			try {
+				return scanner.get();
+			} catch (ConcurrentException | RuntimeException e) {
+				// Don't keep failed scans around, so the next caller can try again
+				scanners.remove(key, scanner);
+				throw new RuntimeException("Failed to scan the packages " + key + " for step classes", e);
+			}
+		}
+
+		private final long scanNanos;
+
+		private static ClassLoader getClassLoader() {
+			ClassLoader cl = Thread.currentThread().getContextClassLoader();
+			return (cl != null ? cl : JBehaveRunner.class.getClassLoader());
+		}
+
+		/**
+		 * <p>
+		 * Reads all the step indexes visible to the given class loader, keyed by the (external form
+		 * of the) classpath root each was found in. Each index covers every step class in its own
+		 * root, and nothing else.
+		 * </p>
+		 */
+		private static Map<String, Set<String>> readIndex(ClassLoader cl) {
+			Map<String, Set<String>> index = new HashMap<>();
+			if (!Boolean.parseBoolean(System.getProperty(JBehaveRunner.USE_STEP_INDEX, "true"))) { return index; }
+			try {
+				Enumeration<URL> urls = cl.getResources(StepIndexProcessor.INDEX);
+				while (urls.hasMoreElements()) {
+					URL url = urls.nextElement();
+					String u = url.toExternalForm();
+					if (!u.endsWith(StepIndexProcessor.INDEX)) {
+						continue;
+					}
+					try (InputStream in = url.openStream()) {
+						index.put(u.substring(0, u.length() - StepIndexProcessor.INDEX.length()),
+							StepIndexProcessor.readIndex(in));
+					} catch (IOException e) {
+						JBehaveRunner.LOG.warn("Failed to read the step index at {}", url, e);
+					}
+				}
+			} catch (IOException e) {
+				JBehaveRunner.LOG.warn("Failed to find the step indexes", e);
+			}
+			return index;
+		}
+
+		private static boolean isInPackage(String name, String prefix) {
+			return name.startsWith(prefix) && (name.length() > prefix.length())
+				&& (name.charAt(prefix.length()) == '.');
+		}
+
+		private StepScanner(ClassLoader cl, Set<String> prefixes) {
+			final long start = System.nanoTime();
+			final Map<String, Set<String>> index = StepScanner.readIndex(cl);
 
-			for (Class<?> klazz : new Reflections(finalPrefixes).getTypesAnnotatedWith(Gherkin.Steps.class)) {
+			// Load the indexed classes, and only scan the classpath roots which carry no index
+			Set<Class<?>> classes = new LinkedHashSet<>();
+			Set<URL> unindexed = new LinkedHashSet<>();
+			Set<String> indexed = new TreeSet<>();
+			for (String prefix : prefixes) {
+				for (Map.Entry<String, Set<String>> e : index.entrySet()) {
+					for (String name : e.getValue()) {
+						if (!StepScanner.isInPackage(name, prefix)) {
+							continue;
+						}
+						indexed.add(e.getKey());
+						try {
+							classes.add(Class.forName(name, false, cl));
+						} catch (ClassNotFoundException | LinkageError ex) {
+							JBehaveRunner.LOG.warn("Failed to load the indexed step class {}", name, ex);
+						}
+					}
+				}
+				for (URL url : ClasspathHelper.forPackage(prefix, cl)) {
+					if (!index.containsKey(url.toExternalForm())) {
+						unindexed.add(url);
+					}
+				}
+			}
+			if (!unindexed.isEmpty()) {
+				FilterBuilder filter = new FilterBuilder();
+				prefixes.forEach((p) -> filter.include(FilterBuilder.prefix(p + ".")));
+				Reflections reflections = new Reflections(new ConfigurationBuilder() //
+					.setUrls(unindexed) //
+					.filterInputsBy(filter) //
+					.addClassLoader(cl) //
+					.useParallelExecutor() //
+				);
+				classes.addAll(reflections.getTypesAnnotatedWith(Gherkin.Steps.class));
+			}
+
+			Map<Class<?>, Constructor<?>> constructors = new HashMap<>();
+			for (Class<?> klazz : classes) {
 				Constructor<?> constructor = StepScanner.getConstructor(klazz);
 				if (constructor != null) {
 					constructors.put(klazz, constructor);
@@ -179,10 +397,19 @@ public class JBehaveRunner {
 			}
 
 			this.constructors = Collections.unmodifiableMap(constructors);
+			this.stepTypes = this.constructors.keySet();
+			this.scanNanos = System.nanoTime() - start;
+			JBehaveRunner.LOG.info(
+				"Found {} step classes for the packages {} in {}ms (indexed roots={}, scanned roots={})",
+				this.constructors.size(), prefixes, getScanTime(), indexed.size(), unindexed.size());
+		}
+
+		public long getScanTime() {
+			return TimeUnit.NANOSECONDS.toMillis(this.scanNanos);
 		}
 
 		public Set<Class<?>> getStepTypes() {
-			return this.constructors.keySet();
+			return this.stepTypes;
 		}
 
 		public Constructor<?> get(Class<?> klazz) {
@@ -192,6 +419,7 @@ public class JBehaveRunner {
 
 	private static final class StepsFactory extends AbstractStepsFactory implements AutoCloseable {
 
+		private final Configuration configuration;
 		private final Function<Class<?>, Constructor<?>> constructor;
 		private final Set<Class<?>> stepTypes;
 		private final Map<Class<?>, Object> instances = new LinkedHashMap<>();
@@ -199,6 +427,7 @@ public class JBehaveRunner {
 		private StepsFactory(Configuration configuration, Set<Class<?>> stepTypes,
 			Function<Class<?>, Constructor<?>> constructor) {
 			super(configuration);
+			this.configuration = configuration;
 			this.constructor = Objects.requireNonNull(constructor, "Must provide a constructor function");
 			this.stepTypes = Collections.unmodifiableSet(
 				new LinkedHashSet<>(Objects.requireNonNull(stepTypes, "Must provide the set of steps supported")));
@@ -228,17 +457,151 @@ public class JBehaveRunner {
 			return new ArrayList<>(this.stepTypes);
 		}
 
+		@Override
+		public List<CandidateSteps> createCandidateSteps() {
+			// Same as our parent's, except the step classes' definitions are only reflected upon once
+			List<CandidateSteps> steps = new ArrayList<>(this.stepTypes.size() + 1);
+			for (Class<?> type : this.stepTypes) {
+				JBehaveRunner.registerConverters(type,
+					CachedSteps.getConverterMethods(this.configuration, type, this));
+				steps.add(new CachedSteps(this.configuration, type, this));
+			}
+			Set<String> compositePaths = this.configuration.compositePaths();
+			if (!compositePaths.isEmpty()) {
+				steps.add(new CompositeCandidateSteps(this.configuration, compositePaths));
+			}
+			return steps;
+		}
+
 		@Override
 		public void close() {
 			this.instances.clear();
 		}
 	}
 
+	/**
+	 * <p>
+	 * A reusable output buffer. Each thread keeps one, so the reports are written into the same
+	 * (already grown) array on every run, and only copied out once at the end. Buffers which grew
+	 * past the retention limit are shrunk back when released, so a single huge report doesn't pin
+	 * that much memory for the rest of the test.
+	 * </p>
+	 */
+	private static final class OutputBuffer extends ByteArrayOutputStream {
+		private boolean inUse = false;
+
+		private OutputBuffer() {
+			super(JBehaveRunner.INITIAL_OUTPUT_BUFFER);
+		}
+
+		private static OutputBuffer acquire() {
+			OutputBuffer buffer = JBehaveRunner.OUTPUT_BUFFERS.get();
+			// Nested runs can't share the thread's buffer
+			if (buffer.inUse) {
+				buffer = new OutputBuffer();
+			}
+			buffer.inUse = true;
+			buffer.reset();
+			return buffer;
+		}
+
+		/**
+		 * <p>
+		 * Returns a copy of the last {@code limit} bytes written, preceded by a note saying how many
+		 * were omitted (if any were). The cut is moved forward past any partial UTF-8 sequence.
+		 * </p>
+		 */
+		private synchronized byte[] tail(int limit) {
+			if ((limit <= 0) || (this.count <= limit)) { return toByteArray(); }
+			int keep = limit;
+			while ((keep > 0) && ((this.buf[this.count - keep] & 0xC0) == 0x80)) {
+				keep--;
+			}
+			final int dropped = this.count - keep;
+			final byte[] note = String.format("[... %d bytes omitted ...]%n", dropped).getBytes(JBehaveRunner.CHARSET);
+			final byte[] tail = new byte[note.length + keep];
+			System.arraycopy(note, 0, tail, 0, note.length);
+			System.arraycopy(this.buf, this.count - keep, tail, note.length, keep);
+			return tail;
+		}
+
+		private void release() {
+			reset();
+			if (this.buf.length > JBehaveRunner.OUTPUT_BUFFER_LIMIT) {
+				this.buf = new byte[JBehaveRunner.INITIAL_OUTPUT_BUFFER];
+			}
+			this.inUse = false;
+		}
+	}
+
+	// Keyed by the text itself, since strings cache their hash and are usually the same instance
+	private static final class StoryKey {
+		private final Syntax syntax;
+		private final String text;
+		private final String name;
+		private final int hash;
+
+		private StoryKey(Syntax syntax, String text, String name) {
+			this.syntax = syntax;
+			this.text = text;
+			this.name = name;
+			this.hash = Objects.hash(syntax, text, name);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) { return true; }
+			if (obj == null) { return false; }
+			if (getClass() != obj.getClass()) { return false; }
+			StoryKey other = StoryKey.class.cast(obj);
+			if (this.hash != other.hash) { return false; }
+			if (this.syntax != other.syntax) { return false; }
+			if (!Objects.equals(this.name, other.name)) { return false; }
+			if (!Objects.equals(this.text, other.text)) { return false; }
+			return true;
+		}
+	}
+
+	public static final String USE_STEP_INDEX = "gherkin.jbehave.useStepIndex";
+	public static final String STEP_MATCH_MEMO_SIZE = "gherkin.jbehave.stepMatchMemoSize";
+	private static final int DEFAULT_STEP_MATCH_MEMO_SIZE = 4096;
+	public static final String STORY_CACHE_SIZE = "gherkin.jbehave.storyCacheSize";
+	private static final int DEFAULT_STORY_CACHE_SIZE = 256;
+	public static final String OUTPUT_BUFFER_RETAIN = "gherkin.jbehave.outputBufferRetain";
+	private static final int DEFAULT_OUTPUT_BUFFER_RETAIN = 1024 * 1024;
+	private static final int INITIAL_OUTPUT_BUFFER = 8192;
+	private static final int OUTPUT_BUFFER_LIMIT = Math.max(JBehaveRunner.INITIAL_OUTPUT_BUFFER,
+		Integer.getInteger(JBehaveRunner.OUTPUT_BUFFER_RETAIN, JBehaveRunner.DEFAULT_OUTPUT_BUFFER_RETAIN));
+	private static final byte[] NO_OUTPUT = {};
+	private static final EmbedderMonitor NULL_MONITOR = new NullEmbedderMonitor();
+	private static final ThreadLocal<OutputBuffer> OUTPUT_BUFFERS = ThreadLocal.withInitial(OutputBuffer::new);
+	public static final String RUNNER_CACHE_SIZE = "gherkin.jbehave.runnerCacheSize";
+	private static final int DEFAULT_RUNNER_CACHE_SIZE = 16;
+
+	// Parsed stories are shared by all threads, so they must be treated as read-only
+	private static final BoundedCache<StoryKey, Story> STORIES = new BoundedCache<>(
+		Math.max(1, Integer.getInteger(JBehaveRunner.STORY_CACHE_SIZE, JBehaveRunner.DEFAULT_STORY_CACHE_SIZE)));
+
 	public static Story parse(String name, Object source) throws Exception {
 		return JBehaveRunner.parse(JBehaveSettings.defaults().getSyntax(), name, source);
 	}
 
 	public static Story parse(Syntax syntax, String name, Object source) throws Exception {
+		return JBehaveRunner.parse(syntax, name, source, null);
+	}
+
+	/**
+	 * <p>
+	 * Parses the story, unless it's already been parsed. Only the stories that actually get parsed
+	 * are counted in the given metrics (which may be {@code null}).
+	 * </p>
+	 */
+	public static Story parse(Syntax syntax, String name, Object source, GherkinMetrics metrics) throws Exception {
 		Objects.requireNonNull(syntax, "Must provide a syntax to parse with");
 		Objects.requireNonNull(source, "Must provide a story to parse");
 		if (Story.class.isInstance(source)) { return Story.class.cast(source); }
@@ -253,7 +616,85 @@ public class JBehaveRunner {
 				source = IOUtil.toString(in);
 			}
 		}
-		return syntax.parser.parseStory(String.valueOf(source), name);
+		final String text = String.valueOf(source);
+		final StoryKey key = new StoryKey(syntax, text, name);
+		try {
+			return JBehaveRunner.STORIES.computeIfAbsent(key, () -> {
+				final long start = System.nanoTime();
+				final Story story = syntax.parser.parseStory(text, name);
+				if (metrics != null) {
+					metrics.increment(GherkinMetrics.Counter.STORY_PARSES);
+					metrics.add(GherkinMetrics.Counter.STORY_PARSE_NANOS, System.nanoTime() - start);
+				}
+				return story;
+			});
+		} catch (ConcurrentException e) {
+			throw new RuntimeException("Failed to parse the story [" + name + "]", e.getCause());
+		}
+	}
+
+	public static BoundedCache.Stats getStoryCacheStats() {
+		return JBehaveRunner.STORIES.getStats();
+	}
+
+	public static void clearStoryCache() {
+		JBehaveRunner.STORIES.clear();
+	}
+
+	// Runners hold no per-thread state, so all the threads using the same steps (as seen by the same
+	// class loader) share one
+	private static final BoundedCache<Triple<ClassLoader, Set<String>, Map<String, String>>, JBehaveRunner> RUNNERS = new BoundedCache<>(
+		Math.max(1, Integer.getInteger(JBehaveRunner.RUNNER_CACHE_SIZE, JBehaveRunner.DEFAULT_RUNNER_CACHE_SIZE)));
+
+	/**
+	 * <p>
+	 * Returns the runner for the given search scopes and composites, creating it if needed. Runners
+	 * are immutable and thread-safe, so the same instance is returned to every caller asking for
+	 * the same scopes and composites through the same (context) class loader. All the per-thread
+	 * state (step instances, output buffers and failures) lives in the {@link PreparedStory}
+	 * instances each thread prepares.
+	 * </p>
+	 */
+	public static JBehaveRunner get(Collection<String> searchScopes, Map<String, String> composites) {
+		return JBehaveRunner.get(searchScopes, composites, null);
+	}
+
+	/**
+	 * <p>
+	 * Same as {@link #get(Collection, Map)}, but if the step classes have to be scanned for, the
+	 * time it takes is counted in the given metrics (which may be {@code null}).
+	 * </p>
+	 */
+	public static JBehaveRunner get(Collection<String> searchScopes, Map<String, String> composites,
+		GherkinMetrics metrics) {
+		final Set<String> scopes = new TreeSet<>();
+		if (searchScopes != null) {
+			searchScopes.stream().filter(Objects::nonNull).forEach(scopes::add);
+		}
+		final Map<String, String> c = new HashMap<>();
+		if (composites != null) {
+			c.putAll(composites);
+		}
+		final Triple<ClassLoader, Set<String>, Map<String, String>> key = Triple.of(StepScanner.getClassLoader(),
+			Collections.unmodifiableSet(scopes), Collections.unmodifiableMap(c));
+		try {
+			return JBehaveRunner.RUNNERS.computeIfAbsent(key,
+				() -> new JBehaveRunner(scopes, composites, metrics));
+		} catch (ConcurrentException e) {
+			throw new RuntimeException("Failed to create the runner for the packages " + scopes, e.getCause());
+		}
+	}
+
+	public static BoundedCache.Stats getRunnerCacheStats() {
+		return JBehaveRunner.RUNNERS.getStats();
+	}
+
+	public static void clearRunnerCache() {
+		JBehaveRunner.RUNNERS.clear();
+	}
+
+	public static BoundedCache.Stats getStepParameterStats() {
+		return JBehaveRunner.PATTERN_PARSER.getParameterStats();
 	}
 
 	public static void init() {
@@ -264,11 +705,25 @@ public class JBehaveRunner {
 	private final StepScanner stepScanner;
 	private final Map<String, String> composites;
 
+	// The composites are part of the candidates, so the matches can only be shared by this runner's
+	// stories, and not by every runner using the same step scan
+	private final ConcurrentMemo<String, MemoizingStepFinder.Match> matches = new ConcurrentMemo<>(
+		Math.max(1, Integer.getInteger(JBehaveRunner.STEP_MATCH_MEMO_SIZE, JBehaveRunner.DEFAULT_STEP_MATCH_MEMO_SIZE)));
+	private final AtomicReference<StepDispatcher> dispatcher = new AtomicReference<>();
+	// The sampled runs are counted across all the threads performing each story, so one in every N
+	// of them is kept, instead of one in every N of each thread's (i.e. every thread's first one)
+	private final ConcurrentMemo<Story, AtomicLong> sampledRuns = new ConcurrentMemo<>(
+		Math.max(1, Integer.getInteger(JBehaveRunner.STORY_CACHE_SIZE, JBehaveRunner.DEFAULT_STORY_CACHE_SIZE)));
+
 	public JBehaveRunner(Collection<String> searchScopes) {
 		this(searchScopes, null);
 	}
 
 	public JBehaveRunner(Collection<String> searchScopes, Map<String, String> composites) {
+		this(searchScopes, composites, null);
+	}
+
+	private JBehaveRunner(Collection<String> searchScopes, Map<String, String> composites, GherkinMetrics metrics) {
 		if ((composites != null) && !composites.isEmpty()) {
 			this.composites = Collections.unmodifiableMap(new LinkedHashMap<>(composites));
 		} else {
@@ -283,43 +738,306 @@ public class JBehaveRunner {
 
 		// By using this class, we ensure that we can share state between steps used within a
 		// story such that they don't interfere across stories (new instances where applicable)
-		this.stepScanner = new StepScanner(searchScopes);
+		this.stepScanner = StepScanner.get(searchScopes, metrics);
+	}
+
+	/**
+	 * <p>
+	 * Returns the time (in milliseconds) it took to scan for the step classes this runner uses.
+	 * The scan results are shared by all runners with the same search scopes, so this is the time
+	 * taken by the single scan that was performed for them.
+	 * </p>
+	 */
+	public long getStepScanTime() {
+		return this.stepScanner.getScanTime();
+	}
+
+	// The step types are owned by the (shared) scan, so runners with the same scopes return the same set
+	Set<Class<?>> getStepTypes() {
+		return this.stepScanner.getStepTypes();
+	}
+
+	public BoundedCache.Stats getStepMatchStats() {
+		return this.matches.getStats();
 	}
 
 	public Result run(Story story) {
 		return run(story, null);
 	}
 
-	private Result run(Story story, JBehaveSettings settings) {
-		Objects.requireNonNull(story, "Must provide a non-null Story to run");
-		settings = new JBehaveSettings(settings); // Ensure we have sane values
-		final Charset charset = StandardCharsets.UTF_8;
-		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-			BatchFailures failures = new BatchFailures();
-			try (final PrintStream out = new PrintStream(baos, false, charset.name())) {
-				Configuration configuration = new MostUsefulConfiguration() //
-					.useParameterConverters(this.configuration.parameterConverters()) //
-				//
-				;
-				configuration = settings.apply(configuration, out);
-				try (StepsFactory stepsFactory = new StepsFactory(configuration, this.stepScanner.getStepTypes(),
-					this.stepScanner::get)) {
-					PerformableTree tree = new PerformableTree();
-					PerformableTree.RunContext ctx = tree.newRunContext(configuration,
-						stepsFactory.createCandidateSteps(), new PrintStreamEmbedderMonitor(), new MetaFilter(),
-						failures);
-					List<Story> stories = Collections.singletonList(story);
-					tree.addStories(ctx, stories);
-					for (Story s : stories) {
-						tree.perform(ctx, s);
+	/**
+	 * <p>
+	 * A story whose {@link PerformableTree} has been built (and steps matched) up front, such that
+	 * each call to {@link #perform()} only executes the steps, using fresh step instances and
+	 * failure state. Instances are bound to the thread that prepared them, and must be
+	 * {@link #close() closed} when no longer needed.
+	 * </p>
+	 */
+	public final class PreparedStory implements Gherkin.PreparedStory, AutoCloseable {
+		private final Story story;
+		private final JBehaveSettings settings;
+		private OutputBuffer buffer = null;
+		private final PrintStream out;
+		private final StepsFactory stepsFactory;
+		private final PerformableTree tree = new PerformableTree();
+		private final BatchFailures failures = new BatchFailures();
+		private final PerformableTree.RunContext context;
+		private Runnable abortCheck = null;
+		private TimingReporter timings = null;
+		private boolean recording = false;
+		private final AtomicLong runs;
+		private byte[] summary = null;
+		private final GherkinMetrics metrics;
+		private int pendingSteps = 0;
+
+		private PreparedStory(Story story, JBehaveSettings settings) {
+			this.story = Objects.requireNonNull(story, "Must provide a non-null Story to prepare");
+			this.settings = new JBehaveSettings(settings); // Ensure we have sane values
+			this.metrics = GherkinMetrics.safe(this.settings.getMetrics());
+			this.runs = (this.settings.getCapturePolicy() == CapturePolicy.SAMPLED
+				? JBehaveRunner.this.sampledRuns.computeIfAbsent(story, (s) -> new AtomicLong())
+				: null);
+			// When the output is discarded, there's no point in producing it at all
+			final boolean discard = this.settings.getOutputFormat().ignore();
+			this.out = (discard ? null : newOutput());
+			Configuration configuration = new MostUsefulConfiguration() //
+				.useParameterConverters(JBehaveRunner.this.configuration.parameterConverters()) //
+				.useStepPatternParser(JBehaveRunner.PATTERN_PARSER) //
+			//
+			;
+			final MemoizingStepFinder stepFinder = new MemoizingStepFinder(JBehaveRunner.this.matches,
+				JBehaveRunner.this.dispatcher, configuration.keywords());
+			configuration.useStepFinder(stepFinder);
+			// The timings name each step after the method performing it, which only the monitor is told
+			final StepMonitor monitor = new DelegatingStepMonitor(stepFinder.monitor(new SilentStepMonitor())) {
+				@Override
+				public void beforePerforming(String step, boolean dryRun, Method method) {
+					if (PreparedStory.this.recording) {
+						PreparedStory.this.timings.performing(method);
+					}
+					super.beforePerforming(step, dryRun, method);
+				}
+			};
+			configuration
+				.useStepMonitor(this.settings.isRecordLatencies() ? StepLatencies.monitor(monitor) : monitor);
+			configuration.useStepCollector(new MarkUnmatchedStepsAsPending(stepFinder, configuration.keywords()) {
+				@Override
+				public List<Step> collectScenarioSteps(List<CandidateSteps> candidateSteps, Scenario scenario,
+					Map<String, String> parameters, StepMonitor stepMonitor) {
+					final List<Step> steps = super.collectScenarioSteps(candidateSteps, scenario, parameters,
+						stepMonitor);
+					// The steps are collected once, when the story is prepared, so this is what every run finds
+					for (Step step : steps) {
+						if (StepCreator.PendingStep.class.isInstance(step)) {
+							PreparedStory.this.pendingSteps++;
+						}
 					}
+					return steps;
 				}
-				out.flush();
+			});
+			configuration = new JBehaveSettings(this.settings) //
+				.setAbortCheck(this::checkAbort) //
+				.apply(configuration, this.out);
+			// The timings are only reported when a run asks for them
+			final StoryReporterBuilder reporters = configuration.storyReporterBuilder();
+			configuration.useStoryReporterBuilder(new StoryReporterBuilder() {
+				@Override
+				public StoryReporter build(String storyPath) {
+					final StoryReporter reporter = reporters.build(storyPath);
+					if (!PreparedStory.this.recording) { return reporter; }
+					return new DelegatingStoryReporter(reporter, PreparedStory.this.timings);
+				}
+			});
+			this.stepsFactory = new StepsFactory(configuration, JBehaveRunner.this.stepScanner.getStepTypes(),
+				JBehaveRunner.this.stepScanner::get);
+			final List<CandidateSteps> candidateSteps = this.stepsFactory.createCandidateSteps();
+			this.metrics.add(GherkinMetrics.Counter.CANDIDATE_STEPS, candidateSteps.size());
+			this.context = this.tree.newRunContext(configuration, candidateSteps,
+				(discard ? JBehaveRunner.NULL_MONITOR : LoggingEmbedderMonitor.INSTANCE), new MetaFilter(),
+				this.failures);
+			this.tree.addStories(this.context, Collections.singletonList(this.story));
+		}
+
+		private PrintStream newOutput() {
+			try {
+				// The stream writes into whichever buffer the current run has acquired
+				OutputStream target = new OutputStream() {
+					@Override
+					public void write(int b) {
+						OutputBuffer buffer = PreparedStory.this.buffer;
+						if (buffer != null) {
+							buffer.write(b);
+						}
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						OutputBuffer buffer = PreparedStory.this.buffer;
+						if (buffer != null) {
+							buffer.write(b, off, len);
+						}
+					}
+				};
+				return new PrintStream(target, false, JBehaveRunner.CHARSET.name()) {
+					@Override
+					public void close() {
+						// The reporters close their stream after each story, but we re-use it
+						flush();
+					}
+				};
+			} catch (UnsupportedEncodingException e) {
+				throw new UncheckedIOException("Unsupported encoding " + JBehaveRunner.CHARSET.name(), e);
 			}
-			baos.flush();
-			return new Result(story, baos.toString(charset.name()), failures);
-		} catch (IOException e) {
-			throw new UncheckedIOException("Unexpected IOException writing to memory", e);
+		}
+
+		private int getCaptureLimit() {
+			if (this.settings.getCapturePolicy() != CapturePolicy.TRUNCATED) { return 0; }
+			// Binary output can't be cut at an arbitrary point and still be decoded
+			if (this.settings.getOutputFormat().isBinary()) { return 0; }
+			return this.settings.getCaptureLimit();
+		}
+
+		private Result capture(Timing timing) {
+			final OutputFormat format = this.settings.getOutputFormat();
+			final boolean failed = !this.failures.isEmpty();
+			switch (this.settings.getCapturePolicy()) {
+				case ON_FAILURE:
+					if (failed) {
+						break;
+					}
+					return new Result(this.story, OutputFormat.TEXT, getSummary(), this.failures, timing);
+				case SAMPLED:
+					// The first run is always kept, and then one in every N after it
+					final boolean sampled = ((this.runs.getAndIncrement() % this.settings.getCaptureSampleRate()) == 0);
+					if (failed || sampled) {
+						break;
+					}
+					return new Result(this.story, OutputFormat.TEXT, getSummary(), this.failures, timing);
+				case TRUNCATED:
+					// The whole output is kept until the outcome is known, so failed runs keep all of it
+					if (failed) {
+						break;
+					}
+					return new Result(this.story, format, this.buffer.tail(getCaptureLimit()), this.failures, timing);
+				case ALWAYS:
+				default:
+					break;
+			}
+			return new Result(this.story, format, this.buffer.toByteArray(), this.failures, timing);
+		}
+
+		private byte[] getSummary() {
+			// The summary only depends on the story and the settings, so it's only built once
+			if (this.summary == null) {
+				this.summary = String.format("Story [%s] performed successfully (%s output not captured: %s)%n",
+					this.story.getPath(), this.settings.getOutputFormat().name(), this.settings.getCapturePolicy().name())
+					.getBytes(JBehaveRunner.CHARSET);
+			}
+			return this.summary;
+		}
+
+		private void checkAbort() {
+			Runnable abortCheck = this.abortCheck;
+			if (abortCheck != null) {
+				abortCheck.run();
+			}
+		}
+
+		public Story getStory() {
+			return this.story;
+		}
+
+		public JBehaveSettings getSettings() {
+			return new JBehaveSettings(this.settings);
+		}
+
+		@Override
+		public Result perform() {
+			return perform(null, null);
+		}
+
+		@Override
+		public Result perform(Runnable abortCheck, Function<String, Object> variableResolver) {
+			return perform(abortCheck, variableResolver, false);
+		}
+
+		@Override
+		public Result perform(Runnable abortCheck, Function<String, Object> variableResolver,
+			boolean recordTimings) {
+			this.recording = recordTimings;
+			if (recordTimings) {
+				if (this.timings == null) {
+					this.timings = new TimingReporter();
+				}
+				this.timings.reset();
+			}
+			this.abortCheck = (abortCheck != null ? abortCheck : this.settings.getAbortCheck());
+			final Function<String, Object> previousResolver = JBehaveRunner.PARAMETER_CONVERTERS
+				.bindTo(variableResolver != null ? variableResolver : this.settings.getVariableResolver());
+			final StepsFactory previousSteps = JBehaveRunner.ACTIVE_STEPS.get();
+			JBehaveRunner.ACTIVE_STEPS.set(this.stepsFactory);
+			this.buffer = (this.out != null ? OutputBuffer.acquire() : null);
+			try {
+				this.failures.clear();
+				// Get a fresh reporter, so nothing lingers from a prior run's output
+				this.context.currentPath(this.story.getPath());
+				this.context.resetState();
+				this.tree.perform(this.context, this.story);
+				this.metrics.increment(GherkinMetrics.Counter.RUNS);
+				if (!this.failures.isEmpty()) {
+					this.metrics.increment(GherkinMetrics.Counter.FAILURES);
+				}
+				if (this.pendingSteps > 0) {
+					this.metrics.add(GherkinMetrics.Counter.PENDING_STEPS, this.pendingSteps);
+				}
+				final Timing timing = (recordTimings ? this.timings.getTiming() : null);
+				if (this.buffer == null) {
+					return new Result(this.story, this.settings.getOutputFormat(), JBehaveRunner.NO_OUTPUT, this.failures,
+						timing);
+				}
+				this.out.flush();
+				this.metrics.add(GherkinMetrics.Counter.OUTPUT_BYTES, this.buffer.size());
+				return capture(timing);
+			} finally {
+				this.recording = false;
+				if (this.buffer != null) {
+					this.buffer.release();
+					this.buffer = null;
+				}
+				// The next run must get fresh step instances
+				this.stepsFactory.close();
+				JBehaveRunner.PARAMETER_CONVERTERS.bindTo(previousResolver);
+				if (previousSteps != null) {
+					JBehaveRunner.ACTIVE_STEPS.set(previousSteps);
+				} else {
+					JBehaveRunner.ACTIVE_STEPS.remove();
+				}
+				this.abortCheck = null;
+			}
+		}
+
+		@Override
+		public void close() {
+			this.stepsFactory.close();
+		}
+	}
+
+	public PreparedStory prepare(Story story) {
+		return prepare(story, null);
+	}
+
+	public PreparedStory prepare(Story story, JBehaveSettings settings) {
+		return new PreparedStory(story, settings);
+	}
+
+	public PreparedStory prepare(String name, Object source, JBehaveSettings settings) throws Exception {
+		settings = JBehaveSettings.safe(settings);
+		return prepare(JBehaveRunner.parse(settings.getSyntax(), name, source), settings);
+	}
+
+	private Result run(Story story, JBehaveSettings settings) {
+		try (PreparedStory prepared = prepare(story, settings)) {
+			return prepared.perform();
 		}
 	}
 
@@ -29,6 +29,7 @@ package com.armedia.commons.jmeter.gherkin.jbehave;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
@@ -43,7 +44,9 @@ import org.jbehave.core.parsers.StoryParser;
 import org.jbehave.core.parsers.gherkin.GherkinStoryParser;
 import org.jbehave.core.reporters.HtmlOutput;
 import org.jbehave.core.reporters.JsonOutput;
+import org.jbehave.core.reporters.NullStoryReporter;
 import org.jbehave.core.reporters.PrintStreamOutput;
+import org.jbehave.core.reporters.StoryReporter;
 import org.jbehave.core.reporters.StoryReporterBuilder;
 import org.jbehave.core.reporters.TxtOutput;
 import org.jbehave.core.reporters.XmlOutput;
@@ -51,6 +54,8 @@ import org.jbehave.core.steps.DelegatingStepMonitor;
 import org.jbehave.core.steps.NullStepMonitor;
 import org.jbehave.core.steps.StepMonitor;
 
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+
 public class JBehaveSettings implements Serializable, Cloneable {
 	private static final long serialVersionUID = 1L;
 
@@ -94,6 +99,27 @@ public class JBehaveSettings implements Serializable, Cloneable {
 				return new TxtOutput(out, new LocalizedKeywords());
 			}
 		},
+		EVENTS("application/x-gherkin-events") {
+			@Override
+			protected PrintStreamOutput newReporter(PrintStream out) {
+				return null;
+			}
+
+			@Override
+			protected StoryReporter newStoryReporter(PrintStream out) {
+				return new StoryEvents.Reporter(out);
+			}
+
+			@Override
+			public boolean isBinary() {
+				return true;
+			}
+
+			@Override
+			public String render(byte[] output, Charset charset) {
+				return StoryEvents.toXml(output);
+			}
+		},
 		NULL("application/octet-stream") {
 			@Override
 			protected PrintStreamOutput newReporter(PrintStream out) {
@@ -116,34 +142,87 @@ public class JBehaveSettings implements Serializable, Cloneable {
 
 		protected abstract PrintStreamOutput newReporter(PrintStream out);
 
+		protected StoryReporter newStoryReporter(PrintStream out) {
+			return newReporter(out) //
+				.doCompressFailureTrace(false) //
+				.doReportFailureTrace(true) //
+			;
+		}
+
 		protected boolean ignore() {
 			return false;
 		}
 
+		/**
+		 * <p>
+		 * Returns {@code true} if the output isn't text, and must be {@link #render(byte[], Charset)
+		 * rendered} before it can be read.
+		 * </p>
+		 */
+		public boolean isBinary() {
+			return false;
+		}
+
+		/**
+		 * <p>
+		 * Renders the output produced with this format as human-readable text.
+		 * </p>
+		 */
+		public String render(byte[] output, Charset charset) {
+			return new String(output, charset);
+		}
+
 		public final Configuration setReportBuilder(Configuration cfg, PrintStream out) {
 			if (cfg == null) { return null; }
-			if (!ignore()) {
-				cfg.useStoryReporterBuilder(new ReportBuilder(out, this::newReporter));
+			if (ignore()) {
+				// Nothing gets reported, so all runs can share a single reporter that does nothing
+				cfg.useStoryReporterBuilder(NullReportBuilder.INSTANCE);
+			} else {
+				cfg.useStoryReporterBuilder(new ReportBuilder(out, this::newStoryReporter));
 			}
 			return cfg;
 		}
 	}
 
+	/**
+	 * <p>
+	 * Decides how much of a story's output is kept once it's been performed. Failed runs always keep
+	 * their full output, while successful runs which aren't kept only carry a short summary, or (for
+	 * {@link #TRUNCATED}) at most the last {@link JBehaveSettings#getCaptureLimit() limit} bytes.
+	 * </p>
+	 */
+	public static enum CapturePolicy {
+		//
+		ALWAYS, //
+		ON_FAILURE, //
+		SAMPLED, //
+		TRUNCATED, //
+		//
+		;
+	}
+
 	private static final class ReportBuilder extends StoryReporterBuilder {
 		private final PrintStream out;
-		private final Function<PrintStream, PrintStreamOutput> builder;
+		private final Function<PrintStream, StoryReporter> builder;
 
-		private ReportBuilder(PrintStream out, Function<PrintStream, PrintStreamOutput> builder) {
+		private ReportBuilder(PrintStream out, Function<PrintStream, StoryReporter> builder) {
 			this.out = out;
 			this.builder = builder;
 		}
 
 		@Override
-		public PrintStreamOutput build(String name) {
-			return this.builder.apply(this.out) //
-				.doCompressFailureTrace(false) //
-				.doReportFailureTrace(true) //
-			;
+		public StoryReporter build(String name) {
+			return this.builder.apply(this.out);
+		}
+	}
+
+	private static final class NullReportBuilder extends StoryReporterBuilder {
+		private static final NullReportBuilder INSTANCE = new NullReportBuilder();
+		private static final StoryReporter REPORTER = new NullStoryReporter();
+
+		@Override
+		public StoryReporter build(String name) {
+			return NullReportBuilder.REPORTER;
 		}
 	}
 
@@ -151,6 +230,9 @@ public class JBehaveSettings implements Serializable, Cloneable {
 	protected static final boolean DEFAULT_FAIL_ON_PENDING = false;
 	protected static final Syntax DEFAULT_SYNTAX = Syntax.GHERKIN;
 	protected static final OutputFormat DEFAULT_OUTPUT_FORMAT = OutputFormat.XML;
+	protected static final CapturePolicy DEFAULT_CAPTURE_POLICY = CapturePolicy.ALWAYS;
+	protected static final int DEFAULT_CAPTURE_SAMPLE_RATE = 10;
+	protected static final int DEFAULT_CAPTURE_LIMIT = 64 * 1024;
 
 	private static final LazyInitializer<JBehaveSettings> DEFAULTS = new LazyInitializer<JBehaveSettings>() {
 
@@ -183,6 +265,21 @@ public class JBehaveSettings implements Serializable, Cloneable {
 					return fail();
 				}
 
+				@Override
+				public JBehaveSettings setCapturePolicy(CapturePolicy capturePolicy) {
+					return fail();
+				}
+
+				@Override
+				public JBehaveSettings setCaptureSampleRate(int captureSampleRate) {
+					return fail();
+				}
+
+				@Override
+				public JBehaveSettings setCaptureLimit(int captureLimit) {
+					return fail();
+				}
+
 			};
 		}
 	};
@@ -199,7 +296,13 @@ public class JBehaveSettings implements Serializable, Cloneable {
 	private boolean failOnPending = JBehaveSettings.DEFAULT_FAIL_ON_PENDING;
 	private Syntax syntax = JBehaveSettings.DEFAULT_SYNTAX;
 	private OutputFormat outputFormat = JBehaveSettings.DEFAULT_OUTPUT_FORMAT;
+	private CapturePolicy capturePolicy = JBehaveSettings.DEFAULT_CAPTURE_POLICY;
+	private int captureSampleRate = JBehaveSettings.DEFAULT_CAPTURE_SAMPLE_RATE;
+	private int captureLimit = JBehaveSettings.DEFAULT_CAPTURE_LIMIT;
 	private Runnable abortCheck = null;
+	private Function<String, Object> variableResolver = null;
+	private GherkinMetrics metrics = null;
+	private boolean recordLatencies = true;
 
 	static JBehaveSettings safe(JBehaveSettings settings) {
 		return (settings != null ? settings : JBehaveSettings.defaults());
@@ -220,7 +323,13 @@ public class JBehaveSettings implements Serializable, Cloneable {
 		this.failOnPending = other.failOnPending;
 		this.syntax = other.syntax;
 		this.outputFormat = other.outputFormat;
+		this.capturePolicy = other.capturePolicy;
+		this.captureSampleRate = other.captureSampleRate;
+		this.captureLimit = other.captureLimit;
 		this.abortCheck = other.abortCheck;
+		this.variableResolver = other.variableResolver;
+		this.metrics = other.metrics;
+		this.recordLatencies = other.recordLatencies;
 		return this;
 	}
 
@@ -264,6 +373,46 @@ public class JBehaveSettings implements Serializable, Cloneable {
 		return this;
 	}
 
+	public CapturePolicy getCapturePolicy() {
+		return this.capturePolicy;
+	}
+
+	public JBehaveSettings setCapturePolicy(CapturePolicy capturePolicy) {
+		this.capturePolicy = Optional.ofNullable(capturePolicy).orElse(JBehaveSettings.DEFAULT_CAPTURE_POLICY);
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Returns how often the full output of a successful run is kept with
+	 * {@link CapturePolicy#SAMPLED}: once every this many runs (counted across all the threads
+	 * performing the same story).
+	 * </p>
+	 */
+	public int getCaptureSampleRate() {
+		return this.captureSampleRate;
+	}
+
+	public JBehaveSettings setCaptureSampleRate(int captureSampleRate) {
+		this.captureSampleRate = Math.max(1, captureSampleRate);
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Returns the most bytes of output kept for each successful run with
+	 * {@link CapturePolicy#TRUNCATED}.
+	 * </p>
+	 */
+	public int getCaptureLimit() {
+		return this.captureLimit;
+	}
+
+	public JBehaveSettings setCaptureLimit(int captureLimit) {
+		this.captureLimit = Math.max(1, captureLimit);
+		return this;
+	}
+
 	public Runnable getAbortCheck() {
 		return this.abortCheck;
 	}
@@ -273,6 +422,39 @@ public class JBehaveSettings implements Serializable, Cloneable {
 		return this;
 	}
 
+	public Function<String, Object> getVariableResolver() {
+		return this.variableResolver;
+	}
+
+	public JBehaveSettings setVariableResolver(Function<String, Object> variableResolver) {
+		this.variableResolver = variableResolver;
+		return this;
+	}
+
+	public GherkinMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public JBehaveSettings setMetrics(GherkinMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the time each step takes is recorded into the {@link StepLatencies}, which
+	 * runs that aren't part of the test (i.e. warm-ups) shouldn't be.
+	 * </p>
+	 */
+	public boolean isRecordLatencies() {
+		return this.recordLatencies;
+	}
+
+	public JBehaveSettings setRecordLatencies(boolean recordLatencies) {
+		this.recordLatencies = recordLatencies;
+		return this;
+	}
+
 	Configuration apply(Configuration configuration, PrintStream out) {
 		configuration = configuration.doDryRun(this.dryRun);
 		if (this.failOnPending) {
@@ -310,7 +492,8 @@ public class JBehaveSettings implements Serializable, Cloneable {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(this.dryRun, this.failOnPending, this.outputFormat, this.syntax);
+		return Objects.hash(this.dryRun, this.failOnPending, this.outputFormat, this.syntax, this.capturePolicy,
+			this.captureSampleRate, this.captureLimit, this.recordLatencies);
 	}
 
 	@Override
@@ -323,12 +506,18 @@ public class JBehaveSettings implements Serializable, Cloneable {
 		if (this.failOnPending != other.failOnPending) { return false; }
 		if (this.outputFormat != other.outputFormat) { return false; }
 		if (this.syntax != other.syntax) { return false; }
+		if (this.capturePolicy != other.capturePolicy) { return false; }
+		if (this.captureSampleRate != other.captureSampleRate) { return false; }
+		if (this.captureLimit != other.captureLimit) { return false; }
+		if (this.recordLatencies != other.recordLatencies) { return false; }
 		return true;
 	}
 
 	@Override
 	public String toString() {
-		return String.format("JBehaveSettings [dryRun=%s, failOnPending=%s, syntax=%s, outputFormat=%s]", this.dryRun,
-			this.failOnPending, this.syntax, this.outputFormat);
+		return String.format(
+			"JBehaveSettings [dryRun=%s, failOnPending=%s, syntax=%s, outputFormat=%s, capturePolicy=%s, captureSampleRate=%d, captureLimit=%d, recordLatencies=%s]",
+			this.dryRun, this.failOnPending, this.syntax, this.outputFormat, this.capturePolicy, this.captureSampleRate,
+			this.captureLimit, this.recordLatencies);
 	}
 }
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import org.jbehave.core.embedder.PrintStreamEmbedderMonitor;
+import org.jbehave.core.embedder.PrintingEmbedderMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An embedder monitor which sends its events to the log at debug level, instead of writing them to
+ * {@link System#out} like {@link PrintStreamEmbedderMonitor} does. {@link System#out} is
+ * synchronized, so with many threads running stories they'd all be serialized on it. This monitor
+ * holds no state, so a single instance is shared by all runs, and events are only formatted when
+ * debugging is enabled.
+ * </p>
+ */
+final class LoggingEmbedderMonitor extends PrintingEmbedderMonitor {
+	private static final Logger LOG = LoggerFactory.getLogger(LoggingEmbedderMonitor.class);
+
+	static final LoggingEmbedderMonitor INSTANCE = new LoggingEmbedderMonitor();
+
+	private LoggingEmbedderMonitor() {
+	}
+
+	@Override
+	protected void print(String format, Object... args) {
+		if (LoggingEmbedderMonitor.LOG.isDebugEnabled()) {
+			LoggingEmbedderMonitor.LOG.debug(String.format(format, args).trim());
+		}
+	}
+
+	@Override
+	protected void printStackTrace(Throwable e) {
+		LoggingEmbedderMonitor.LOG.debug("Embedder failure", e);
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jbehave.core.configuration.Keywords;
+import org.jbehave.core.model.StepPattern;
+import org.jbehave.core.steps.DelegatingStepMonitor;
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepFinder;
+import org.jbehave.core.steps.StepMonitor;
+import org.jbehave.core.steps.StepType;
+
+import com.armedia.commons.jmeter.tools.ConcurrentMemo;
+
+/**
+ * <p>
+ * A {@link StepFinder} which remembers which candidate each step's text was matched to, and
+ * places that candidate first the next time the same text needs to be matched, so matching it
+ * only costs a single pattern match.
+ * </p>
+ * <p>
+ * This is safe because JBehave uses the first matching candidate: the remembered candidate was
+ * the first to match that text before, so no other candidate ahead of it can match it now.
+ * </p>
+ * <p>
+ * The memo is keyed by the step's text alone, so an {@code And} step is remembered with the type
+ * of the step it followed when it was first matched. If the same text later follows a step of a
+ * different type, JBehave's type check (which resolves the {@code And} against the previous step
+ * before any pattern is tried) rejects the remembered candidate, and the rest are tried in their
+ * original order, so the outcome is the same as if the memo weren't there.
+ * </p>
+ * <p>
+ * Text which hasn't been matched before is run through a {@link StepDispatcher}, and the only
+ * candidates which could match it are placed ahead of the rest, so the first match is found
+ * after trying only a handful of patterns rather than (on average) half of them. The remaining
+ * candidates are kept behind those, in their original order, so nothing is ever lost.
+ * </p>
+ * <p>
+ * The memo (and the dispatcher) must only be shared by finders which are given the same
+ * candidates, in the same order. The dispatcher checks this for itself, and falls back to the
+ * plain ordering otherwise. The finder itself is not thread-safe, and its
+ * {@link #monitor(StepMonitor) monitor} must be the step monitor used by the candidates it
+ * prioritises.
+ * </p>
+ */
+final class MemoizingStepFinder extends StepFinder {
+
+	static final class Match {
+		private final StepType stepType;
+		private final String pattern;
+		private final Method method;
+
+		private Match(CachingStepPatternParser.ParsedPattern pattern, Method method) {
+			this.stepType = pattern.type();
+			this.pattern = pattern.getPattern();
+			this.method = method;
+		}
+
+		private boolean isFor(StepCandidate candidate) {
+			if (this.stepType != candidate.getStepType()) { return false; }
+			if (!Objects.equals(this.method, candidate.getMethod())) { return false; }
+			if (!Objects.equals(this.pattern, candidate.getPatternAsString())) { return false; }
+			return true;
+		}
+	}
+
+	private final ConcurrentMemo<String, Match> memo;
+	private final AtomicReference<StepDispatcher> dispatcher;
+	private final Keywords keywords;
+	private String pending = null;
+	private boolean typeMatched = false;
+
+	MemoizingStepFinder(ConcurrentMemo<String, Match> memo, AtomicReference<StepDispatcher> dispatcher,
+		Keywords keywords) {
+		this.memo = Objects.requireNonNull(memo, "Must provide a memo to store the matches in");
+		this.dispatcher = Objects.requireNonNull(dispatcher, "Must provide a reference to share the dispatcher in");
+		this.keywords = Objects.requireNonNull(keywords, "Must provide the keywords to dispatch with");
+	}
+
+	/**
+	 * <p>
+	 * Returns a step monitor which feeds the matches it sees into this finder's memo, and then
+	 * delegates to the given monitor.
+	 * </p>
+	 */
+	StepMonitor monitor(StepMonitor delegate) {
+		return new DelegatingStepMonitor(delegate) {
+			@Override
+			public void stepMatchesType(String step, String previous, boolean matches, StepType stepType,
+				Method method, Object stepsInstance) {
+				MemoizingStepFinder.this.typeMatched = matches;
+				super.stepMatchesType(step, previous, matches, stepType, method, stepsInstance);
+			}
+
+			@Override
+			public void stepMatchesPattern(String step, boolean matches, StepPattern pattern, Method method,
+				Object stepsInstance) {
+				matched(step, matches, pattern, method);
+				super.stepMatchesPattern(step, matches, pattern, method, stepsInstance);
+			}
+		};
+	}
+
+	private void matched(String step, boolean matches, StepPattern pattern, Method method) {
+		// Only the first full match for the step being prioritised counts
+		if ((this.pending == null) || !matches || !this.typeMatched) { return; }
+		if (!this.pending.equals(step)) { return; }
+		this.pending = null;
+		if (CachingStepPatternParser.ParsedPattern.class.isInstance(pattern)) {
+			this.memo.put(step, new Match(CachingStepPatternParser.ParsedPattern.class.cast(pattern), method));
+		}
+	}
+
+	private StepDispatcher getDispatcher(List<StepCandidate> candidates) {
+		StepDispatcher dispatcher = this.dispatcher.get();
+		if (dispatcher != null) { return dispatcher; }
+		// The candidates are always listed in the same order, so the first list seen will do
+		this.dispatcher.compareAndSet(null, new StepDispatcher(this.keywords, candidates));
+		return this.dispatcher.get();
+	}
+
+	private List<StepCandidate> dispatch(String stepAsText, List<StepCandidate> candidates) {
+		BitSet plausible = getDispatcher(candidates).dispatch(stepAsText, candidates);
+		if ((plausible == null) || plausible.isEmpty()) { return super.prioritise(stepAsText, candidates); }
+
+		Set<StepCandidate> first = Collections.newSetFromMap(new IdentityHashMap<>());
+		// The dispatcher's positions refer to the list as given, so collect these before prioritising
+		for (int i = plausible.nextSetBit(0); i >= 0; i = plausible.nextSetBit(i + 1)) {
+			first.add(candidates.get(i));
+		}
+		candidates = super.prioritise(stepAsText, candidates);
+		List<StepCandidate> dispatched = new ArrayList<>(candidates.size());
+		candidates.stream().filter(first::contains).forEach(dispatched::add);
+		candidates.stream().filter((c) -> !first.contains(c)).forEach(dispatched::add);
+		return dispatched;
+	}
+
+	@Override
+	public List<StepCandidate> prioritise(String stepAsText, List<StepCandidate> candidates) {
+		this.pending = null;
+		Match match = this.memo.get(stepAsText);
+		if (match == null) {
+			this.pending = stepAsText;
+			return dispatch(stepAsText, candidates);
+		}
+		candidates = super.prioritise(stepAsText, candidates);
+		for (int i = 0; i < candidates.size(); i++) {
+			StepCandidate candidate = candidates.get(i);
+			if (match.isFor(candidate)) {
+				if (i > 0) {
+					candidates.remove(i);
+					candidates.add(0, candidate);
+				}
+				break;
+			}
+		}
+		return candidates;
+	}
+}
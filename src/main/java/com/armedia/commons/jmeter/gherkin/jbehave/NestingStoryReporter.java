@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import org.jbehave.core.model.OutcomesTable;
+import org.jbehave.core.model.Scenario;
+import org.jbehave.core.model.Story;
+import org.jbehave.core.reporters.NullStoryReporter;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing.Outcome;
+
+/**
+ * <p>
+ * A reporter which turns JBehave's callbacks into properly nested begin/end pairs for the story,
+ * each scenario, and each step, with the {@link System#nanoTime()} at which each happened. A step
+ * or scenario which is still open when the next one begins (or its parent ends) is ended as
+ * successful. The scenarios of given stories are folded into the scenario which includes them,
+ * while their steps are reported as that scenario's. Instances are confined to the thread
+ * performing the story, and must be {@link #reset() reset} before each run.
+ * </p>
+ */
+abstract class NestingStoryReporter extends NullStoryReporter {
+
+	private int givenStories = 0;
+	private boolean scenario = false;
+	private boolean step = false;
+
+	void reset() {
+		this.givenStories = 0;
+		this.scenario = false;
+		this.step = false;
+	}
+
+	protected abstract void beginStory(Story story, long now);
+
+	protected abstract void endStory(long now);
+
+	protected abstract void beginScenario(Scenario scenario, long now);
+
+	protected abstract void endScenario(long now);
+
+	protected abstract void beginStep(String step, long now);
+
+	protected abstract void endStep(long now, Outcome outcome, Throwable failure);
+
+	private void closeStep(long now) {
+		if (!this.step) { return; }
+		this.step = false;
+		endStep(now, Outcome.SUCCESSFUL, null);
+	}
+
+	private void closeScenario(long now) {
+		closeStep(now);
+		if (!this.scenario) { return; }
+		this.scenario = false;
+		endScenario(now);
+	}
+
+	private void closeStep(String step, Outcome outcome, Throwable failure) {
+		final long now = System.nanoTime();
+		if (!this.step) {
+			// Pending, skipped and before/after steps are reported without being started
+			beginStep(step, now);
+		}
+		this.step = false;
+		endStep(now, outcome, failure);
+	}
+
+	@Override
+	public void beforeStory(Story story, boolean givenStory) {
+		if (givenStory) {
+			this.givenStories++;
+			return;
+		}
+		beginStory(story, System.nanoTime());
+	}
+
+	@Override
+	public void afterStory(boolean givenStory) {
+		if (givenStory) {
+			this.givenStories = Math.max(0, this.givenStories - 1);
+			return;
+		}
+		final long now = System.nanoTime();
+		closeScenario(now);
+		endStory(now);
+	}
+
+	@Override
+	public void beforeScenario(Scenario scenario) {
+		if (this.givenStories > 0) { return; }
+		final long now = System.nanoTime();
+		closeScenario(now);
+		this.scenario = true;
+		beginScenario(scenario, now);
+	}
+
+	@Override
+	public void afterScenario() {
+		if (this.givenStories > 0) { return; }
+		closeScenario(System.nanoTime());
+	}
+
+	@Override
+	public void beforeStep(String step) {
+		final long now = System.nanoTime();
+		closeStep(now);
+		this.step = true;
+		beginStep(step, now);
+	}
+
+	@Override
+	public void successful(String step) {
+		closeStep(step, Outcome.SUCCESSFUL, null);
+	}
+
+	@Override
+	public void pending(String step) {
+		closeStep(step, Outcome.PENDING, null);
+	}
+
+	@Override
+	public void notPerformed(String step) {
+		closeStep(step, Outcome.NOT_PERFORMED, null);
+	}
+
+	@Override
+	public void failed(String step, Throwable cause) {
+		closeStep(step, Outcome.FAILED, cause);
+	}
+
+	@Override
+	public void failedOutcomes(String step, OutcomesTable table) {
+		closeStep(step, Outcome.FAILED, table.failureCause());
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.jbehave.core.configuration.Keywords;
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepType;
+
+/**
+ * <p>
+ * Compiles a list of step candidates into a trie (one per step type) keyed on the literal words
+ * that lead each candidate's pattern, up to its first parameter. Looking up a step's text walks
+ * the trie along the text's words, yielding the (usually very few) candidates whose leading
+ * words are all present, in time proportional to the length of the text rather than the number
+ * of candidates. Only those candidates can possibly match the text, so they're the only ones
+ * that need to be tried with their regular expressions.
+ * </p>
+ * <p>
+ * Instances are immutable and thread-safe, and apply to any list with the same candidate types
+ * and patterns in the same order as the one they were built from. Every list given to
+ * {@link #dispatch(String, List)} is checked against those in full, so a different list (even one
+ * of the same size) is never dispatched with the wrong positions.
+ * </p>
+ */
+final class StepDispatcher {
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final class Node {
+		private final Map<String, Node> children = new HashMap<>();
+		private final List<Integer> candidates = new ArrayList<>();
+
+		private Node child(String word) {
+			return this.children.computeIfAbsent(word, (w) -> new Node());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the literal words the given pattern starts with, up to (and excluding) the first word
+	 * which contains a parameter. Patterns containing regex alternations are treated as having no
+	 * literal words, since their words aren't really literal.
+	 * </p>
+	 */
+	static List<String> getLeadingWords(String pattern) {
+		if (pattern.indexOf('|') >= 0) { return Collections.emptyList(); }
+		List<String> words = new ArrayList<>();
+		for (String word : StepDispatcher.WHITESPACE.split(pattern.trim())) {
+			if (word.isEmpty() || (word.indexOf('$') >= 0)) {
+				break;
+			}
+			words.add(word);
+		}
+		return words;
+	}
+
+	private final Keywords keywords;
+	private final String[] patterns;
+	private final StepType[] types;
+	private final Map<StepType, Node> tries = new EnumMap<>(StepType.class);
+
+	StepDispatcher(Keywords keywords, List<StepCandidate> candidates) {
+		this.keywords = keywords;
+		this.patterns = new String[candidates.size()];
+		this.types = new StepType[candidates.size()];
+		for (int i = 0; i < this.patterns.length; i++) {
+			StepCandidate candidate = candidates.get(i);
+			this.patterns[i] = candidate.getPatternAsString();
+			this.types[i] = candidate.getStepType();
+			Node node = this.tries.computeIfAbsent(candidate.getStepType(), (t) -> new Node());
+			for (String word : StepDispatcher.getLeadingWords(this.patterns[i])) {
+				node = node.child(word);
+			}
+			node.candidates.add(i);
+		}
+	}
+
+	int size() {
+		return this.patterns.length;
+	}
+
+	/**
+	 * <p>
+	 * Returns {@code true} if the given candidates have the same types and patterns, in the same
+	 * order, as the ones this dispatcher was built from.
+	 * </p>
+	 */
+	boolean accepts(List<StepCandidate> candidates) {
+		if (candidates.size() != this.patterns.length) { return false; }
+		for (int i = 0; i < this.patterns.length; i++) {
+			StepCandidate candidate = candidates.get(i);
+			if (this.types[i] != candidate.getStepType()) { return false; }
+			if (!this.patterns[i].equals(candidate.getPatternAsString())) { return false; }
+		}
+		return true;
+	}
+
+	private void collect(Node node, String[] words, BitSet found) {
+		node.candidates.forEach(found::set);
+		for (String word : words) {
+			node = node.children.get(word);
+			if (node == null) { return; }
+			node.candidates.forEach(found::set);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the positions, within the given candidates, of the only candidates which could match
+	 * the given step, or {@code null} if this dispatcher can't tell (i.e. the candidates aren't the
+	 * ones it was built from, or the step doesn't start with a known keyword).
+	 * </p>
+	 */
+	BitSet dispatch(String stepAsText, List<StepCandidate> candidates) {
+		if (!accepts(candidates)) { return null; }
+		final List<StepType> types;
+		final String text;
+		try {
+			if (this.keywords.isAndStep(stepAsText)) {
+				// We don't know which step this follows, so try all types
+				types = new ArrayList<>(this.tries.keySet());
+			} else {
+				types = Collections.singletonList(this.keywords.stepTypeFor(stepAsText));
+			}
+			text = stepAsText.substring(this.keywords.startingWord(stepAsText).length()).trim();
+		} catch (RuntimeException e) {
+			return null;
+		}
+
+		String[] words = (text.isEmpty() ? new String[0] : StepDispatcher.WHITESPACE.split(text));
+		BitSet found = new BitSet(this.patterns.length);
+		for (StepType type : types) {
+			Node root = this.tries.get(type);
+			if (root != null) {
+				collect(root, words, found);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin;
+
+/**
+ * <p>
+ * Annotation processor which finds all the concrete {@link Gherkin.Steps} classes (including those
+ * which inherit the annotation) at compile time, and writes them into the {@link #INDEX} resource.
+ * When this index is available, the step classes it covers are loaded directly instead of scanning
+ * the classpath root it was found in for them. Other classpath roots are still scanned.
+ * </p>
+ * <p>
+ * The index is a simple text file with one fully-qualified (binary) class name per line. Lines
+ * starting with {@code #} are comments.
+ * </p>
+ */
+@SupportedAnnotationTypes({
+	"com.armedia.commons.jmeter.gherkin.Gherkin.Steps", //
+	"org.jbehave.core.annotations.Given", //
+	"org.jbehave.core.annotations.When", //
+	"org.jbehave.core.annotations.Then", //
+	"org.jbehave.core.annotations.Alias", //
+	"org.jbehave.core.annotations.Aliases" //
+})
+public class StepIndexProcessor extends AbstractProcessor {
+
+	public static final String INDEX = "META-INF/gherkin/steps.index";
+
+	private static final String STEPS_ANNOTATION = Gherkin.Steps.class.getCanonicalName();
+
+	private final Set<String> steps = new TreeSet<>();
+	private final Set<String> processed = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+			return false;
+		}
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			process(type);
+		}
+		// Never claim the annotations, other processors may be interested in them as well
+		return false;
+	}
+
+	private void process(TypeElement type) {
+		final String name = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+		this.processed.add(name);
+		if (isSteps(type)) {
+			this.steps.add(name);
+		}
+		// Nested types are steps candidates too
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			process(nested);
+		}
+	}
+
+	private boolean isSteps(TypeElement type) {
+		// These are the same rules the runtime scan applies to the classes it finds
+		if (type.getKind() != ElementKind.CLASS) { return false; }
+		Set<Modifier> modifiers = type.getModifiers();
+		if (modifiers.contains(Modifier.ABSTRACT)) { return false; }
+		if ((type.getNestingKind().isNested()) && !modifiers.contains(Modifier.STATIC)) { return false; }
+
+		// The annotation is @Inherited, so we must look up the hierarchy
+		boolean annotated = false;
+		for (TypeElement t = type; (t != null) && !annotated; t = getSuperclass(t)) {
+			for (AnnotationMirror a : t.getAnnotationMirrors()) {
+				if (StepIndexProcessor.STEPS_ANNOTATION.equals(getName(a))) {
+					annotated = true;
+					break;
+				}
+			}
+		}
+		if (!annotated) { return false; }
+
+		// It must have a no-argument constructor, regardless of its visibility
+		for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (c.getParameters().isEmpty()) { return true; }
+		}
+		this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+			"Step class has no default constructor, it will not be indexed", type);
+		return false;
+	}
+
+	private TypeElement getSuperclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) { return null; }
+		return TypeElement.class.cast(DeclaredType.class.cast(superclass).asElement());
+	}
+
+	private String getName(AnnotationMirror a) {
+		return TypeElement.class.cast(a.getAnnotationType().asElement()).getQualifiedName().toString();
+	}
+
+	private Set<String> readIndex() {
+		// On incremental builds, we only see the changed sources, so we must preserve the entries
+		// for classes we didn't get to see, as long as they still exist
+		Set<String> index = new TreeSet<>();
+		try {
+			FileObject old = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+				StepIndexProcessor.INDEX);
+			try (Reader r = old.openReader(true)) {
+				StepIndexProcessor.readIndex(r, index);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// No prior index, so nothing to preserve
+			return index;
+		}
+		index.removeIf((c) -> this.processed.contains(c)
+			|| (this.processingEnv.getElementUtils().getTypeElement(c.replace('$', '.')) == null));
+		return index;
+	}
+
+	private void writeIndex() {
+		Set<String> index = readIndex();
+		index.addAll(this.steps);
+		if (index.isEmpty()) { return; }
+		try {
+			FileObject out = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+				StepIndexProcessor.INDEX);
+			try (Writer w = out.openWriter()) {
+				StepIndexProcessor.writeIndex(w, index);
+			}
+		} catch (IOException e) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				"Failed to write the step index " + StepIndexProcessor.INDEX + ": " + e.getMessage());
+		}
+	}
+
+	static void writeIndex(Writer w, Collection<String> index) {
+		@SuppressWarnings("resource")
+		PrintWriter pw = new PrintWriter(w);
+		pw.println("# Generated by " + StepIndexProcessor.class.getCanonicalName() + ", do not edit");
+		index.forEach(pw::println);
+		pw.flush();
+	}
+
+	static void readIndex(Reader r, Set<String> index) throws IOException {
+		BufferedReader br = new BufferedReader(r);
+		for (String line = br.readLine(); line != null; line = br.readLine()) {
+			if (line.startsWith("#") || line.trim().isEmpty()) {
+				continue;
+			}
+			index.add(line.trim());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the index from the given stream, returning the names of the step classes it contains.
+	 * </p>
+	 */
+	static Set<String> readIndex(InputStream in) throws IOException {
+		Set<String> index = new TreeSet<>();
+		StepIndexProcessor.readIndex(new InputStreamReader(in, StandardCharsets.UTF_8), index);
+		return Collections.unmodifiableSet(index);
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import org.jbehave.core.steps.DelegatingStepMonitor;
+import org.jbehave.core.steps.StepMonitor;
+
+import com.armedia.commons.jmeter.tools.LatencyHistogram;
+
+/**
+ * <p>
+ * The execution times of every step performed by any thread, kept in a {@link LatencyHistogram}
+ * per step pattern (i.e. {@code Given a user named $name}, rather than each of the texts that
+ * match it). Steps matched through an alias are counted under their method's main pattern.
+ * </p>
+ */
+public final class StepLatencies {
+
+	public static final String ENABLED = "gherkin.jbehave.stepLatencies";
+
+	private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+	private StepLatencies() {
+	}
+
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(System.getProperty(StepLatencies.ENABLED, "true"));
+	}
+
+	static LatencyHistogram get(String pattern) {
+		return StepLatencies.HISTOGRAMS.computeIfAbsent(pattern, (p) -> new LatencyHistogram());
+	}
+
+	static String getPattern(Method method) {
+		Given given = method.getAnnotation(Given.class);
+		if (given != null) { return "Given " + given.value(); }
+		When when = method.getAnnotation(When.class);
+		if (when != null) { return "When " + when.value(); }
+		Then then = method.getAnnotation(Then.class);
+		if (then != null) { return "Then " + then.value(); }
+		return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+	}
+
+	/**
+	 * <p>
+	 * Returns a snapshot of the histogram of each pattern performed since the last
+	 * {@link #reset() reset}, sorted by pattern. It may be taken at any time, including while the
+	 * steps are still running.
+	 * </p>
+	 */
+	public static SortedMap<String, LatencyHistogram.Snapshot> snapshot() {
+		SortedMap<String, LatencyHistogram.Snapshot> snapshot = new TreeMap<>();
+		StepLatencies.HISTOGRAMS.forEach((pattern, histogram) -> {
+			LatencyHistogram.Snapshot s = histogram.snapshot();
+			if (s.getCount() > 0) {
+				snapshot.put(pattern, s);
+			}
+		});
+		return Collections.unmodifiableSortedMap(snapshot);
+	}
+
+	/**
+	 * <p>
+	 * Renders the current {@link #snapshot() snapshot} as a table, one line per pattern, with the
+	 * times in milliseconds.
+	 * </p>
+	 */
+	public static String format() {
+		final StringBuilder b = new StringBuilder();
+		b.append(String.format("%10s %10s %10s %10s %10s %10s  %s%n", "count", "mean", "p50", "p90", "p99", "max",
+			"step"));
+		StepLatencies.snapshot().forEach((pattern, s) -> {
+			b.append(String.format("%10d %10.3f %10.3f %10.3f %10.3f %10.3f  %s%n", s.getCount(), s.getMean() / 1e6,
+				s.getValueAtPercentile(50) / 1e6, s.getValueAtPercentile(90) / 1e6, s.getValueAtPercentile(99) / 1e6,
+				s.getMax() / 1e6, pattern));
+		});
+		return b.toString();
+	}
+
+	/**
+	 * <p>
+	 * Clears the histograms. They're cleared in place, since the monitors hold on to them.
+	 * </p>
+	 */
+	public static void reset() {
+		StepLatencies.HISTOGRAMS.values().forEach(LatencyHistogram::reset);
+	}
+
+	/**
+	 * <p>
+	 * Returns a step monitor which records the time each step takes to perform, and then
+	 * delegates to the given one (or the given monitor itself, if the latencies are disabled).
+	 * The returned monitor is confined to the thread performing the story.
+	 * </p>
+	 */
+	static StepMonitor monitor(StepMonitor delegate) {
+		if (!StepLatencies.isEnabled()) { return delegate; }
+		return new DelegatingStepMonitor(delegate) {
+			// Composite steps perform their steps while they're performed, so they nest
+			private long[] starts = new long[8];
+			private int depth = 0;
+			private final Map<Method, LatencyHistogram> histograms = new HashMap<>();
+
+			@Override
+			public void beforePerforming(String step, boolean dryRun, Method method) {
+				super.beforePerforming(step, dryRun, method);
+				if (this.depth == this.starts.length) {
+					this.starts = Arrays.copyOf(this.starts, this.depth * 2);
+				}
+				this.starts[this.depth++] = System.nanoTime();
+			}
+
+			@Override
+			public void afterPerforming(String step, boolean dryRun, Method method) {
+				final long end = System.nanoTime();
+				// Steps which failed before they started (i.e. aborted) weren't timed
+				if (this.depth > 0) {
+					final long start = this.starts[--this.depth];
+					if (!dryRun && (method != null)) {
+						LatencyHistogram histogram = this.histograms.get(method);
+						if (histogram == null) {
+							histogram = StepLatencies.get(StepLatencies.getPattern(method));
+							this.histograms.put(method, histogram);
+						}
+						histogram.record(end - start);
+					}
+				}
+				super.afterPerforming(step, dryRun, method);
+			}
+		};
+	}
+}
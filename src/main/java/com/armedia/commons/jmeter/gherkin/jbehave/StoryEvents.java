@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.jbehave.core.failures.UUIDExceptionWrapper;
+import org.jbehave.core.model.Scenario;
+import org.jbehave.core.model.Story;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing.Outcome;
+
+/**
+ * <p>
+ * The compact output written by {@link JBehaveSettings.OutputFormat#EVENTS}, and the means to decode
+ * it. The output is a sequence of records, each of which is prefixed by its length (as an unsigned
+ * variable-length integer), so readers can skip the types they don't know. Each record starts with
+ * its {@link Type} and the nanoseconds elapsed since the story started, followed by:
+ * </p>
+ * <ul>
+ * <li>for the {@code *_START} records, the name of the story, scenario, or step</li>
+ * <li>for the {@code *_END} records, the duration in nanoseconds, the {@link Outcome}, and the
+ * number of the {@link Type#FAILURE FAILURE} record which describes the failure (0 if none)</li>
+ * <li>for the {@link Type#FAILURE FAILURE} records, their number and the failure's description</li>
+ * </ul>
+ * <p>
+ * Numbers are written as unsigned variable-length integers, and strings as their UTF-8 length
+ * followed by their UTF-8 bytes. Nothing is formatted while the story runs: the output is only
+ * rendered as XML or JSON when someone asks for it.
+ * </p>
+ */
+public final class StoryEvents {
+
+	public static enum Type {
+		//
+		STORY_START, //
+		STORY_END, //
+		SCENARIO_START, //
+		SCENARIO_END, //
+		STEP_START, //
+		STEP_END, //
+		FAILURE, //
+		//
+		;
+
+		private static final Type[] VALUES = Type.values();
+
+		private static Type decode(int code) {
+			return (((code > 0) && (code <= Type.VALUES.length)) ? Type.VALUES[code - 1] : null);
+		}
+
+		private int code() {
+			return ordinal() + 1;
+		}
+	}
+
+	public static final class Event {
+		private final Type type;
+		private final long offset;
+		private final long duration;
+		private final Outcome outcome;
+		private final int failure;
+		private final String text;
+
+		private Event(Type type, long offset, long duration, Outcome outcome, int failure, String text) {
+			this.type = type;
+			this.offset = offset;
+			this.duration = duration;
+			this.outcome = outcome;
+			this.failure = failure;
+			this.text = text;
+		}
+
+		public Type getType() {
+			return this.type;
+		}
+
+		public long getOffsetNanos() {
+			return this.offset;
+		}
+
+		public long getDurationNanos() {
+			return this.duration;
+		}
+
+		public Outcome getOutcome() {
+			return this.outcome;
+		}
+
+		/**
+		 * <p>
+		 * Returns the number of the failure this event refers to (or is, for {@link Type#FAILURE}
+		 * events), or 0 if there's none.
+		 * </p>
+		 */
+		public int getFailure() {
+			return this.failure;
+		}
+
+		/**
+		 * <p>
+		 * Returns the name of the story, scenario, or step for the {@code *_START} events, or the
+		 * description of the failure for {@link Type#FAILURE} events.
+		 * </p>
+		 */
+		public String getText() {
+			return this.text;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Event [type=%s, offset=%d, duration=%d, outcome=%s, failure=%d, text=%s]", this.type,
+				this.offset, this.duration, this.outcome, this.failure, this.text);
+		}
+	}
+
+	/**
+	 * <p>
+	 * The reporter which writes the events, as {@link NestingStoryReporter} nests them. Each record
+	 * is assembled in a scratch buffer and written to the output in a single call.
+	 * </p>
+	 */
+	static final class Reporter extends NestingStoryReporter {
+		private final PrintStream out;
+		private byte[] record = new byte[256];
+		private int length = 0;
+
+		private long base = 0;
+		private long scenarioStart = 0;
+		private long stepStart = 0;
+		private Outcome storyOutcome = Outcome.SUCCESSFUL;
+		private int storyFailure = 0;
+		private Outcome scenarioOutcome = Outcome.SUCCESSFUL;
+		private int scenarioFailure = 0;
+		private int failures = 0;
+
+		Reporter(PrintStream out) {
+			this.out = Objects.requireNonNull(out, "Must provide a stream to write the events to");
+		}
+
+		private void ensure(int more) {
+			if ((this.length + more) > this.record.length) {
+				this.record = Arrays.copyOf(this.record, Math.max(this.record.length * 2, this.length + more));
+			}
+		}
+
+		private void putNumber(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				this.record[this.length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.record[this.length++] = (byte) value;
+		}
+
+		private void putString(String s) {
+			if (s == null) {
+				s = "";
+			}
+			final int n = s.length();
+			int bytes = 0;
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					bytes++;
+				} else if (c < 0x800) {
+					bytes += 2;
+				} else if (Character.isHighSurrogate(c) && ((i + 1) < n) && Character.isLowSurrogate(s.charAt(i + 1))) {
+					bytes += 4;
+					i++;
+				} else if (Character.isSurrogate(c)) {
+					bytes++; // Unpaired surrogates are written as '?', like String.getBytes() does
+				} else {
+					bytes += 3;
+				}
+			}
+			putNumber(bytes);
+			ensure(bytes);
+			final byte[] r = this.record;
+			int p = this.length;
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					r[p++] = (byte) c;
+				} else if (c < 0x800) {
+					r[p++] = (byte) (0xC0 | (c >> 6));
+					r[p++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && ((i + 1) < n) && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					r[p++] = (byte) (0xF0 | (cp >> 18));
+					r[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					r[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					r[p++] = (byte) (0x80 | (cp & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					r[p++] = (byte) '?';
+				} else {
+					r[p++] = (byte) (0xE0 | (c >> 12));
+					r[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					r[p++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			this.length = p;
+		}
+
+		private void begin(Type type, long offset) {
+			// Leave room for the length prefix, which is filled in once the record is complete
+			this.length = 5;
+			putNumber(type.code());
+			putNumber(offset);
+		}
+
+		private void end() {
+			int size = this.length - 5;
+			// Write the length prefix right before the payload
+			int prefix = 1;
+			for (int v = size; (v & ~0x7F) != 0; v >>>= 7) {
+				prefix++;
+			}
+			int p = 5 - prefix;
+			int v = size;
+			while ((v & ~0x7F) != 0) {
+				this.record[p++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			this.record[p] = (byte) v;
+			this.out.write(this.record, 5 - prefix, size + prefix);
+		}
+
+		private void start(Type type, long offset, String name) {
+			begin(type, offset);
+			putString(name);
+			end();
+		}
+
+		private void finish(Type type, long offset, long start, Outcome outcome, int failure) {
+			begin(type, offset);
+			putNumber(Math.max(0, offset - start));
+			putNumber(outcome.ordinal());
+			putNumber(failure);
+			end();
+		}
+
+		private int failure(long offset, Throwable cause) {
+			if (cause == null) { return 0; }
+			if ((cause instanceof UUIDExceptionWrapper) && (cause.getCause() != null)) {
+				cause = cause.getCause();
+			}
+			final int id = ++this.failures;
+			begin(Type.FAILURE, offset);
+			putNumber(id);
+			String message = cause.getMessage();
+			putString(message != null ? cause.getClass().getName() + ": " + message : cause.getClass().getName());
+			end();
+			return id;
+		}
+
+		@Override
+		protected void beginStory(Story story, long now) {
+			this.base = now;
+			this.storyOutcome = Outcome.SUCCESSFUL;
+			this.storyFailure = 0;
+			start(Type.STORY_START, 0, story.getName());
+		}
+
+		@Override
+		protected void endStory(long now) {
+			finish(Type.STORY_END, now - this.base, 0, this.storyOutcome, this.storyFailure);
+		}
+
+		@Override
+		protected void beginScenario(Scenario scenario, long now) {
+			final long offset = now - this.base;
+			this.scenarioOutcome = Outcome.SUCCESSFUL;
+			this.scenarioFailure = 0;
+			this.scenarioStart = offset;
+			start(Type.SCENARIO_START, offset, scenario.getTitle());
+		}
+
+		@Override
+		protected void endScenario(long now) {
+			finish(Type.SCENARIO_END, now - this.base, this.scenarioStart, this.scenarioOutcome, this.scenarioFailure);
+		}
+
+		@Override
+		protected void beginStep(String step, long now) {
+			final long offset = now - this.base;
+			this.stepStart = offset;
+			start(Type.STEP_START, offset, step);
+		}
+
+		@Override
+		protected void endStep(long now, Outcome outcome, Throwable cause) {
+			final long offset = now - this.base;
+			final int failure = failure(offset, cause);
+			finish(Type.STEP_END, offset, this.stepStart, outcome, failure);
+			if (outcome.ordinal() > this.scenarioOutcome.ordinal()) {
+				this.scenarioOutcome = outcome;
+				this.scenarioFailure = failure;
+			}
+			if (outcome.ordinal() > this.storyOutcome.ordinal()) {
+				this.storyOutcome = outcome;
+				this.storyFailure = failure;
+			}
+		}
+	}
+
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	private static final class Decoder {
+		private final byte[] data;
+		private int pos;
+		private final int limit;
+
+		private Decoder(byte[] data, int pos, int limit) {
+			this.data = data;
+			this.pos = pos;
+			this.limit = limit;
+		}
+
+		private long number() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (this.pos >= this.limit) { throw new IllegalArgumentException("Truncated number in the events"); }
+				byte b = this.data[this.pos++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) { return value; }
+			}
+			throw new IllegalArgumentException("Malformed number in the events");
+		}
+
+		private String string() {
+			int length = (int) number();
+			if ((length < 0) || (length > (this.limit - this.pos))) {
+				throw new IllegalArgumentException("Truncated string in the events");
+			}
+			String s = new String(this.data, this.pos, length, StandardCharsets.UTF_8);
+			this.pos += length;
+			return s;
+		}
+
+		private Outcome outcome() {
+			int o = (int) number();
+			return (((o >= 0) && (o < StoryEvents.OUTCOMES.length)) ? StoryEvents.OUTCOMES[o] : Outcome.FAILED);
+		}
+	}
+
+	private StoryEvents() {
+	}
+
+	public static List<Event> decode(byte[] data) {
+		if ((data == null) || (data.length == 0)) { return Collections.emptyList(); }
+		List<Event> events = new ArrayList<>();
+		Decoder d = new Decoder(data, 0, data.length);
+		while (d.pos < d.limit) {
+			final int size = (int) d.number();
+			if ((size < 0) || (size > (d.limit - d.pos))) {
+				throw new IllegalArgumentException("Truncated record in the events");
+			}
+			final int next = d.pos + size;
+			final Decoder r = new Decoder(data, d.pos, next);
+			d.pos = next;
+			final Type type = Type.decode((int) r.number());
+			if (type == null) {
+				// Unknown record type, skip it
+				continue;
+			}
+			final long offset = r.number();
+			switch (type) {
+				case STORY_START:
+				case SCENARIO_START:
+				case STEP_START:
+					events.add(new Event(type, offset, 0, null, 0, r.string()));
+					break;
+				case STORY_END:
+				case SCENARIO_END:
+				case STEP_END:
+					long duration = r.number();
+					Outcome outcome = r.outcome();
+					events.add(new Event(type, offset, duration, outcome, (int) r.number(), null));
+					break;
+				case FAILURE:
+					int id = (int) r.number();
+					events.add(new Event(type, offset, 0, Outcome.FAILED, id, r.string()));
+					break;
+			}
+		}
+		return events;
+	}
+
+	private static final class Element {
+		private final String tag;
+		private final String name;
+		private final long offset;
+		private long duration = 0;
+		private Outcome outcome = null;
+		private String failure = null;
+		private final List<Element> children = new ArrayList<>();
+
+		private Element(String tag, String name, long offset) {
+			this.tag = tag;
+			this.name = name;
+			this.offset = offset;
+		}
+	}
+
+	private static String tag(Type type) {
+		switch (type) {
+			case STORY_START:
+			case STORY_END:
+				return "story";
+			case SCENARIO_START:
+			case SCENARIO_END:
+				return "scenario";
+			default:
+				return "step";
+		}
+	}
+
+	private static List<Element> parse(byte[] data) {
+		final List<Element> roots = new ArrayList<>();
+		final Map<Integer, String> failures = new HashMap<>();
+		final Deque<Element> open = new ArrayDeque<>();
+		for (Event e : StoryEvents.decode(data)) {
+			switch (e.getType()) {
+				case FAILURE:
+					failures.put(e.getFailure(), e.getText());
+					break;
+				case STORY_START:
+				case SCENARIO_START:
+				case STEP_START:
+					Element element = new Element(StoryEvents.tag(e.getType()), e.getText(), e.getOffsetNanos());
+					(open.isEmpty() ? roots : open.peek().children).add(element);
+					open.push(element);
+					break;
+				default:
+					if (open.isEmpty()) {
+						break;
+					}
+					Element done = open.pop();
+					done.duration = e.getDurationNanos();
+					done.outcome = e.getOutcome();
+					done.failure = failures.get(e.getFailure());
+					break;
+			}
+		}
+		return roots;
+	}
+
+	private static void indent(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; i++) {
+			sb.append('\t');
+		}
+	}
+
+	private static void toXml(StringBuilder sb, Element e, int depth) {
+		StoryEvents.indent(sb, depth);
+		sb.append('<').append(e.tag) //
+			.append(" name=\"").append(StringEscapeUtils.escapeXml10(e.name)) //
+			.append("\" offset=\"").append(e.offset) //
+			.append("\" duration=\"").append(e.duration) //
+			.append("\" outcome=\"").append(e.outcome) //
+			.append('"');
+		if ((e.failure == null) && e.children.isEmpty()) {
+			sb.append("/>\n");
+			return;
+		}
+		sb.append(">\n");
+		if (e.failure != null) {
+			StoryEvents.indent(sb, depth + 1);
+			sb.append("<failure>").append(StringEscapeUtils.escapeXml10(e.failure)).append("</failure>\n");
+		}
+		e.children.forEach((c) -> StoryEvents.toXml(sb, c, depth + 1));
+		StoryEvents.indent(sb, depth);
+		sb.append("</").append(e.tag).append(">\n");
+	}
+
+	/**
+	 * <p>
+	 * Renders the events as XML. Each story, scenario, and step is an element with its name,
+	 * offset, duration (both in nanoseconds) and outcome as attributes, its failure (if any) as a
+	 * nested {@code <failure>} element, followed by its scenarios or steps.
+	 * </p>
+	 */
+	public static String toXml(byte[] data) {
+		final StringBuilder sb = new StringBuilder();
+		StoryEvents.parse(data).forEach((e) -> StoryEvents.toXml(sb, e, 0));
+		return sb.toString();
+	}
+
+	private static void toJson(StringBuilder sb, Element e, int depth) {
+		StoryEvents.indent(sb, depth);
+		sb.append("{\"type\":\"").append(e.tag) //
+			.append("\",\"name\":\"").append(StringEscapeUtils.escapeJson(e.name)) //
+			.append("\",\"offset\":").append(e.offset) //
+			.append(",\"duration\":").append(e.duration) //
+			.append(",\"outcome\":\"").append(e.outcome).append('"');
+		if (e.failure != null) {
+			sb.append(",\"failure\":\"").append(StringEscapeUtils.escapeJson(e.failure)).append('"');
+		}
+		if (!e.children.isEmpty()) {
+			sb.append(",\"children\":[\n");
+			StoryEvents.toJson(sb, e.children, depth + 1);
+			StoryEvents.indent(sb, depth);
+			sb.append(']');
+		}
+		sb.append('}');
+	}
+
+	private static void toJson(StringBuilder sb, List<Element> elements, int depth) {
+		for (int i = 0; i < elements.size(); i++) {
+			StoryEvents.toJson(sb, elements.get(i), depth);
+			sb.append((i < (elements.size() - 1)) ? ",\n" : "\n");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Renders the events as a JSON array of stories, using the same structure as
+	 * {@link #toXml(byte[])}.
+	 * </p>
+	 */
+	public static String toJson(byte[] data) {
+		final StringBuilder sb = new StringBuilder("[\n");
+		StoryEvents.toJson(sb, StoryEvents.parse(data), 1);
+		return sb.append(']').toString();
+	}
+}
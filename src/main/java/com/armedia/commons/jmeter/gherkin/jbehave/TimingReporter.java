@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jbehave.core.model.Scenario;
+import org.jbehave.core.model.Story;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing;
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing.Kind;
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing.Outcome;
+
+/**
+ * <p>
+ * A reporter which records the {@link System#nanoTime()} boundaries of the story, each scenario,
+ * and each step as they're performed. Steps are named after the pattern of the method which
+ * {@link #performing(Method) performs} them (i.e. {@code Given a user named $name}), as the
+ * {@link StepLatencies} are, so all the texts matching it share the same name. Steps which aren't
+ * performed (i.e. pending ones) are named after their text as written in the story. Steps from
+ * given stories are attributed to the scenario which includes them. Instances are confined to the
+ * thread performing the story, and must be {@link #reset() reset} before each run.
+ * </p>
+ */
+final class TimingReporter extends NestingStoryReporter {
+
+	private static final class Node {
+		private final Kind kind;
+		private String name;
+		private boolean named = false;
+		private final long start;
+		private long end = -1;
+		private Outcome outcome = Outcome.SUCCESSFUL;
+		private Throwable failure = null;
+		private final List<Node> children = new ArrayList<>();
+
+		private Node(Kind kind, String name, long start) {
+			this.kind = kind;
+			this.name = name;
+			this.start = start;
+		}
+
+		private void close(long end) {
+			if (this.end < 0) {
+				this.end = end;
+			}
+		}
+
+		private void setOutcome(Outcome outcome, Throwable failure) {
+			if (outcome.ordinal() <= this.outcome.ordinal()) { return; }
+			this.outcome = outcome;
+			this.failure = failure;
+		}
+
+		private Timing toTiming() {
+			List<Timing> children = new ArrayList<>(this.children.size());
+			this.children.forEach((c) -> children.add(c.toTiming()));
+			return new Timing(this.kind, this.name, this.start, (this.end < 0 ? this.start : this.end), this.outcome,
+				this.failure, children);
+		}
+	}
+
+	private final Map<Method, String> patterns = new HashMap<>();
+	private Node story = null;
+	private Node scenario = null;
+	private Node step = null;
+
+	@Override
+	void reset() {
+		super.reset();
+		this.story = null;
+		this.scenario = null;
+		this.step = null;
+	}
+
+	Timing getTiming() {
+		return (this.story != null ? this.story.toTiming() : null);
+	}
+
+	/**
+	 * <p>
+	 * Names the step being performed after the given method's pattern. Only the first method
+	 * counts, so the steps a composite step performs don't rename it.
+	 * </p>
+	 */
+	void performing(Method method) {
+		final Node step = this.step;
+		if ((step == null) || step.named || (method == null)) { return; }
+		step.name = this.patterns.computeIfAbsent(method, StepLatencies::getPattern);
+		step.named = true;
+	}
+
+	private Node parent(long now) {
+		if (this.scenario != null) { return this.scenario; }
+		if (this.story == null) {
+			this.story = new Node(Kind.STORY, null, now);
+		}
+		return this.story;
+	}
+
+	@Override
+	protected void beginStory(Story story, long now) {
+		this.story = new Node(Kind.STORY, story.getName(), now);
+	}
+
+	@Override
+	protected void endStory(long now) {
+		if (this.story != null) {
+			this.story.close(now);
+		}
+	}
+
+	@Override
+	protected void beginScenario(Scenario scenario, long now) {
+		Node node = new Node(Kind.SCENARIO, scenario.getTitle(), now);
+		parent(now).children.add(node);
+		this.scenario = node;
+	}
+
+	@Override
+	protected void endScenario(long now) {
+		if (this.scenario == null) { return; }
+		this.scenario.close(now);
+		this.scenario = null;
+	}
+
+	@Override
+	protected void beginStep(String step, long now) {
+		this.step = new Node(Kind.STEP, step, now);
+		parent(now).children.add(this.step);
+	}
+
+	@Override
+	protected void endStep(long now, Outcome outcome, Throwable failure) {
+		final Node step = this.step;
+		if (step == null) { return; }
+		step.close(now);
+		step.setOutcome(outcome, failure);
+		if (this.scenario != null) {
+			this.scenario.setOutcome(outcome, failure);
+		}
+		if (this.story != null) {
+			this.story.setOutcome(outcome, failure);
+		}
+		this.step = null;
+	}
+}
@@ -27,20 +27,29 @@
 package com.armedia.commons.jmeter.plugins.gherkin.config;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import javax.script.Bindings;
 import javax.script.ScriptException;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.engine.event.LoopIterationEvent;
 import org.apache.jmeter.engine.event.LoopIterationListener;
+import org.apache.jmeter.testelement.TestStateListener;
 import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.threads.JMeterContext;
 import org.apache.jmeter.threads.JMeterContextService;
@@ -50,12 +59,17 @@ import org.slf4j.LoggerFactory;
 
 import com.armedia.commons.jmeter.gherkin.Gherkin;
 import com.armedia.commons.jmeter.gherkin.GherkinContext;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.CapturePolicy;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.OutputFormat;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.Syntax;
+import com.armedia.commons.jmeter.gherkin.jbehave.StepLatencies;
 import com.armedia.commons.jmeter.tools.JSR223Script;
-import com.armedia.commons.jmeter.tools.JSR223Script.CacheKey;
+import com.armedia.commons.jmeter.tools.ReportWriter;
+import com.armedia.commons.jmeter.tools.VariableBindings;
 
-public class GherkinConfig extends ConfigTestElement implements LoopIterationListener, ThreadListener {
+public class GherkinConfig extends ConfigTestElement
+	implements LoopIterationListener, ThreadListener, TestStateListener {
 	private static final long serialVersionUID = 1L;
 
 	private static final String PREFIX = "GherkinConfig";
@@ -69,11 +83,28 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 	public static final String SYNTAX = GherkinConfig.PREFIX + ".syntax";
 	public static final String DEFAULT_OUTPUT_FORMAT = JBehaveEngine.DEFAULT_OUTPUT_FORMAT;
 	public static final String OUTPUT_FORMAT = GherkinConfig.PREFIX + ".outputFormat";
+	public static final String DEFAULT_CAPTURE_POLICY = JBehaveEngine.DEFAULT_CAPTURE_POLICY;
+	public static final String CAPTURE_POLICY = GherkinConfig.PREFIX + ".capturePolicy";
+	public static final int DEFAULT_CAPTURE_SAMPLE_RATE = JBehaveEngine.DEFAULT_CAPTURE_SAMPLE_RATE;
+	public static final String CAPTURE_SAMPLE_RATE = GherkinConfig.PREFIX + ".captureSampleRate";
+	public static final int DEFAULT_CAPTURE_LIMIT = JBehaveEngine.DEFAULT_CAPTURE_LIMIT;
+	public static final String CAPTURE_LIMIT = GherkinConfig.PREFIX + ".captureLimit";
 	public static final String SCRIPT = GherkinConfig.PREFIX + ".script";
+	public static final String TEST_SCRIPT = GherkinConfig.PREFIX + ".testScript";
 	public static final String COMPOSITES = GherkinConfig.PREFIX + ".composites";
 	public static final String COMPOSITES_FILE = GherkinConfig.PREFIX + ".compositesFile";
 	public static final String PACKAGES = GherkinConfig.PREFIX + ".packages";
 	public static final String ENGINE = GherkinConfig.PREFIX + ".engine";
+	public static final String WARMUP_ITERATIONS = GherkinConfig.PREFIX + ".warmupIterations";
+	public static final String REPORT_DIRECTORY = GherkinConfig.PREFIX + ".reportDirectory";
+	public static final int DEFAULT_REPORT_FILE_SIZE = 64;
+	public static final String REPORT_FILE_SIZE = GherkinConfig.PREFIX + ".reportFileSize";
+	public static final int DEFAULT_REPORT_QUEUE_SIZE = 1024;
+	public static final String REPORT_QUEUE_SIZE = GherkinConfig.PREFIX + ".reportQueueSize";
+	public static final String DEFAULT_REPORT_BACKPRESSURE = ReportWriter.Backpressure.DROP.name();
+	public static final String REPORT_BACKPRESSURE = GherkinConfig.PREFIX + ".reportBackpressure";
+	public static final int DEFAULT_REPORT_SAMPLE_RATE = 10;
+	public static final String REPORT_SAMPLE_RATE = GherkinConfig.PREFIX + ".reportSampleRate";
 
 	public static final Set<String> OUTPUT_FORMATS;
 	static {
@@ -82,6 +113,20 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		OUTPUT_FORMATS = Collections.unmodifiableSet(s);
 	}
 
+	public static final Set<String> CAPTURE_POLICIES;
+	static {
+		Set<String> s = new LinkedHashSet<>();
+		Stream.of(CapturePolicy.values()).map(Enum::name).forEach(s::add);
+		CAPTURE_POLICIES = Collections.unmodifiableSet(s);
+	}
+
+	public static final Set<String> BACKPRESSURES;
+	static {
+		Set<String> s = new LinkedHashSet<>();
+		Stream.of(ReportWriter.Backpressure.values()).map(Enum::name).forEach(s::add);
+		BACKPRESSURES = Collections.unmodifiableSet(s);
+	}
+
 	public static final Set<String> SYNTAXES;
 	static {
 		Set<String> s = new LinkedHashSet<>();
@@ -121,12 +166,63 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		}
 	}
 
+	/**
+	 * <p>
+	 * The name of the binding through which the per-thread script can reach the objects published
+	 * by the test-start script.
+	 * </p>
+	 */
+	public static final String SHARED = "shared";
+
+	// Each thread works on its own clone of the config, so the original one is given an ID when the test
+	// starts (which the clones inherit along with its other properties) to find what it shares with them
+	private static final String INSTANCE_ID = GherkinConfig.PREFIX + ".instanceId";
+	private static final AtomicLong INSTANCE_IDS = new AtomicLong(0);
+
+	// Keyed by the original configuration's ID, so configurations with the same script don't share them
+	private static final ConcurrentMap<String, Map<String, Object>> SHARED_OBJECTS = new ConcurrentHashMap<>();
+
+	// Keyed by the original configuration's ID, so configurations with the same name don't share them
+	static final ConcurrentMap<String, GherkinMetrics> METRICS = new ConcurrentHashMap<>();
+
+	// Keyed by the report directory, so configurations writing into the same one share its writer
+	private static final ConcurrentMap<Path, ReportWriter> REPORT_WRITERS = new ConcurrentHashMap<>();
+
 	private final ThreadLocal<GherkinEngine> engines = new ThreadLocal<>();
+	private final ThreadLocal<JSR223Script> scripts = new ThreadLocal<>();
+
+	// Blank if the test hasn't started
+	String getInstanceId() {
+		return getPropertyAsString(GherkinConfig.INSTANCE_ID);
+	}
 
 	public static Gherkin getGherkin(JMeterContext ctx) {
 		return Gherkin.class.cast(ctx.getVariables().getObject(GherkinConfig.ENGINE));
 	}
 
+	/**
+	 * <p>
+	 * Returns the writer which the current thread's story reports should be sent to, or
+	 * {@code null} if they should be kept with the samples.
+	 * </p>
+	 */
+	public static ReportWriter getReportWriter(JMeterContext ctx) {
+		Gherkin gherkin = GherkinConfig.getGherkin(ctx);
+		if (!GherkinEngine.class.isInstance(gherkin)) { return null; }
+		return GherkinEngine.class.cast(gherkin).getReportWriter();
+	}
+
+	/**
+	 * <p>
+	 * Returns the metrics the current thread's engine records into, which are never {@code null}.
+	 * </p>
+	 */
+	public static GherkinMetrics getMetrics(JMeterContext ctx) {
+		Gherkin gherkin = GherkinConfig.getGherkin(ctx);
+		if (!GherkinEngine.class.isInstance(gherkin)) { return GherkinMetrics.NULL; }
+		return GherkinEngine.class.cast(gherkin).getMetrics();
+	}
+
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 
 	@Override
@@ -141,8 +237,11 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 	private GherkinEngine newEngine() {
 		GherkinEngine engine = createEngine();
 		try {
+			engine.setMetrics(GherkinConfig.METRICS.get(getInstanceId()));
+			engine.setConfigId(getInstanceId());
 			engine.init(this);
 			configureEngine(engine);
+			engine.setReportWriter(getReportWriter());
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to initialize the given engine" + engine, e);
 		}
@@ -150,6 +249,12 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		return engine;
 	}
 
+	/**
+	 * <p>
+	 * Adds the standard script objects to the given bindings. When these are
+	 * {@link VariableBindings}, the thread's variables are also available to the script by name.
+	 * </p>
+	 */
 	protected Bindings populateBindings(Bindings bindings) {
 		final String label = getName();
 		bindings.put("Label", label);
@@ -163,21 +268,151 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		bindings.put("ERR", System.err);
 
 		bindings.put("gherkin", GherkinContext.get(ctx));
+		bindings.put(GherkinConfig.SHARED, getSharedObjects());
 		return bindings;
 	}
 
+	/**
+	 * <p>
+	 * Returns the objects published by this configuration's test-start script, which are shared by
+	 * all threads and may not be modified. The objects themselves must be thread-safe.
+	 * </p>
+	 */
+	public Map<String, Object> getSharedObjects() {
+		final String id = getInstanceId();
+		if (StringUtils.isBlank(id)) { return Collections.emptyMap(); }
+		return GherkinConfig.SHARED_OBJECTS.getOrDefault(id, Collections.emptyMap());
+	}
+
+	private Map<String, Object> runTestScript(Script script) {
+		final Map<String, Object> shared = new LinkedHashMap<>();
+		final String label = getName();
+		try {
+			Object ret = new JSR223Script //
+				.Builder() //
+					.withAllowCompilation(isCompileIfPossible()) //
+					.withLanguage(script.getLanguage()) //
+					.withSource(script.getScript()) //
+					.build() //
+					.execute((Bindings bindings) -> {
+						bindings.put("Label", label);
+						bindings.put("log", LoggerFactory.getLogger(getClass().getCanonicalName() + "." + label));
+						bindings.put("props", JMeterUtils.getJMeterProperties());
+						bindings.put("OUT", System.out);
+						bindings.put("ERR", System.err);
+						bindings.put(GherkinConfig.SHARED, shared);
+					}) //
+			;
+			this.log.debug("Test start JSR223Script returned the value {}", ret);
+		} catch (IOException | ScriptException e) {
+			this.log.error("Problem in test start JSR223 script {}, message: {}", getName(), e, e);
+		}
+		return Collections.unmodifiableMap(shared);
+	}
+
+	@Override
+	public void testStarted() {
+		// Don't carry over the latencies of a prior test (i.e. in the GUI)
+		StepLatencies.reset();
+		// Run the shared initialization once for the whole test, before any threads start
+		final String id = String.valueOf(GherkinConfig.INSTANCE_IDS.incrementAndGet());
+		setProperty(GherkinConfig.INSTANCE_ID, id);
+		final GherkinMetrics metrics = new GherkinMetrics();
+		metrics.register(getName(), id);
+		GherkinConfig.METRICS.put(id, metrics);
+		final Script script = getTestScript();
+		if (StringUtils.isNotBlank(script.getScript())) {
+			GherkinConfig.SHARED_OBJECTS.put(id, runTestScript(script));
+		}
+		final Path reports = getReportPath();
+		if (reports != null) {
+			GherkinConfig.REPORT_WRITERS.computeIfAbsent(reports, this::newReportWriter);
+		}
+		GherkinWarmup.addConfig(this);
+	}
+
+	private ReportWriter newReportWriter(Path directory) {
+		try {
+			return new ReportWriter.Builder() //
+				.withDirectory(directory) //
+				.withNames("gherkin", ".out") //
+				.withMaxFileSize(getReportFileSize() * 1024L * 1024L) //
+				.withQueueSize(getReportQueueSize()) //
+				.withBackpressure(ReportWriter.Backpressure.valueOf(getReportBackpressure()), getReportSampleRate()) //
+				.build();
+		} catch (IOException | IllegalArgumentException e) {
+			this.log.error("Failed to start writing the story reports into [{}], they'll be kept with the samples",
+				directory, e);
+			return null;
+		}
+	}
+
+	private Path getReportPath() {
+		final String directory = getReportDirectory();
+		if (StringUtils.isBlank(directory)) { return null; }
+		return Paths.get(directory.trim()).toAbsolutePath().normalize();
+	}
+
+	private ReportWriter getReportWriter() {
+		final Path reports = getReportPath();
+		return (reports != null ? GherkinConfig.REPORT_WRITERS.get(reports) : null);
+	}
+
+	@Override
+	public void testStarted(String host) {
+		testStarted();
+	}
+
+	@Override
+	public void testEnded() {
+		GherkinWarmup.reset();
+		// The latencies are shared by all configurations, so only the first one to end dumps them
+		if (!StepLatencies.snapshot().isEmpty()) {
+			this.log.info("Step latencies (ms):{}{}", System.lineSeparator(), StepLatencies.format());
+			StepLatencies.reset();
+		}
+		final Path reports = getReportPath();
+		final ReportWriter writer = (reports != null ? GherkinConfig.REPORT_WRITERS.remove(reports) : null);
+		if (writer != null) {
+			writer.close();
+			this.log.info("Story reports written into [{}]: {}", writer.getDirectory(), writer.getStats());
+		}
+		final String id = getInstanceId();
+		removeProperty(GherkinConfig.INSTANCE_ID);
+		if (StringUtils.isBlank(id)) { return; }
+		final GherkinMetrics metrics = GherkinConfig.METRICS.remove(id);
+		if (metrics != null) {
+			metrics.unregister();
+		}
+		GherkinConfig.SHARED_OBJECTS.remove(id);
+	}
+
+	@Override
+	public void testEnded(String host) {
+		testEnded();
+	}
+
 	private void configureEngine(GherkinEngine engine) {
 		final Script script = getScript();
 		try {
-			// Execute the configuration script!
-			Object ret = new JSR223Script //
+			// The script is shared by all threads, so keep it until this thread is done with it
+			final JSR223Script jsr223 = new JSR223Script //
 				.Builder() //
 					.withAllowCompilation(isCompileIfPossible()) //
 					.withLanguage(script.getLanguage()) //
 					.withSource(script.getScript()) //
 					.build() //
-					.execute(this::populateBindings) //
+					.acquire() //
 			;
+			JSR223Script previous = this.scripts.get();
+			this.scripts.set(jsr223);
+			if (previous != null) {
+				previous.release();
+			}
+
+			// Execute the configuration script!
+			Object ret = jsr223
+				.execute(populateBindings(new VariableBindings(JMeterContextService.getContext().getVariables())));
 			this.log.debug("JSR223Script returned the value {}", ret);
 		} catch (IOException | ScriptException e) {
 			this.log.error("Problem in JSR223 script {}, message: {}", getName(), e, e);
@@ -192,13 +427,11 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 	@Override
 	public void threadFinished() {
 		closeEngine();
-		Script script = getScript();
-		CacheKey cacheKey;
-		try {
-			cacheKey = JSR223Script.getCacheKey(script.getLanguage(), script.getScript());
-			JSR223Script.purge(cacheKey);
-		} catch (ScriptException e) {
-			this.log.warn("ScriptException trying to clean out the cached script", e);
+		// Other threads may still be using the script, so only it knows when it may be dropped
+		JSR223Script script = this.scripts.get();
+		if (script != null) {
+			this.scripts.remove();
+			script.release();
 		}
 	}
 
@@ -224,6 +457,9 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 			.setOutputFormat(getOutputFormat()) //
 			.setDryRun(isDryRun()) //
 			.setFailOnPending(isFailOnPending()) //
+			.setCapturePolicy(getCapturePolicy()) //
+			.setCaptureSampleRate(getCaptureSampleRate()) //
+			.setCaptureLimit(getCaptureLimit()) //
 		;
 		engine = jbe;
 		return engine;
@@ -261,6 +497,20 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		setProperty(GherkinConfig.COMPILE_SCRIPT_IF_POSSIBLE, recreate);
 	}
 
+	/**
+	 * <p>
+	 * Returns the number of times each story in this configuration's scope is performed before
+	 * its first sample is taken, so the first samples reflect the steady-state cost.
+	 * </p>
+	 */
+	public int getWarmupIterations() {
+		return Math.max(0, getPropertyAsInt(GherkinConfig.WARMUP_ITERATIONS, 0));
+	}
+
+	public void setWarmupIterations(int warmupIterations) {
+		setProperty(GherkinConfig.WARMUP_ITERATIONS, Math.max(0, warmupIterations));
+	}
+
 	public boolean isDryRun() {
 		return getPropertyAsBoolean(GherkinConfig.DRY_RUN);
 	}
@@ -285,6 +535,101 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		setProperty(GherkinConfig.OUTPUT_FORMAT, outputFormat);
 	}
 
+	/**
+	 * <p>
+	 * Returns how much of each story's output is kept in the samples: all of it, only that of
+	 * failed runs, that of failed runs plus one in every {@link #getCaptureSampleRate() N}
+	 * successful ones, or all of that of failed runs and only the last {@link #getCaptureLimit()
+	 * limit} bytes of successful ones. Successful runs whose output isn't kept only carry a short
+	 * summary.
+	 * </p>
+	 */
+	public String getCapturePolicy() {
+		return StringUtils.defaultIfBlank(getPropertyAsString(GherkinConfig.CAPTURE_POLICY),
+			GherkinConfig.DEFAULT_CAPTURE_POLICY);
+	}
+
+	public void setCapturePolicy(String capturePolicy) {
+		setProperty(GherkinConfig.CAPTURE_POLICY, capturePolicy);
+	}
+
+	public int getCaptureSampleRate() {
+		return Math.max(1,
+			getPropertyAsInt(GherkinConfig.CAPTURE_SAMPLE_RATE, GherkinConfig.DEFAULT_CAPTURE_SAMPLE_RATE));
+	}
+
+	public void setCaptureSampleRate(int captureSampleRate) {
+		setProperty(GherkinConfig.CAPTURE_SAMPLE_RATE, Math.max(1, captureSampleRate));
+	}
+
+	public int getCaptureLimit() {
+		return Math.max(1, getPropertyAsInt(GherkinConfig.CAPTURE_LIMIT, GherkinConfig.DEFAULT_CAPTURE_LIMIT));
+	}
+
+	public void setCaptureLimit(int captureLimit) {
+		setProperty(GherkinConfig.CAPTURE_LIMIT, Math.max(1, captureLimit));
+	}
+
+	/**
+	 * <p>
+	 * Returns the directory the story reports are written into, instead of being kept with the
+	 * samples (which only keep a reference to where each report was written). Each test run writes
+	 * into a new subdirectory of it. If blank, the reports are kept with the samples.
+	 * </p>
+	 */
+	public String getReportDirectory() {
+		return getPropertyAsString(GherkinConfig.REPORT_DIRECTORY);
+	}
+
+	public void setReportDirectory(String reportDirectory) {
+		setProperty(GherkinConfig.REPORT_DIRECTORY, reportDirectory);
+	}
+
+	/**
+	 * <p>
+	 * Returns the size (in MB) past which a new report file is started.
+	 * </p>
+	 */
+	public int getReportFileSize() {
+		return Math.max(1, getPropertyAsInt(GherkinConfig.REPORT_FILE_SIZE, GherkinConfig.DEFAULT_REPORT_FILE_SIZE));
+	}
+
+	public void setReportFileSize(int reportFileSize) {
+		setProperty(GherkinConfig.REPORT_FILE_SIZE, Math.max(1, reportFileSize));
+	}
+
+	public int getReportQueueSize() {
+		return Math.max(1, getPropertyAsInt(GherkinConfig.REPORT_QUEUE_SIZE, GherkinConfig.DEFAULT_REPORT_QUEUE_SIZE));
+	}
+
+	public void setReportQueueSize(int reportQueueSize) {
+		setProperty(GherkinConfig.REPORT_QUEUE_SIZE, Math.max(1, reportQueueSize));
+	}
+
+	/**
+	 * <p>
+	 * Returns what the samplers do when the report writer falls behind: wait for it, drop the
+	 * reports, or only keep one in every {@link #getReportSampleRate() N} of them.
+	 * </p>
+	 */
+	public String getReportBackpressure() {
+		final String backpressure = getPropertyAsString(GherkinConfig.REPORT_BACKPRESSURE);
+		if (!GherkinConfig.BACKPRESSURES.contains(backpressure)) { return GherkinConfig.DEFAULT_REPORT_BACKPRESSURE; }
+		return backpressure;
+	}
+
+	public void setReportBackpressure(String reportBackpressure) {
+		setProperty(GherkinConfig.REPORT_BACKPRESSURE, reportBackpressure);
+	}
+
+	public int getReportSampleRate() {
+		return Math.max(1, getPropertyAsInt(GherkinConfig.REPORT_SAMPLE_RATE, GherkinConfig.DEFAULT_REPORT_SAMPLE_RATE));
+	}
+
+	public void setReportSampleRate(int reportSampleRate) {
+		setProperty(GherkinConfig.REPORT_SAMPLE_RATE, Math.max(1, reportSampleRate));
+	}
+
 	public String getSyntax() {
 		return getPropertyAsString(GherkinConfig.SYNTAX, GherkinConfig.DEFAULT_SYNTAX);
 	}
@@ -331,4 +676,20 @@ public class GherkinConfig extends ConfigTestElement implements LoopIterationLis
 		setProperty(GherkinConfig.SCRIPT_LANGUAGE, script.getLanguage());
 		setProperty(GherkinConfig.SCRIPT, script.getScript());
 	}
+
+	/**
+	 * <p>
+	 * Returns the script which is run once when the test starts, in the same language as the
+	 * per-thread {@link #getScript() script}.
+	 * </p>
+	 */
+	public Script getTestScript() {
+		String script = getPropertyAsString(GherkinConfig.TEST_SCRIPT);
+		String language = getPropertyAsString(GherkinConfig.SCRIPT_LANGUAGE);
+		return new Script(language, script);
+	}
+
+	public void setTestScript(String script) {
+		setProperty(GherkinConfig.TEST_SCRIPT, script);
+	}
 }
@@ -30,11 +30,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+import com.armedia.commons.jmeter.tools.ReportWriter;
 
 public abstract class GherkinEngine implements Gherkin, AutoCloseable {
 
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 
+	private ReportWriter reportWriter = null;
+	private GherkinMetrics metrics = GherkinMetrics.NULL;
+	private String configId = null;
+
 	public abstract void init(GherkinConfig config) throws Exception;
 
+	/**
+	 * <p>
+	 * Returns the writer which the story reports should be sent to, or {@code null} if they should
+	 * be kept with the samples.
+	 * </p>
+	 */
+	public ReportWriter getReportWriter() {
+		return this.reportWriter;
+	}
+
+	public GherkinEngine setReportWriter(ReportWriter reportWriter) {
+		this.reportWriter = reportWriter;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Returns the metrics this engine records into. These must be set before the engine is
+	 * {@link #init(GherkinConfig) initialized}.
+	 * </p>
+	 */
+	public GherkinMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public GherkinEngine setMetrics(GherkinMetrics metrics) {
+		this.metrics = GherkinMetrics.safe(metrics);
+		return this;
+	}
+
+	// The instance ID of the configuration this engine was created for, which its warm-up is kept under
+	String getConfigId() {
+		return this.configId;
+	}
+
+	void setConfigId(String configId) {
+		this.configId = configId;
+	}
+
 }
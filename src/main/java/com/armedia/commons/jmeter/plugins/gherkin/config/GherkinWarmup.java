@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.plugins.gherkin.config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jbehave.core.failures.PendingStepFound;
+import org.jbehave.core.failures.PendingStepsFound;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveRunner;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings;
+
+/**
+ * <p>
+ * Collects the stories and configurations taking part in a test as they're started, and warms
+ * them up outside of any sample: each configuration's steps are scanned and the stories are
+ * parsed (in parallel) when the test starts, before any threads run. Which configuration is in a
+ * sampler's scope is only known once its threads run, so the first thread to reach a story under
+ * a given configuration then dry-runs it against that configuration's steps, to report unmatched
+ * or pending steps, and performs it for as many warm-up iterations as the configuration asks for,
+ * before its first sample is taken. Stories and configurations may be started in any order.
+ * </p>
+ */
+public final class GherkinWarmup {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GherkinWarmup.class);
+
+	private static final class Warmup {
+		private final GherkinConfig config;
+		private final JBehaveEngine engine;
+		private final GherkinMetrics metrics;
+		private final Set<Pair<String, String>> done = ConcurrentHashMap.newKeySet();
+
+		private Warmup(GherkinConfig config, JBehaveEngine engine, GherkinMetrics metrics) {
+			this.config = config;
+			this.engine = engine;
+			this.metrics = metrics;
+		}
+	}
+
+	private static final Set<Pair<String, String>> STORIES = ConcurrentHashMap.newKeySet();
+
+	// Keyed by the configuration's instance ID, which the threads' clones share with the original
+	private static final Map<String, Warmup> WARMUPS = new ConcurrentHashMap<>();
+
+	private GherkinWarmup() {
+	}
+
+	/**
+	 * <p>
+	 * Registers a story to be warmed up against the configuration in its scope, and parses it
+	 * with the syntax of every configuration started for this test.
+	 * </p>
+	 */
+	public static synchronized void addStory(String name, String story) {
+		if (StringUtils.isBlank(story)) { return; }
+		Pair<String, String> p = Pair.of(name, story);
+		if (!GherkinWarmup.STORIES.add(p)) { return; }
+		GherkinWarmup.WARMUPS.values().forEach((w) -> GherkinWarmup.parse(w, Collections.singleton(p)));
+	}
+
+	// The engine is kept in the warm-up, and closed by reset()
+	@SuppressWarnings("resource")
+	static synchronized void addConfig(GherkinConfig config) {
+		final String id = config.getInstanceId();
+		if (StringUtils.isBlank(id) || GherkinWarmup.WARMUPS.containsKey(id)) { return; }
+		final long start = System.nanoTime();
+		final JBehaveEngine engine = new JBehaveEngine() //
+			.setOutputFormat(JBehaveSettings.OutputFormat.NULL.name()) //
+			.setRecordLatencies(false) //
+		;
+		// Most of the scanning and parsing happens here, so it's counted with the configuration's
+		final GherkinMetrics metrics = GherkinConfig.METRICS.get(id);
+		engine.setMetrics(metrics);
+		try {
+			// This also scans for the steps, which is then shared with the threads' engines
+			engine.init(config);
+			// ... but the warm-up's own runs aren't part of the test
+			engine.setMetrics(GherkinMetrics.NULL);
+		} catch (Exception e) {
+			GherkinWarmup.LOG.warn("Failed to initialize the warm-up engine for {}", config.getName(), e);
+			engine.close();
+			return;
+		}
+		GherkinWarmup.LOG.info("Initialized the Gherkin engine for {} in {}ms", config.getName(),
+			(System.nanoTime() - start) / 1_000_000);
+		final Warmup warmup = new Warmup(config, engine, metrics);
+		GherkinWarmup.WARMUPS.put(id, warmup);
+		GherkinWarmup.parse(warmup, GherkinWarmup.STORIES);
+	}
+
+	/**
+	 * <p>
+	 * Warms up the given story against the configuration the given (thread's) engine was created
+	 * for, unless that was already done, or the story wasn't {@link #addStory(String, String)
+	 * registered} when the test started (i.e. its text depends on the thread's variables). Threads
+	 * reaching a story while it's being warmed up wait for it to be done.
+	 * </p>
+	 */
+	public static void warmup(Gherkin runner, String name, String story) {
+		if (!GherkinEngine.class.isInstance(runner)) { return; }
+		final String id = GherkinEngine.class.cast(runner).getConfigId();
+		final Warmup warmup = (id != null ? GherkinWarmup.WARMUPS.get(id) : null);
+		if (warmup == null) { return; }
+		final Pair<String, String> p = Pair.of(name, story);
+		if (warmup.done.contains(p) || !GherkinWarmup.STORIES.contains(p)) { return; }
+		synchronized (warmup) {
+			if (warmup.done.contains(p)) { return; }
+			GherkinWarmup.warmup(warmup, p);
+			warmup.done.add(p);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Discards everything gathered for the current test.
+	 * </p>
+	 */
+	public static synchronized void reset() {
+		GherkinWarmup.WARMUPS.values().forEach((w) -> {
+			synchronized (w) {
+				w.engine.close();
+			}
+		});
+		GherkinWarmup.WARMUPS.clear();
+		GherkinWarmup.STORIES.clear();
+	}
+
+	private static boolean isPending(Throwable t) {
+		for (; t != null; t = t.getCause()) {
+			if (PendingStepFound.class.isInstance(t) || PendingStepsFound.class.isInstance(t)) { return true; }
+		}
+		return false;
+	}
+
+	private static void parse(Warmup warmup, Collection<Pair<String, String>> stories) {
+		// Parse all the stories in parallel, so the threads find them already parsed
+		final String label = warmup.config.getName();
+		final JBehaveSettings.Syntax syntax = JBehaveSettings.Syntax.valueOf(warmup.engine.getSyntax());
+		stories.parallelStream().forEach((p) -> {
+			try {
+				JBehaveRunner.parse(syntax, p.getKey(), p.getValue(), warmup.metrics);
+			} catch (Exception e) {
+				GherkinWarmup.LOG.warn("[{}] Failed to parse the story [{}]", label, p.getKey(), e);
+			}
+		});
+	}
+
+	private static void warmup(Warmup warmup, Pair<String, String> p) {
+		final GherkinConfig config = warmup.config;
+		final JBehaveEngine engine = warmup.engine;
+		final String label = config.getName();
+
+		// Match all the steps without executing them, treating unmatched steps as failures
+		engine.setDryRun(true).setFailOnPending(true);
+		try {
+			Gherkin.Result<?> result = engine.prepareStory(p.getKey(), p.getValue()).perform();
+			long pending = result.getFailures().stream().filter(GherkinWarmup::isPending).count();
+			if (pending > 0) {
+				GherkinWarmup.LOG.warn("[{}] The story [{}] has {} unmatched or pending step(s): {}", label,
+					p.getKey(), pending, result.getFailures());
+			} else if (!result.getFailures().isEmpty()) {
+				GherkinWarmup.LOG.warn("[{}] The story [{}] failed its dry run: {}", label, p.getKey(),
+					result.getFailures());
+			}
+		} catch (PendingStepsFound e) {
+			GherkinWarmup.LOG.warn("[{}] The story [{}] has unmatched or pending steps: {}", label, p.getKey(),
+				e.getMessage());
+		} catch (Exception e) {
+			GherkinWarmup.LOG.warn("[{}] Failed to dry-run the story [{}]", label, p.getKey(), e);
+			return;
+		}
+
+		// Run the warm-up iterations for real, but outside of any sample (and of the step latencies)
+		final int iterations = config.getWarmupIterations();
+		engine.setDryRun(config.isDryRun()).setFailOnPending(config.isFailOnPending());
+		for (int i = 0; i < iterations; i++) {
+			try {
+				engine.prepareStory(p.getKey(), p.getValue()).perform();
+			} catch (Exception e) {
+				GherkinWarmup.LOG.debug("[{}] Warm-up iteration {} of the story [{}] failed", label, i + 1,
+					p.getKey(), e);
+			}
+		}
+		if (iterations > 0) {
+			GherkinWarmup.LOG.info("[{}] Ran {} warm-up iteration(s) for the story [{}]", label, iterations,
+				p.getKey());
+		}
+	}
+}
@@ -29,6 +29,7 @@ package com.armedia.commons.jmeter.plugins.gherkin.config;
 import java.io.LineNumberReader;
 import java.io.StringReader;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -36,7 +37,10 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jbehave.core.model.Story;
 
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
 import com.armedia.commons.jmeter.gherkin.GherkinTools;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveRunner;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings;
@@ -45,10 +49,36 @@ class JBehaveEngine extends GherkinEngine {
 
 	public static final String DEFAULT_SYNTAX = JBehaveSettings.defaults().getSyntax().name();
 	public static final String DEFAULT_OUTPUT_FORMAT = JBehaveSettings.defaults().getOutputFormat().name();
+	public static final String DEFAULT_CAPTURE_POLICY = JBehaveSettings.defaults().getCapturePolicy().name();
+	public static final int DEFAULT_CAPTURE_SAMPLE_RATE = JBehaveSettings.defaults().getCaptureSampleRate();
+	public static final int DEFAULT_CAPTURE_LIMIT = JBehaveSettings.defaults().getCaptureLimit();
+
+	public static final String PREPARED_CACHE_SIZE = "gherkin.jbehave.preparedCacheSize";
+	private static final int DEFAULT_PREPARED_CACHE_SIZE = 16;
 
 	private final JBehaveSettings settings = new JBehaveSettings();
 	private JBehaveRunner runner = null;
 
+	// Bumped whenever the settings change, so the prepared stories needn't be checked against them
+	private int settingsVersion = 0;
+	private int preparedVersion = 0;
+
+	// Engines are used by a single thread, so their prepared stories needn't be shared. They're keyed
+	// by the story's name and text, so the shared story cache is only consulted when they're missing
+	private final int preparedCacheSize = Math.max(1,
+		Integer.getInteger(JBehaveEngine.PREPARED_CACHE_SIZE, JBehaveEngine.DEFAULT_PREPARED_CACHE_SIZE));
+	private final Map<Pair<String, String>, JBehaveRunner.PreparedStory> prepared = new LinkedHashMap<Pair<String, String>, JBehaveRunner.PreparedStory>(
+		16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Pair<String, String>, JBehaveRunner.PreparedStory> eldest) {
+			if (size() <= JBehaveEngine.this.preparedCacheSize) { return false; }
+			eldest.getValue().close();
+			return true;
+		}
+	};
+
 	public String getOutputFormat() {
 		return this.settings.getOutputFormat().name();
 	}
@@ -62,7 +92,41 @@ class JBehaveEngine extends GherkinEngine {
 			}
 		}
 		this.settings.setOutputFormat(of);
-		return this;
+		return modified();
+	}
+
+	public String getCapturePolicy() {
+		return this.settings.getCapturePolicy().name();
+	}
+
+	public JBehaveEngine setCapturePolicy(String capturePolicy) {
+		JBehaveSettings.CapturePolicy cp = null;
+		if (capturePolicy != null) {
+			try {
+				cp = JBehaveSettings.CapturePolicy.valueOf(capturePolicy);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+		this.settings.setCapturePolicy(cp);
+		return modified();
+	}
+
+	public int getCaptureSampleRate() {
+		return this.settings.getCaptureSampleRate();
+	}
+
+	public JBehaveEngine setCaptureSampleRate(int captureSampleRate) {
+		this.settings.setCaptureSampleRate(captureSampleRate);
+		return modified();
+	}
+
+	public int getCaptureLimit() {
+		return this.settings.getCaptureLimit();
+	}
+
+	public JBehaveEngine setCaptureLimit(int captureLimit) {
+		this.settings.setCaptureLimit(captureLimit);
+		return modified();
 	}
 
 	public String getSyntax() {
@@ -78,17 +142,17 @@ class JBehaveEngine extends GherkinEngine {
 			}
 		}
 		this.settings.setSyntax(s);
-		return this;
+		return modified();
 	}
 
 	public JBehaveEngine setFailOnPending(boolean failOnPending) {
 		this.settings.setFailOnPending(failOnPending);
-		return this;
+		return modified();
 	}
 
 	public JBehaveEngine setAbortCheck(Runnable abortCheck) {
 		this.settings.setAbortCheck(abortCheck);
-		return this;
+		return modified();
 	}
 
 	public Runnable getAbortCheck() {
@@ -99,15 +163,37 @@ class JBehaveEngine extends GherkinEngine {
 		return this.settings.isFailOnPending();
 	}
 
+	public JBehaveEngine setRecordLatencies(boolean recordLatencies) {
+		this.settings.setRecordLatencies(recordLatencies);
+		return modified();
+	}
+
+	public boolean isRecordLatencies() {
+		return this.settings.isRecordLatencies();
+	}
+
 	public JBehaveEngine setDryRun(boolean dryRun) {
 		this.settings.setDryRun(dryRun);
-		return this;
+		return modified();
 	}
 
 	public boolean isDryRun() {
 		return this.settings.isDryRun();
 	}
 
+	/**
+	 * <p>
+	 * Also sets the metrics the prepared stories' runs are counted in, which may be changed after
+	 * the engine is initialized.
+	 * </p>
+	 */
+	@Override
+	public JBehaveEngine setMetrics(GherkinMetrics metrics) {
+		super.setMetrics(metrics);
+		this.settings.setMetrics(getMetrics());
+		return modified();
+	}
+
 	@Override
 	public void init(GherkinConfig config) throws Exception {
 		// Populate these from the configuration
@@ -135,19 +221,38 @@ class JBehaveEngine extends GherkinEngine {
 		composites = GherkinTools.interpolateText(composites);
 		compositesMap.put("declaredComposites", composites);
 
-		this.runner = new JBehaveRunner(packagesToScan, compositesMap);
+		// The runner is shared by all the threads, only the prepared stories are kept per-thread
+		// Only the engine which actually scans for the steps counts the time it takes
+		this.runner = JBehaveRunner.get(packagesToScan, compositesMap, getMetrics());
+	}
+
+	private JBehaveEngine modified() {
+		this.settingsVersion++;
+		return this;
 	}
 
 	@Override
-	public Result<?> runStory(String storyName, String story, Runnable interruptChecker) throws Exception {
-		if (interruptChecker != null) {
-			this.settings.setAbortCheck(interruptChecker);
+	public JBehaveRunner.PreparedStory prepareStory(String storyName, String story) throws Exception {
+		if (this.preparedVersion != this.settingsVersion) {
+			// They were all prepared with the prior settings
+			this.prepared.values().forEach(JBehaveRunner.PreparedStory::close);
+			this.prepared.clear();
+			this.preparedVersion = this.settingsVersion;
+		}
+		final Pair<String, String> key = Pair.of(storyName, story);
+		JBehaveRunner.PreparedStory prepared = this.prepared.get(key);
+		if (prepared == null) {
+			final Story parsed = JBehaveRunner.parse(this.settings.getSyntax(), storyName, story, getMetrics());
+			prepared = this.runner.prepare(parsed, this.settings);
+			this.prepared.put(key, prepared);
 		}
-		return this.runner.run(storyName, story, this.settings);
+		return prepared;
 	}
 
 	@Override
 	public void close() {
+		this.prepared.values().forEach(JBehaveRunner.PreparedStory::close);
+		this.prepared.clear();
 		this.runner = null;
 	}
 }
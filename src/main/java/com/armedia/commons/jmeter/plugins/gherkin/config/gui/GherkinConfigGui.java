@@ -71,6 +71,15 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 	private JCheckBox dryRun;
 	private JCheckBox failOnPending;
 	private JComboBox<String> outputFormats;
+	private JTextField warmupIterations;
+	private JComboBox<String> capturePolicies;
+	private JTextField captureSampleRate;
+	private JTextField captureLimit;
+	private JTextField reportDirectory;
+	private JTextField reportFileSize;
+	private JTextField reportQueueSize;
+	private JComboBox<String> reportBackpressure;
+	private JTextField reportSampleRate;
 
 	private JSyntaxTextArea packages;
 
@@ -82,6 +91,7 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 	private JComboBox<String> languages;
 	private JCheckBox compileScript;
 	private JSyntaxTextArea script;
+	private JSyntaxTextArea testScript;
 
 	public GherkinConfigGui() {
 		setLayout(new BorderLayout(0, 5));
@@ -90,6 +100,7 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		Box box = Box.createVerticalBox();
 		box.add(makeTitlePanel());
 		box.add(createOutputFormatsPanel());
+		box.add(createReportsPanel());
 		add(box, BorderLayout.NORTH);
 		add(createTabsPanel(), BorderLayout.CENTER);
 	}
@@ -129,6 +140,16 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		this.resetContextOnLoop.setSelected(false);
 		box.add(this.resetContextOnLoop);
 
+		this.warmupIterations = new JTextField("0", 5);
+		this.warmupIterations.setName(GherkinConfig.WARMUP_ITERATIONS);
+		final JLabel warmupLabel = new JLabel(
+			"Warm-up iterations (times each story is run before its first sample, excluded from the results):");
+		warmupLabel.setLabelFor(this.warmupIterations);
+		final JPanel warmupPanel = new JPanel(new BorderLayout(5, 0));
+		warmupPanel.add(warmupLabel, BorderLayout.WEST);
+		warmupPanel.add(this.warmupIterations, BorderLayout.CENTER);
+		box.add(warmupPanel);
+
 		outerPanel.add(box, BorderLayout.NORTH);
 
 		Vector<String> outputFormats = new Vector<>(GherkinConfig.OUTPUT_FORMATS);
@@ -139,18 +160,110 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 
 		outerPanel.add(label, BorderLayout.WEST);
 		outerPanel.add(this.outputFormats, BorderLayout.CENTER);
+		outerPanel.add(createCapturePanel(), BorderLayout.SOUTH);
 
 		outerPanel.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED), "Story execution settings",
 			TitledBorder.LEFT, TitledBorder.TOP));
 		return outerPanel;
 	}
 
+	private JPanel createCapturePanel() {
+		Box box = Box.createHorizontalBox();
+
+		this.capturePolicies = new JComboBox<>(new Vector<>(GherkinConfig.CAPTURE_POLICIES));
+		this.capturePolicies.setName(GherkinConfig.CAPTURE_POLICY);
+		final JLabel policyLabel = new JLabel("Capture output:");
+		policyLabel.setLabelFor(this.capturePolicies);
+		box.add(policyLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.capturePolicies);
+		box.add(Box.createHorizontalStrut(10));
+
+		this.captureSampleRate = new JTextField(String.valueOf(GherkinConfig.DEFAULT_CAPTURE_SAMPLE_RATE), 5);
+		this.captureSampleRate.setName(GherkinConfig.CAPTURE_SAMPLE_RATE);
+		final JLabel sampleLabel = new JLabel("Keep 1 successful run in (SAMPLED):");
+		sampleLabel.setLabelFor(this.captureSampleRate);
+		box.add(sampleLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.captureSampleRate);
+		box.add(Box.createHorizontalStrut(10));
+
+		this.captureLimit = new JTextField(String.valueOf(GherkinConfig.DEFAULT_CAPTURE_LIMIT), 8);
+		this.captureLimit.setName(GherkinConfig.CAPTURE_LIMIT);
+		final JLabel limitLabel = new JLabel("Keep the last bytes (TRUNCATED):");
+		limitLabel.setLabelFor(this.captureLimit);
+		box.add(limitLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.captureLimit);
+
+		final JPanel panel = new JPanel(new BorderLayout(5, 0));
+		panel.add(box, BorderLayout.WEST);
+		return panel;
+	}
+
+	private JPanel createReportsPanel() {
+		final JPanel outerPanel = new JPanel(new BorderLayout(5, 0));
+
+		this.reportDirectory = new JTextField();
+		this.reportDirectory.setName(GherkinConfig.REPORT_DIRECTORY);
+		final JLabel directoryLabel = new JLabel("Write the reports into (blank keeps them with the samples):");
+		directoryLabel.setLabelFor(this.reportDirectory);
+		outerPanel.add(directoryLabel, BorderLayout.WEST);
+		outerPanel.add(this.reportDirectory, BorderLayout.CENTER);
+
+		Box box = Box.createHorizontalBox();
+
+		this.reportFileSize = new JTextField(String.valueOf(GherkinConfig.DEFAULT_REPORT_FILE_SIZE), 5);
+		this.reportFileSize.setName(GherkinConfig.REPORT_FILE_SIZE);
+		final JLabel fileSizeLabel = new JLabel("File size (MB):");
+		fileSizeLabel.setLabelFor(this.reportFileSize);
+		box.add(fileSizeLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.reportFileSize);
+		box.add(Box.createHorizontalStrut(10));
+
+		this.reportQueueSize = new JTextField(String.valueOf(GherkinConfig.DEFAULT_REPORT_QUEUE_SIZE), 5);
+		this.reportQueueSize.setName(GherkinConfig.REPORT_QUEUE_SIZE);
+		final JLabel queueSizeLabel = new JLabel("Queue size:");
+		queueSizeLabel.setLabelFor(this.reportQueueSize);
+		box.add(queueSizeLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.reportQueueSize);
+		box.add(Box.createHorizontalStrut(10));
+
+		this.reportBackpressure = new JComboBox<>(new Vector<>(GherkinConfig.BACKPRESSURES));
+		this.reportBackpressure.setName(GherkinConfig.REPORT_BACKPRESSURE);
+		final JLabel backpressureLabel = new JLabel("When the queue is full:");
+		backpressureLabel.setLabelFor(this.reportBackpressure);
+		box.add(backpressureLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.reportBackpressure);
+		box.add(Box.createHorizontalStrut(10));
+
+		this.reportSampleRate = new JTextField(String.valueOf(GherkinConfig.DEFAULT_REPORT_SAMPLE_RATE), 5);
+		this.reportSampleRate.setName(GherkinConfig.REPORT_SAMPLE_RATE);
+		final JLabel sampleRateLabel = new JLabel("Keep 1 report in (SAMPLE):");
+		sampleRateLabel.setLabelFor(this.reportSampleRate);
+		box.add(sampleRateLabel);
+		box.add(Box.createHorizontalStrut(5));
+		box.add(this.reportSampleRate);
+
+		final JPanel settingsPanel = new JPanel(new BorderLayout(5, 0));
+		settingsPanel.add(box, BorderLayout.WEST);
+		outerPanel.add(settingsPanel, BorderLayout.SOUTH);
+
+		outerPanel.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED), "Report files",
+			TitledBorder.LEFT, TitledBorder.TOP));
+		return outerPanel;
+	}
+
 	private JPanel createTabsPanel() {
 		JTabbedPane tabs = new JTabbedPane();
 
 		tabs.addTab("Steps", createStepScannerTab());
 		tabs.addTab("Composite Steps", createCompositesTab());
 		tabs.addTab("Initializer", createScriptTab());
+		tabs.addTab("Test Initializer", createTestScriptTab());
 
 		JPanel panel = new JPanel(new BorderLayout());
 		panel.add(tabs, BorderLayout.CENTER);
@@ -290,7 +403,7 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 
 		JPanel panel = new JPanel(new BorderLayout());
 		panel.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED),
-			"Initialization JSR223Script (variables: gherkin ctx vars props log Label OUT ERR)", TitledBorder.LEFT,
+			"Initialization JSR223Script (variables: gherkin ctx vars props log Label OUT ERR shared)", TitledBorder.LEFT,
 			TitledBorder.TOP));
 
 		panel.add(box, BorderLayout.NORTH);
@@ -298,10 +411,31 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		return panel;
 	}
 
+	private JPanel createTestScriptTab() {
+		this.testScript = JSyntaxTextArea.getInstance(25, 80, false);
+		JScrollPane scriptPane = JTextScrollPane.getInstance(this.testScript, true);
+		this.testScript.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+		this.testScript.setLanguage("text");
+
+		JPanel panel = new JPanel(new BorderLayout());
+		panel.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED),
+			"Test start JSR223Script, run once per test in the same language (variables: shared props log Label OUT ERR)",
+			TitledBorder.LEFT, TitledBorder.TOP));
+
+		panel.add(scriptPane, BorderLayout.CENTER);
+		return panel;
+	}
+
 	private void setScriptLanguage(String language) {
-		String script = this.script.getText();
-		this.script.setLanguage(language.toLowerCase());
-		this.script.setText(script);
+		for (JSyntaxTextArea area : new JSyntaxTextArea[] {
+			this.script, this.testScript
+		}) {
+			if (area != null) {
+				String script = area.getText();
+				area.setLanguage(language.toLowerCase());
+				area.setText(script);
+			}
+		}
 	}
 
 	protected final GherkinConfig cast(TestElement element) {
@@ -330,10 +464,20 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		this.compileScript.setSelected(cfg.isCompileIfPossible());
 		this.dryRun.setSelected(cfg.isDryRun());
 		this.failOnPending.setSelected(cfg.isFailOnPending());
+		this.warmupIterations.setText(String.valueOf(cfg.getWarmupIterations()));
 		Script script = cfg.getScript();
 		this.script.setText(script.getScript());
+		this.testScript.setText(cfg.getTestScript().getScript());
 		this.languages.setSelectedItem(renderLanguage(script.getLanguage()));
 		this.outputFormats.setSelectedItem(cfg.getOutputFormat());
+		this.capturePolicies.setSelectedItem(cfg.getCapturePolicy());
+		this.captureSampleRate.setText(String.valueOf(cfg.getCaptureSampleRate()));
+		this.captureLimit.setText(String.valueOf(cfg.getCaptureLimit()));
+		this.reportDirectory.setText(cfg.getReportDirectory());
+		this.reportFileSize.setText(String.valueOf(cfg.getReportFileSize()));
+		this.reportQueueSize.setText(String.valueOf(cfg.getReportQueueSize()));
+		this.reportBackpressure.setSelectedItem(cfg.getReportBackpressure());
+		this.reportSampleRate.setText(String.valueOf(cfg.getReportSampleRate()));
 		this.compositesFile.setText(cfg.getCompositesFile());
 		this.composites.setText(cfg.getComposites());
 		this.packages.setText(cfg.getPackages());
@@ -355,10 +499,46 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		config.setCompileIfPossible(this.compileScript.isSelected());
 		config.setDryRun(this.dryRun.isSelected());
 		config.setFailOnPending(this.failOnPending.isSelected());
+		try {
+			config.setWarmupIterations(Integer.parseInt(this.warmupIterations.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setWarmupIterations(0);
+		}
 		String str = StringUtils.defaultString(this.languages.getSelectedItem(), null);
 		config.setScript(extractLanguage(str), this.script.getText());
+		config.setTestScript(this.testScript.getText());
 		str = StringUtils.defaultString(this.outputFormats.getSelectedItem(), null);
 		config.setOutputFormat(str);
+		str = StringUtils.defaultString(this.capturePolicies.getSelectedItem(), null);
+		config.setCapturePolicy(str);
+		try {
+			config.setCaptureSampleRate(Integer.parseInt(this.captureSampleRate.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setCaptureSampleRate(GherkinConfig.DEFAULT_CAPTURE_SAMPLE_RATE);
+		}
+		try {
+			config.setCaptureLimit(Integer.parseInt(this.captureLimit.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setCaptureLimit(GherkinConfig.DEFAULT_CAPTURE_LIMIT);
+		}
+		config.setReportDirectory(this.reportDirectory.getText());
+		try {
+			config.setReportFileSize(Integer.parseInt(this.reportFileSize.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setReportFileSize(GherkinConfig.DEFAULT_REPORT_FILE_SIZE);
+		}
+		try {
+			config.setReportQueueSize(Integer.parseInt(this.reportQueueSize.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setReportQueueSize(GherkinConfig.DEFAULT_REPORT_QUEUE_SIZE);
+		}
+		str = StringUtils.defaultString(this.reportBackpressure.getSelectedItem(), null);
+		config.setReportBackpressure(str);
+		try {
+			config.setReportSampleRate(Integer.parseInt(this.reportSampleRate.getText().trim()));
+		} catch (NumberFormatException e) {
+			config.setReportSampleRate(GherkinConfig.DEFAULT_REPORT_SAMPLE_RATE);
+		}
 		config.setCompositesFile(this.compositesFile.getText());
 		config.setComposites(this.composites.getText());
 		config.setPackages(this.packages.getText());
@@ -378,9 +558,19 @@ public class GherkinConfigGui extends AbstractConfigGui implements ItemListener
 		this.compileScript.setSelected(true);
 		this.dryRun.setSelected(false);
 		this.failOnPending.setSelected(false);
+		this.warmupIterations.setText("0");
 		this.languages.setSelectedItem(renderLanguage(GherkinConfig.DEFAULT_SCRIPT_LANGUAGE));
 		this.outputFormats.setSelectedItem(GherkinConfig.DEFAULT_OUTPUT_FORMAT);
+		this.capturePolicies.setSelectedItem(GherkinConfig.DEFAULT_CAPTURE_POLICY);
+		this.captureSampleRate.setText(String.valueOf(GherkinConfig.DEFAULT_CAPTURE_SAMPLE_RATE));
+		this.captureLimit.setText(String.valueOf(GherkinConfig.DEFAULT_CAPTURE_LIMIT));
+		this.reportDirectory.setText("");
+		this.reportFileSize.setText(String.valueOf(GherkinConfig.DEFAULT_REPORT_FILE_SIZE));
+		this.reportQueueSize.setText(String.valueOf(GherkinConfig.DEFAULT_REPORT_QUEUE_SIZE));
+		this.reportBackpressure.setSelectedItem(GherkinConfig.DEFAULT_REPORT_BACKPRESSURE);
+		this.reportSampleRate.setText(String.valueOf(GherkinConfig.DEFAULT_REPORT_SAMPLE_RATE));
 		this.script.setText("");
+		this.testScript.setText("");
 	}
 
 	@Override
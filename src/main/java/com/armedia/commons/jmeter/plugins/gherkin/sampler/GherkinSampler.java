@@ -28,7 +28,12 @@ package com.armedia.commons.jmeter.plugins.gherkin.sampler;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.script.ScriptException;
 
@@ -37,12 +42,17 @@ import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.Interruptible;
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestStateListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
 import com.armedia.commons.jmeter.gherkin.GherkinTools;
 import com.armedia.commons.jmeter.plugins.gherkin.config.GherkinConfig;
+import com.armedia.commons.jmeter.plugins.gherkin.config.GherkinWarmup;
+import com.armedia.commons.jmeter.tools.ReportWriter;
+import com.armedia.commons.jmeter.tools.TextTemplate;
 
 import kg.apc.jmeter.JMeterPluginsUtils;
 
@@ -50,7 +60,7 @@ import kg.apc.jmeter.JMeterPluginsUtils;
  * A Sampler that makes HTTP requests using a real browser (via. Selenium/WebDriver). It currently
  * provides a scripting mechanism via. Javascript to control the browser instance.
  */
-public class GherkinSampler extends AbstractSampler implements Interruptible {
+public class GherkinSampler extends AbstractSampler implements Interruptible, TestStateListener {
 	private static final long serialVersionUID = 1L;
 
 	private static final String[] NO_PARAMS = {};
@@ -58,6 +68,24 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 	public static final String PARAMETERS = GherkinSampler.PREFIX + ".parameters";
 	public static final String STORY = GherkinSampler.PREFIX + ".story";
 	public static final String STORY_FILE = GherkinSampler.PREFIX + ".storyFile";
+	public static final String TEMPLATE = GherkinSampler.PREFIX + ".template";
+	public static final String SUB_RESULTS = GherkinSampler.PREFIX + ".subResults";
+	public static final String SCENARIO_LABEL = GherkinSampler.PREFIX + ".scenarioLabel";
+	public static final String STEP_LABEL = GherkinSampler.PREFIX + ".stepLabel";
+
+	public static final String LABEL_SAMPLER = "{sampler}";
+	public static final String LABEL_STORY = "{story}";
+	public static final String LABEL_SCENARIO = "{scenario}";
+	public static final String LABEL_STEP = "{step}";
+	public static final String DEFAULT_SCENARIO_LABEL = GherkinSampler.LABEL_SAMPLER + " - "
+		+ GherkinSampler.LABEL_SCENARIO;
+	public static final String DEFAULT_STEP_LABEL = GherkinSampler.LABEL_SAMPLER + " - " + GherkinSampler.LABEL_STEP;
+	private static final String[] LABEL_TOKENS = {
+		GherkinSampler.LABEL_SAMPLER, GherkinSampler.LABEL_STORY, GherkinSampler.LABEL_SCENARIO,
+		GherkinSampler.LABEL_STEP
+	};
+
+	private static final Pattern ARGUMENT = Pattern.compile("^args\\s*\\[\\s*(\\d+)\\s*\\]$");
 
 	private final Logger log = LoggerFactory.getLogger(GherkinSampler.class);
 
@@ -87,9 +115,7 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 		sampleResult.setSampleLabel(getName());
 		sampleResult.setSamplerData(toString());
 		sampleResult.setDataType(SampleResult.TEXT);
-
-		// TODO: Set this as per the output format
-		sampleResult.setContentType("text/xml");
+		sampleResult.setContentType("text/plain");
 
 		sampleResult.setDataEncoding("UTF-8");
 		sampleResult.setSuccessful(false);
@@ -102,14 +128,40 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 			sampleResult.setSamplerData(story);
 			final boolean successful;
 			if (StringUtils.isNotBlank(story)) {
+				// The warm-up, parsing and step resolution happen outside of the sample window
+				GherkinWarmup.warmup(runner, getName(), story);
+				final Gherkin.PreparedStory prepared = runner.prepareStory(getName(), story);
+				final GherkinMetrics metrics = GherkinConfig.getMetrics(getThreadContext());
+				final Function<String, Object> variables = (isTemplate() ? (name) -> resolveVariable(metrics, name)
+					: null);
 				sampleResult.sampleStart();
 				try {
-					gherkinResult = runner.runStory(getName(), getStory(), this::checkInterrupted);
+					gherkinResult = prepared.perform(this::checkInterrupted, variables, isSubResults());
 				} finally {
 					sampleResult.sampleEnd();
 				}
+				if (variables != null) {
+					// Each run counts as one interpolation, whose time is that of all its lookups
+					metrics.increment(GherkinMetrics.Counter.INTERPOLATIONS);
+				}
+				addSubResults(sampleResult, gherkinResult.getTiming());
 				// TODO: Re-enable prettyprinting
-				sampleResult.setResponseData(gherkinResult.getOutput(), Charset.defaultCharset().name());
+				final ReportWriter reports = GherkinConfig.getReportWriter(getThreadContext());
+				final byte[] output = gherkinResult.getOutputBytes();
+				if ((reports != null) && (output.length > 0)) {
+					// Only the reference is kept, so the report never reaches the listeners
+					final ReportWriter.Reference ref = reports.write(output);
+					sampleResult.setResponseData((ref != null ? ref.toString() : "Report dropped"),
+						StandardCharsets.UTF_8.name());
+				} else {
+					// The output is handed over as-is, so it's never decoded unless someone looks at it
+					sampleResult.setResponseData(output);
+					sampleResult.setDataEncoding(gherkinResult.getCharset().name());
+					sampleResult.setContentType(gherkinResult.getContentType());
+					if (gherkinResult.isBinary()) {
+						sampleResult.setDataType(SampleResult.BINARY);
+					}
+				}
 				successful = gherkinResult.getFailures().isEmpty();
 			} else {
 				successful = false;
@@ -138,6 +190,78 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 		return sampleResult;
 	}
 
+	private String label(String pattern, Gherkin.Timing story, Gherkin.Timing scenario, Gherkin.Timing step) {
+		return StringUtils.replaceEach(pattern, GherkinSampler.LABEL_TOKENS, new String[] {
+			getName(), //
+			(story != null ? StringUtils.defaultString(story.getName()) : ""), //
+			(scenario != null ? StringUtils.defaultString(scenario.getName()) : ""), //
+			(step != null ? StringUtils.defaultString(step.getName()) : "") //
+		});
+	}
+
+	private SampleResult newSubResult(SampleResult parent, Gherkin.Timing story, Gherkin.Timing timing,
+		String label) {
+		SampleResult result = new SampleResult();
+		result.setSampleLabel(label);
+		result.setDataType(SampleResult.TEXT);
+		// Place the nanosecond boundaries relative to the (millisecond) start of the whole sample
+		long start = parent.getStartTime()
+			+ TimeUnit.NANOSECONDS.toMillis(timing.getStartNanos() - story.getStartNanos());
+		result.setStampAndTime(start, TimeUnit.NANOSECONDS.toMillis(timing.getDurationNanos()));
+		final boolean successful = (timing.getOutcome() != Gherkin.Timing.Outcome.FAILED);
+		result.setSuccessful(successful);
+		if (successful) {
+			result.setResponseCode("200");
+			result.setResponseMessageOK();
+		} else {
+			result.setResponseCode("500");
+			Throwable failure = timing.getFailure();
+			result.setResponseMessage(failure != null ? String.valueOf(failure.getMessage()) : "Failed");
+		}
+		return result;
+	}
+
+	private static boolean isPerformed(Gherkin.Timing step) {
+		// Steps which never ran have no timings worth reporting
+		switch (step.getOutcome()) {
+			case SUCCESSFUL:
+			case FAILED:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds a sub-result for each scenario, each of which holds a sub-result for each of its steps
+	 * that was performed. The sub-results are added "raw", so their labels are kept as-is and
+	 * they're aggregated by label, rather than by their position within this sampler.
+	 * </p>
+	 */
+	private void addSubResults(SampleResult sampleResult, Gherkin.Timing story) {
+		if (story == null) { return; }
+		final String scenarioLabel = getScenarioLabel();
+		final String stepLabel = getStepLabel();
+		for (Gherkin.Timing child : story.getChildren()) {
+			if (child.getKind() == Gherkin.Timing.Kind.STEP) {
+				if (GherkinSampler.isPerformed(child)) {
+					sampleResult.addRawSubResult(
+						newSubResult(sampleResult, story, child, label(stepLabel, story, null, child)));
+				}
+				continue;
+			}
+			SampleResult scenario = newSubResult(sampleResult, story, child, label(scenarioLabel, story, child, null));
+			for (Gherkin.Timing step : child.getChildren()) {
+				if (GherkinSampler.isPerformed(step)) {
+					scenario.addRawSubResult(
+						newSubResult(sampleResult, story, step, label(stepLabel, story, child, step)));
+				}
+			}
+			sampleResult.addRawSubResult(scenario);
+		}
+	}
+
 	private String getRawStory() {
 		return getPropertyAsString(GherkinSampler.STORY, GherkinSampler.DEFAULT_STORY);
 	}
@@ -154,7 +278,70 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 
 	private String getStory() throws ScriptException, IOException {
 		String story = GherkinTools.getOverridableText(getStoryFile(), this::getRawStory);
-		return GherkinTools.interpolateText(story, getParameters());
+		// In template mode, the placeholders are resolved as each step is executed
+		if (isTemplate()) { return story; }
+		final GherkinMetrics metrics = GherkinConfig.getMetrics(getThreadContext());
+		final long start = System.nanoTime();
+		try {
+			return GherkinTools.interpolateText(story, getParameters());
+		} finally {
+			metrics.increment(GherkinMetrics.Counter.INTERPOLATIONS);
+			metrics.add(GherkinMetrics.Counter.INTERPOLATION_NANOS, System.nanoTime() - start);
+		}
+	}
+
+	private Object resolveVariable(GherkinMetrics metrics, String name) {
+		// These are resolved as the steps are executed, so their time is also part of the sample's
+		final long start = System.nanoTime();
+		try {
+			return resolveVariable(name);
+		} finally {
+			metrics.add(GherkinMetrics.Counter.INTERPOLATION_NANOS, System.nanoTime() - start);
+		}
+	}
+
+	private Object resolveVariable(String name) {
+		Matcher m = GherkinSampler.ARGUMENT.matcher(name);
+		if (m.matches()) {
+			String[] parameters = getParameters();
+			int index = Integer.parseInt(m.group(1));
+			return ((index < parameters.length) ? parameters[index] : null);
+		}
+		return getThreadContext().getVariables().getObject(name);
+	}
+
+	public boolean isTemplate() {
+		return getPropertyAsBoolean(GherkinSampler.TEMPLATE);
+	}
+
+	public void setTemplate(boolean template) {
+		setProperty(GherkinSampler.TEMPLATE, template);
+	}
+
+	public boolean isSubResults() {
+		return getPropertyAsBoolean(GherkinSampler.SUB_RESULTS);
+	}
+
+	public void setSubResults(boolean subResults) {
+		setProperty(GherkinSampler.SUB_RESULTS, subResults);
+	}
+
+	public String getScenarioLabel() {
+		return StringUtils.defaultIfBlank(getPropertyAsString(GherkinSampler.SCENARIO_LABEL),
+			GherkinSampler.DEFAULT_SCENARIO_LABEL);
+	}
+
+	public void setScenarioLabel(String scenarioLabel) {
+		setProperty(GherkinSampler.SCENARIO_LABEL, scenarioLabel);
+	}
+
+	public String getStepLabel() {
+		return StringUtils.defaultIfBlank(getPropertyAsString(GherkinSampler.STEP_LABEL),
+			GherkinSampler.DEFAULT_STEP_LABEL);
+	}
+
+	public void setStepLabel(String stepLabel) {
+		setProperty(GherkinSampler.STEP_LABEL, stepLabel);
 	}
 
 	public void setStory(String script) {
@@ -172,6 +359,34 @@ public class GherkinSampler extends AbstractSampler implements Interruptible {
 		}
 	}
 
+	@Override
+	public void testStarted() {
+		try {
+			String story = GherkinTools.getOverridableText(getStoryFile(), this::getRawStory);
+			if (StringUtils.isBlank(story)) { return; }
+			// Stories which need the thread's variables can only be warmed up in template mode
+			if (!isTemplate() && !TextTemplate.compile(story).isConstant()) { return; }
+			GherkinWarmup.addStory(getName(), story);
+		} catch (Exception e) {
+			this.log.warn("Failed to load the story for {} to warm it up", getName(), e);
+		}
+	}
+
+	@Override
+	public void testStarted(String host) {
+		testStarted();
+	}
+
+	@Override
+	public void testEnded() {
+		GherkinWarmup.reset();
+	}
+
+	@Override
+	public void testEnded(String host) {
+		testEnded();
+	}
+
 	@Override
 	public boolean interrupt() {
 		this.interrupted.set(true);
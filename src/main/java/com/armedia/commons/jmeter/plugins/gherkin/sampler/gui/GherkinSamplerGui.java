@@ -36,6 +36,7 @@ import java.io.File;
 import javax.swing.AbstractAction;
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
@@ -68,6 +69,10 @@ public class GherkinSamplerGui extends AbstractSamplerGui {
 
 	private final JFileChooser chooser = new JFileChooser();
 	private JTextField parameters;
+	private JCheckBox template;
+	private JCheckBox subResults;
+	private JTextField scenarioLabel;
+	private JTextField stepLabel;
 	private JTextField storyFile;
 	private JSyntaxTextArea story;
 
@@ -78,6 +83,8 @@ public class GherkinSamplerGui extends AbstractSamplerGui {
 		Box box = Box.createVerticalBox();
 		box.add(makeTitlePanel());
 		box.add(makeParametersPanel());
+		box.add(makeTemplatePanel());
+		box.add(makeSubResultsPanel());
 		box.add(makeFileSelectorPanel());
 		add(box, BorderLayout.NORTH);
 		add(createStoryPanel(), BorderLayout.CENTER);
@@ -98,6 +105,46 @@ public class GherkinSamplerGui extends AbstractSamplerGui {
 		return panel;
 	}
 
+	private JPanel makeTemplatePanel() {
+		this.template = new JCheckBox(
+			"Template mode (parse the story once, and resolve ${varname} within step parameters as each step executes)");
+		this.template.setSelected(false);
+
+		final JPanel panel = new JPanel(new BorderLayout(5, 0));
+		panel.add(this.template, BorderLayout.WEST);
+		return panel;
+	}
+
+	private JPanel makeSubResultsPanel() {
+		this.subResults = new JCheckBox("Add a sub-result for each scenario and step");
+		this.subResults.setSelected(false);
+		this.scenarioLabel = new JTextField(GherkinSampler.DEFAULT_SCENARIO_LABEL, 20);
+		this.stepLabel = new JTextField(GherkinSampler.DEFAULT_STEP_LABEL, 20);
+
+		final JLabel scenarioLabelLabel = new JLabel("Scenario label:");
+		scenarioLabelLabel.setLabelFor(this.scenarioLabel);
+		final JLabel stepLabelLabel = new JLabel("Step label:");
+		stepLabelLabel.setLabelFor(this.stepLabel);
+
+		final Box labels = Box.createHorizontalBox();
+		labels.add(scenarioLabelLabel);
+		labels.add(Box.createHorizontalStrut(5));
+		labels.add(this.scenarioLabel);
+		labels.add(Box.createHorizontalStrut(10));
+		labels.add(stepLabelLabel);
+		labels.add(Box.createHorizontalStrut(5));
+		labels.add(this.stepLabel);
+
+		final JPanel panel = new JPanel(new BorderLayout(5, 0));
+		panel.add(this.subResults, BorderLayout.WEST);
+		panel.add(labels, BorderLayout.CENTER);
+		panel.setBorder(new TitledBorder(new EtchedBorder(EtchedBorder.LOWERED),
+			"Sub-results (labels may use " + GherkinSampler.LABEL_SAMPLER + ", " + GherkinSampler.LABEL_STORY + ", "
+				+ GherkinSampler.LABEL_SCENARIO + " and " + GherkinSampler.LABEL_STEP + ")",
+			TitledBorder.LEFT, TitledBorder.TOP));
+		return panel;
+	}
+
 	private JPanel makeFileSelectorPanel() {
 		this.storyFile = new JTextField();
 		final JLabel label = new JLabel("File Name:");
@@ -209,6 +256,11 @@ public class GherkinSamplerGui extends AbstractSamplerGui {
 		this.story.setText(element.getPropertyAsString(GherkinSampler.STORY));
 		this.storyFile.setText(element.getPropertyAsString(GherkinSampler.STORY_FILE));
 		this.parameters.setText(element.getPropertyAsString(GherkinSampler.PARAMETERS));
+		this.template.setSelected(element.getPropertyAsBoolean(GherkinSampler.TEMPLATE));
+		this.subResults.setSelected(element.getPropertyAsBoolean(GherkinSampler.SUB_RESULTS));
+		this.scenarioLabel.setText(
+			element.getPropertyAsString(GherkinSampler.SCENARIO_LABEL, GherkinSampler.DEFAULT_SCENARIO_LABEL));
+		this.stepLabel.setText(element.getPropertyAsString(GherkinSampler.STEP_LABEL, GherkinSampler.DEFAULT_STEP_LABEL));
 		super.configure(element);
 	}
 
@@ -226,11 +278,19 @@ public class GherkinSamplerGui extends AbstractSamplerGui {
 		element.setProperty(GherkinSampler.STORY, this.story.getText());
 		element.setProperty(GherkinSampler.STORY_FILE, this.storyFile.getText());
 		element.setProperty(GherkinSampler.PARAMETERS, this.parameters.getText());
+		element.setProperty(GherkinSampler.TEMPLATE, this.template.isSelected());
+		element.setProperty(GherkinSampler.SUB_RESULTS, this.subResults.isSelected());
+		element.setProperty(GherkinSampler.SCENARIO_LABEL, this.scenarioLabel.getText());
+		element.setProperty(GherkinSampler.STEP_LABEL, this.stepLabel.getText());
 	}
 
 	@Override
 	public void clearGui() {
 		super.clearGui();
 		this.story.setText(GherkinSampler.DEFAULT_STORY);
+		this.template.setSelected(false);
+		this.subResults.setSelected(false);
+		this.scenarioLabel.setText(GherkinSampler.DEFAULT_SCENARIO_LABEL);
+		this.stepLabel.setText(GherkinSampler.DEFAULT_STEP_LABEL);
 	}
 }
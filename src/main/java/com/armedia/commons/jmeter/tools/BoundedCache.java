@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+import org.apache.commons.lang3.concurrent.ConcurrentException;
+import org.apache.commons.lang3.concurrent.ConcurrentInitializer;
+import org.apache.commons.lang3.concurrent.LazyInitializer;
+
+/**
+ * <p>
+ * A thread-safe, size-bounded cache which evicts its least-recently-used entries. Values are
+ * computed at most once per key, outside of the cache's lock, so slow computations for one key
+ * don't block lookups for others.
+ * </p>
+ * <p>
+ * Caches built through a {@link Builder} may also be bounded by the total weight of their values,
+ * evict their least-frequently-used entries instead, and expire entries which haven't been used
+ * for a given time. Evicting an entry only removes it from the cache: callers which already hold
+ * its value may keep using it.
+ * </p>
+ */
+public class BoundedCache<K, V> {
+
+	public static enum Policy {
+		//
+		LRU, //
+		LFU, //
+		//
+		;
+	}
+
+	public static final class Stats {
+		private final long size;
+		private final long weight;
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+
+		Stats(long size, long hits, long misses, long evictions) {
+			this(size, hits, misses, evictions, 0);
+		}
+
+		Stats(long size, long hits, long misses, long evictions, long weight) {
+			this.size = size;
+			this.weight = weight;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		public long getWeight() {
+			return this.weight;
+		}
+
+		public long getHits() {
+			return this.hits;
+		}
+
+		public long getMisses() {
+			return this.misses;
+		}
+
+		public long getEvictions() {
+			return this.evictions;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats [size=%d, weight=%d, hits=%d, misses=%d, evictions=%d]", this.size,
+				this.weight, this.hits, this.misses, this.evictions);
+		}
+	}
+
+	public static final class Builder<K, V> {
+		private int maxSize = 0;
+		private long maxWeight = 0;
+		private ToLongFunction<? super V> weigher = null;
+		private Policy policy = Policy.LRU;
+		private long maxIdle = 0;
+		private LongSupplier ticker = System::nanoTime;
+
+		public Builder<K, V> withMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Bounds the total weight of the cached values, as computed by the given weigher once each
+		 * value is available. A non-positive maximum weight disables this bound.
+		 * </p>
+		 */
+		public Builder<K, V> withMaxWeight(long maxWeight, ToLongFunction<? super V> weigher) {
+			this.maxWeight = maxWeight;
+			this.weigher = weigher;
+			return this;
+		}
+
+		public Builder<K, V> withPolicy(Policy policy) {
+			this.policy = policy;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Expires entries which haven't been used for the given time. A non-positive time disables
+		 * expiration.
+		 * </p>
+		 */
+		public Builder<K, V> withMaxIdle(long maxIdle, TimeUnit unit) {
+			this.maxIdle = Objects.requireNonNull(unit, "Must provide a time unit").toNanos(maxIdle);
+			return this;
+		}
+
+		Builder<K, V> withTicker(LongSupplier ticker) {
+			this.ticker = Objects.requireNonNull(ticker, "Must provide a ticker");
+			return this;
+		}
+
+		public BoundedCache<K, V> build() {
+			return new BoundedCache<>(this);
+		}
+	}
+
+	private final class Entry extends LazyInitializer<V> {
+		private final ConcurrentInitializer<V> initializer;
+		private long weight = 0;
+		private boolean weighed = false;
+		private long frequency = 0;
+		private long lastAccess;
+
+		private Entry(ConcurrentInitializer<V> initializer, long now) {
+			this.initializer = initializer;
+			this.lastAccess = now;
+		}
+
+		private void touch(long now) {
+			this.frequency++;
+			this.lastAccess = now;
+		}
+
+		@Override
+		protected V initialize() throws ConcurrentException {
+			return this.initializer.get();
+		}
+	}
+
+	private final int maxSize;
+	private final long maxWeight;
+	private final ToLongFunction<? super V> weigher;
+	private final Policy policy;
+	private final long maxIdle;
+	private final LongSupplier ticker;
+	private final Lock lock = new ReentrantLock();
+	// Always in access order, so the eldest entries are also the least recently used
+	private final Map<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public BoundedCache(int maxSize) {
+		this(new Builder<K, V>().withMaxSize(maxSize));
+	}
+
+	private BoundedCache(Builder<K, V> builder) {
+		if (builder.maxSize < 1) {
+			throw new IllegalArgumentException("The maximum cache size must be a positive number");
+		}
+		this.maxSize = builder.maxSize;
+		this.weigher = ((builder.maxWeight > 0) ? builder.weigher : null);
+		this.maxWeight = ((this.weigher != null) ? builder.maxWeight : 0);
+		this.policy = Objects.requireNonNull(builder.policy, "Must provide an eviction policy");
+		this.maxIdle = Math.max(0, builder.maxIdle);
+		this.ticker = builder.ticker;
+	}
+
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+
+	public Policy getPolicy() {
+		return this.policy;
+	}
+
+	private void unlink(Iterator<Map.Entry<K, Entry>> it, Entry entry) {
+		it.remove();
+		this.weight -= entry.weight;
+		this.evictions.increment();
+	}
+
+	private void expire(long now) {
+		if (this.maxIdle <= 0) { return; }
+		Iterator<Map.Entry<K, Entry>> it = this.entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next().getValue();
+			if ((now - entry.lastAccess) <= this.maxIdle) { return; }
+			unlink(it, entry);
+		}
+	}
+
+	private boolean isOverLimit() {
+		if (this.entries.size() > this.maxSize) { return true; }
+		return (this.maxWeight > 0) && (this.weight > this.maxWeight);
+	}
+
+	private boolean evictOne(Entry keep) {
+		Iterator<Map.Entry<K, Entry>> it = this.entries.entrySet().iterator();
+		K victim = null;
+		Entry victimEntry = null;
+		while (it.hasNext()) {
+			Map.Entry<K, Entry> e = it.next();
+			Entry entry = e.getValue();
+			if (entry == keep) {
+				continue;
+			}
+			if (this.policy == Policy.LRU) {
+				unlink(it, entry);
+				return true;
+			}
+			// The least frequently used, and of those the least recently used
+			if ((victimEntry == null) || (entry.frequency < victimEntry.frequency)) {
+				victim = e.getKey();
+				victimEntry = entry;
+			}
+		}
+		if (victimEntry == null) { return false; }
+		this.entries.remove(victim);
+		this.weight -= victimEntry.weight;
+		this.evictions.increment();
+		return true;
+	}
+
+	private void evict(Entry keep) {
+		while (isOverLimit() && evictOne(keep)) {
+			// Keep going until we're within limits, or only the kept entry remains
+		}
+	}
+
+	public V get(K key) throws ConcurrentException {
+		Objects.requireNonNull(key, "Must provide a non-null key");
+		final Entry entry;
+		this.lock.lock();
+		try {
+			final long now = this.ticker.getAsLong();
+			expire(now);
+			entry = this.entries.get(key);
+			if (entry != null) {
+				entry.touch(now);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		if (entry == null) {
+			this.misses.increment();
+			return null;
+		}
+		this.hits.increment();
+		return entry.get();
+	}
+
+	public V computeIfAbsent(K key, ConcurrentInitializer<V> initializer) throws ConcurrentException {
+		Objects.requireNonNull(key, "Must provide a non-null key");
+		Objects.requireNonNull(initializer, "Must provide a non-null initializer");
+		Entry entry;
+		this.lock.lock();
+		try {
+			final long now = this.ticker.getAsLong();
+			expire(now);
+			entry = this.entries.get(key);
+			if (entry == null) {
+				entry = new Entry(initializer, now);
+				this.entries.put(key, entry);
+				this.misses.increment();
+				evict(entry);
+			} else {
+				entry.touch(now);
+				this.hits.increment();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+
+		final V value;
+		try {
+			value = entry.get();
+		} catch (ConcurrentException | RuntimeException | Error e) {
+			// Don't cache failures, so the next caller gets a chance to try again
+			remove(key, entry);
+			throw e;
+		}
+		if ((this.weigher != null) && !entry.weighed) {
+			weigh(key, entry, value);
+		}
+		return value;
+	}
+
+	private void weigh(K key, Entry entry, V value) {
+		this.lock.lock();
+		try {
+			if (entry.weighed || (this.entries.get(key) != entry)) { return; }
+			entry.weighed = true;
+			entry.weight = Math.max(0, this.weigher.applyAsLong(value));
+			this.weight += entry.weight;
+			evict(entry);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void remove(K key, Entry entry) {
+		this.lock.lock();
+		try {
+			if (this.entries.remove(key, entry)) {
+				this.weight -= entry.weight;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean remove(K key) {
+		if (key == null) { return false; }
+		this.lock.lock();
+		try {
+			Entry entry = this.entries.remove(key);
+			if (entry == null) { return false; }
+			this.weight -= entry.weight;
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.entries.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.entries.clear();
+			this.weight = 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public Stats getStats() {
+		this.lock.lock();
+		try {
+			return new Stats(this.entries.size(), this.hits.sum(), this.misses.sum(), this.evictions.sum(),
+				this.weight);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A size-bounded memo for cheap, deterministic computations, meant for very hot lookups from many
+ * threads. Unlike {@link BoundedCache}, lookups never lock, values may (rarely) be computed more
+ * than once for the same key, and the size bound is approximate: once exceeded, arbitrary entries
+ * are evicted until the memo is back under its bound.
+ * </p>
+ */
+public class ConcurrentMemo<K, V> {
+
+	private final int maxSize;
+	private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
+	private final AtomicBoolean evicting = new AtomicBoolean(false);
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public ConcurrentMemo(int maxSize) {
+		if (maxSize < 1) { throw new IllegalArgumentException("The maximum memo size must be a positive number"); }
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	public V get(K key) {
+		Objects.requireNonNull(key, "Must provide a non-null key");
+		V value = this.entries.get(key);
+		if (value != null) {
+			this.hits.increment();
+		} else {
+			this.misses.increment();
+		}
+		return value;
+	}
+
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+		V value = get(key);
+		if (value != null) { return value; }
+		value = function.apply(key);
+		if (value == null) { return null; }
+		return put(key, value);
+	}
+
+	/**
+	 * <p>
+	 * Stores the given value unless a value is already memoized for the key, and returns the
+	 * memoized value.
+	 * </p>
+	 */
+	public V put(K key, V value) {
+		Objects.requireNonNull(key, "Must provide a non-null key");
+		Objects.requireNonNull(value, "Must provide a non-null value");
+		V existing = this.entries.putIfAbsent(key, value);
+		if (existing != null) { return existing; }
+		if ((this.entries.size() > this.maxSize) && this.evicting.compareAndSet(false, true)) {
+			try {
+				Iterator<K> it = this.entries.keySet().iterator();
+				while ((this.entries.size() > this.maxSize) && it.hasNext()) {
+					it.next();
+					it.remove();
+					this.evictions.increment();
+				}
+			} finally {
+				this.evicting.set(false);
+			}
+		}
+		return value;
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	public void clear() {
+		this.entries.clear();
+	}
+
+	public BoundedCache.Stats getStats() {
+		return new BoundedCache.Stats(size(), this.hits.sum(), this.misses.sum(), this.evictions.sum());
+	}
+}
@@ -43,6 +43,8 @@ import java.util.Objects;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -59,7 +61,6 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.ConcurrentInitializer;
-import org.apache.commons.lang3.concurrent.ConcurrentUtils;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -87,7 +88,51 @@ public final class JSR223Script {
 		;
 	}
 
-	private static final ConcurrentMap<CacheKey, JSR223Script> CACHE = new ConcurrentHashMap<>();
+	private static final String THREADING = "THREADING";
+
+	/**
+	 * <p>
+	 * A comma-separated list of script languages whose engines are known to be thread-safe even
+	 * though they don't declare a {@code THREADING} parameter, so their scripts may share a single
+	 * engine and compiled script instead of being confined to each thread. Defaults to
+	 * {@link #DEFAULT_THREAD_SAFE_LANGUAGES}.
+	 * </p>
+	 */
+	public static final String THREAD_SAFE_LANGUAGES = "gherkin.scriptThreadSafeLanguages";
+
+	// JEXL3 engines and their compiled scripts are thread-safe, and each evaluation gets its own context
+	public static final String DEFAULT_THREAD_SAFE_LANGUAGES = "jexl3";
+
+	public static final String CACHE_SIZE = "gherkin.scriptCacheSize";
+	private static final int DEFAULT_CACHE_SIZE = 256;
+	public static final String CACHE_WEIGHT = "gherkin.scriptCacheWeight";
+	private static final long DEFAULT_CACHE_WEIGHT = 16 * 1024 * 1024;
+	public static final String CACHE_POLICY = "gherkin.scriptCachePolicy";
+	private static final BoundedCache.Policy DEFAULT_CACHE_POLICY = BoundedCache.Policy.LRU;
+	public static final String CACHE_MAX_IDLE = "gherkin.scriptCacheMaxIdle";
+	private static final long DEFAULT_CACHE_MAX_IDLE = 0;
+
+	// Evicted scripts are simply dropped, so whoever is still executing them may keep doing so
+	private static final BoundedCache<CacheKey, JSR223Script> CACHE = new BoundedCache.Builder<CacheKey, JSR223Script>() //
+		.withMaxSize(Math.max(1, Integer.getInteger(JSR223Script.CACHE_SIZE, JSR223Script.DEFAULT_CACHE_SIZE))) //
+		.withMaxWeight(Long.getLong(JSR223Script.CACHE_WEIGHT, JSR223Script.DEFAULT_CACHE_WEIGHT), (s) -> s.weight) //
+		.withPolicy(JSR223Script.getCachePolicy()) //
+		.withMaxIdle(Long.getLong(JSR223Script.CACHE_MAX_IDLE, JSR223Script.DEFAULT_CACHE_MAX_IDLE), TimeUnit.SECONDS) //
+		.build();
+	private static final LongAdder COMPILATIONS = new LongAdder();
+
+	// Scripts which are in use are kept here, so they're neither evicted nor recompiled
+	private static final ConcurrentMap<CacheKey, JSR223Script> ACQUIRED = new ConcurrentHashMap<>();
+
+	private static BoundedCache.Policy getCachePolicy() {
+		String policy = System.getProperty(JSR223Script.CACHE_POLICY);
+		if (StringUtils.isBlank(policy)) { return JSR223Script.DEFAULT_CACHE_POLICY; }
+		try {
+			return BoundedCache.Policy.valueOf(StringUtils.upperCase(policy.trim()));
+		} catch (IllegalArgumentException e) {
+			return JSR223Script.DEFAULT_CACHE_POLICY;
+		}
+	}
 
 	public static class Builder {
 
@@ -251,7 +296,35 @@ public final class JSR223Script {
 
 	public static JSR223Script getInstance(CacheKey cacheKey) {
 		if (cacheKey == null) { return null; }
-		return JSR223Script.CACHE.get(cacheKey);
+		JSR223Script acquired = JSR223Script.ACQUIRED.get(cacheKey);
+		if (acquired != null) { return acquired; }
+		try {
+			return JSR223Script.CACHE.get(cacheKey);
+		} catch (ConcurrentException e) {
+			// Failed scripts aren't kept in the cache
+			return null;
+		}
+	}
+
+	public static BoundedCache.Stats getCacheStats() {
+		return JSR223Script.CACHE.getStats();
+	}
+
+	/**
+	 * <p>
+	 * Returns the number of times any script has been compiled. This grows along with the cache's
+	 * misses, so if it keeps growing during a test, the cache is probably too small.
+	 * </p>
+	 */
+	public static long getCompilations() {
+		return JSR223Script.COMPILATIONS.sum();
+	}
+
+	private static JSR223Script lookup(CacheKey key, ConcurrentInitializer<JSR223Script> initializer)
+		throws ConcurrentException {
+		JSR223Script acquired = JSR223Script.ACQUIRED.get(key);
+		if (acquired != null) { return acquired; }
+		return JSR223Script.CACHE.computeIfAbsent(key, initializer);
 	}
 
 	private static JSR223Script getInstance(boolean allowCompilation, String language, final String script)
@@ -264,7 +337,7 @@ public final class JSR223Script {
 		}
 
 		try {
-			return ConcurrentUtils.createIfAbsent(JSR223Script.CACHE, key.getKey(),
+			return JSR223Script.lookup(key.getKey(),
 				new ConcurrentInitializer<JSR223Script>() {
 					@Override
 					public JSR223Script get() throws ConcurrentException {
@@ -280,7 +353,7 @@ public final class JSR223Script {
 		throws ScriptException, IOException {
 		final Pair<CacheKey, String> key = JSR223Script.computeKey(language, r);
 		try {
-			return ConcurrentUtils.createIfAbsent(JSR223Script.CACHE, key.getKey(),
+			return JSR223Script.lookup(key.getKey(),
 				new ConcurrentInitializer<JSR223Script>() {
 					@Override
 					public JSR223Script get() throws ConcurrentException {
@@ -297,7 +370,7 @@ public final class JSR223Script {
 		final Charset charset) throws ScriptException, IOException {
 		final Pair<CacheKey, String> key = JSR223Script.computeKey(language, source);
 		try {
-			return ConcurrentUtils.createIfAbsent(JSR223Script.CACHE, key.getKey(),
+			return JSR223Script.lookup(key.getKey(),
 				new ConcurrentInitializer<JSR223Script>() {
 					@Override
 					public JSR223Script get() throws ConcurrentException {
@@ -355,23 +428,39 @@ public final class JSR223Script {
 
 	private final boolean allowCompilation;
 	private final CacheKey cacheKey;
+	private final long weight;
 	private final String language;
 	private final ScriptEngineFactory factory;
 	private final LazyInitializer<String> sourceCode;
-	private final LazyInitializer<ScriptEngine> engine = new LazyInitializer<ScriptEngine>() {
+	private final boolean threadConfined;
+	private int references = 0;
+
+	/**
+	 * <p>
+	 * A script engine, along with the script as compiled by it, since compiled scripts are tied to
+	 * the engine that compiled them.
+	 * </p>
+	 */
+	private final class EngineState {
+		private final ScriptEngine engine = JSR223Script.this.factory.getScriptEngine();
+		private volatile CompilationResult compilationResult = null;
+	}
+
+	private final LazyInitializer<EngineState> sharedEngine = new LazyInitializer<EngineState>() {
 		@Override
-		protected ScriptEngine initialize() {
-			return JSR223Script.this.factory.getScriptEngine();
+		protected EngineState initialize() {
+			return new EngineState();
 		}
 	};
-
-	private volatile CompilationResult compilationResult = null;
+	private final ThreadLocal<EngineState> threadEngine = ThreadLocal.withInitial(EngineState::new);
 
 	private JSR223Script(boolean allowCompilation, CacheKey cacheKey, String language, final String script) {
 		this.allowCompilation = allowCompilation;
 		this.cacheKey = cacheKey;
 		this.language = StringUtils.lowerCase(language);
 		this.factory = JSR223Script.getFactory(language);
+		this.weight = script.length();
+		this.threadConfined = !JSR223Script.isThreadSafe(this.factory);
 		this.sourceCode = new LazyInitializer<String>() {
 			@Override
 			protected String initialize() {
@@ -386,6 +475,8 @@ public final class JSR223Script {
 		this.language = StringUtils.lowerCase(language);
 		this.factory = JSR223Script.getFactory(language);
 		if (this.factory == null) { throw new IllegalArgumentException("Unsupported language [" + language + "]"); }
+		this.weight = JSR223Script.getWeight(source);
+		this.threadConfined = !JSR223Script.isThreadSafe(this.factory);
 		this.sourceCode = new LazyInitializer<String>() {
 			@Override
 			protected String initialize() throws ConcurrentException {
@@ -398,36 +489,87 @@ public final class JSR223Script {
 		};
 	}
 
+	private static long getWeight(Path source) {
+		try {
+			return Files.size(source);
+		} catch (IOException e) {
+			// We'll find out about this when it's read
+			return 0;
+		}
+	}
+
 	public String getLanguage() {
 		return this.language;
 	}
 
-	public void compile() throws ScriptException, IOException {
-		ScriptEngine engine;
+	/**
+	 * <p>
+	 * Returns {@code true} if the factory's engines may be used by multiple threads at once, as
+	 * per their {@code THREADING} parameter, or because one of its names is listed in the
+	 * {@link #THREAD_SAFE_LANGUAGES} property. Any other engines aren't thread-safe.
+	 * </p>
+	 */
+	static boolean isThreadSafe(ScriptEngineFactory factory) {
+		if (factory == null) { return false; }
+		if (factory.getParameter(JSR223Script.THREADING) != null) { return true; }
+		final String languages = System.getProperty(JSR223Script.THREAD_SAFE_LANGUAGES,
+			JSR223Script.DEFAULT_THREAD_SAFE_LANGUAGES);
+		if (StringUtils.isBlank(languages)) { return false; }
+		for (String language : StringUtils.split(StringUtils.lowerCase(languages), ", ")) {
+			for (String name : factory.getNames()) {
+				if (language.equals(StringUtils.lowerCase(name))) { return true; }
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Returns {@code true} if this script is executed by a separate engine for each thread (and
+	 * compiled separately for each), because its engines aren't thread-safe. Otherwise, all
+	 * threads share the same engine and compiled script.
+	 * </p>
+	 * <p>
+	 * Confinement costs one engine and one compilation per thread for every script, so it's only
+	 * used for engines which aren't known to be safe. JEXL3 (used by {@link TextTemplate}) doesn't
+	 * declare its threading, but is listed as safe by default. Other engines known to be safe can
+	 * be listed in the {@link #THREAD_SAFE_LANGUAGES} property to share them again.
+	 * </p>
+	 */
+	public boolean isThreadConfined() {
+		return this.threadConfined;
+	}
+
+	private EngineState getEngine() {
+		if (this.threadConfined) { return this.threadEngine.get(); }
 		try {
-			engine = this.engine.get();
+			return this.sharedEngine.get();
 		} catch (ConcurrentException e) {
 			throw new RuntimeException("Unexpected exception while instantiating the ScriptEngine", e);
 		}
-		getCompiledScript(engine);
 	}
 
-	private CompiledScript getCompiledScript(ScriptEngine engine) throws ScriptException, IOException {
-		if (!this.allowCompilation || !Compilable.class.isInstance(engine)) { return null; }
+	public void compile() throws ScriptException, IOException {
+		getCompiledScript(getEngine());
+	}
+
+	private CompiledScript getCompiledScript(EngineState state) throws ScriptException, IOException {
+		if (!this.allowCompilation || !Compilable.class.isInstance(state.engine)) { return null; }
 
-		CompilationResult result = this.compilationResult;
+		CompilationResult result = state.compilationResult;
 		if (result == null) {
-			synchronized (this) {
-				result = this.compilationResult;
+			synchronized (state) {
+				result = state.compilationResult;
 				if (result == null) {
 					try {
 						String source = this.sourceCode.get();
-						CompiledScript compiled = Compilable.class.cast(engine).compile(source);
+						CompiledScript compiled = Compilable.class.cast(state.engine).compile(source);
+						JSR223Script.COMPILATIONS.increment();
 						result = new CompilationResult(compiled);
-						this.compilationResult = result;
+						state.compilationResult = result;
 					} catch (ConcurrentException | ScriptException e) {
 						result = new CompilationResult(e);
-						this.compilationResult = result;
+						state.compilationResult = result;
 					} finally {
 						result.throwCaught();
 					}
@@ -448,23 +590,27 @@ public final class JSR223Script {
 	}
 
 	public Object execute(Predicate<Bindings> initializer) throws ScriptException, IOException {
-		ScriptEngine engine;
-		try {
-			engine = this.engine.get();
-		} catch (ConcurrentException e) {
-			throw new RuntimeException("Unexpected exception while instantiating the ScriptEngine", e);
-		}
-
-		final Bindings bindings = engine.createBindings();
+		final Bindings bindings = getEngine().engine.createBindings();
 		if ((initializer != null) && !initializer.test(bindings)) {
 			throw new ScriptException("Binding initialization failed");
 		}
+		return execute(bindings);
+	}
 
-		final CompiledScript compiledScript = getCompiledScript(engine);
+	/**
+	 * <p>
+	 * Executes the script with the given bindings, which needn't have been created by the script
+	 * engine. This allows the caller to provide bindings which resolve their values lazily.
+	 * </p>
+	 */
+	public Object execute(Bindings bindings) throws ScriptException, IOException {
+		Objects.requireNonNull(bindings, "Must provide the bindings to execute the script with");
+		final EngineState state = getEngine();
+		final CompiledScript compiledScript = getCompiledScript(state);
 		if (compiledScript != null) { return compiledScript.eval(bindings); }
 
 		try {
-			return engine.eval(this.sourceCode.get(), bindings);
+			return state.engine.eval(this.sourceCode.get(), bindings);
 		} catch (ConcurrentException e) {
 			throw JSR223Script.handle(e);
 		}
@@ -474,6 +620,39 @@ public final class JSR223Script {
 		return this.cacheKey;
 	}
 
+	/**
+	 * <p>
+	 * Marks this script as being in use, so it will be returned by all lookups for its key (and
+	 * thus won't be recompiled) until every acquisition has been {@link #release() released}, even
+	 * if it's evicted or purged from the cache in the meantime.
+	 * </p>
+	 */
+	public synchronized JSR223Script acquire() {
+		if (this.references++ == 0) {
+			JSR223Script.ACQUIRED.putIfAbsent(this.cacheKey, this);
+		}
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Releases one prior {@link #acquire() acquisition}. Once the last one is released, the script
+	 * is once again subject to the cache's normal eviction.
+	 * </p>
+	 */
+	public synchronized void release() {
+		if (this.references <= 0) {
+			throw new IllegalStateException("The script " + this.cacheKey + " has not been acquired");
+		}
+		if (--this.references == 0) {
+			JSR223Script.ACQUIRED.remove(this.cacheKey, this);
+		}
+	}
+
+	public synchronized int getReferences() {
+		return this.references;
+	}
+
 	public void dispose() {
 		JSR223Script.purge(this.cacheKey);
 	}
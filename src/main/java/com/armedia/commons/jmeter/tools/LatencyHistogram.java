@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A fixed-size, lock-free histogram of latencies (in nanoseconds), which many threads may record
+ * into at once without allocating anything. The values are kept in log-linear buckets (in the
+ * manner of HdrHistogram): each power of two is split into {@code 32} buckets of equal width, so
+ * the values reported are within ~3% of those recorded. Values past {@link #MAX_TRACKABLE} (about
+ * 68 seconds) are counted in the last bucket, though the maximum is still kept exactly.
+ * </p>
+ * <p>
+ * The counts are striped by thread, such that threads rarely contend for the same counters. A
+ * {@link #snapshot() snapshot} may be taken at any time, while recording is still going on: it
+ * adds up the stripes as they are at that moment, so the values being recorded while it's taken
+ * may only be partly reflected in it (i.e. in the counts, but not yet in the sum).
+ * </p>
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << LatencyHistogram.SUB_BITS;
+	private static final int MAX_BITS = 36;
+	public static final long MAX_TRACKABLE = (1L << LatencyHistogram.MAX_BITS) - 1;
+	private static final int BUCKETS = LatencyHistogram.index(LatencyHistogram.MAX_TRACKABLE) + 1;
+
+	// The stripes also carry the sum, the minimum, and the maximum after the buckets
+	private static final int SUM = LatencyHistogram.BUCKETS;
+	private static final int MIN = LatencyHistogram.SUM + 1;
+	private static final int MAX = LatencyHistogram.MIN + 1;
+	private static final int STRIPE_SIZE = LatencyHistogram.MAX + 1;
+
+	public static final String STRIPES = "gherkin.histogramStripes";
+	private static final int DEFAULT_STRIPES = Math.min(8,
+		Integer.highestOneBit((Runtime.getRuntime().availableProcessors() * 2) - 1));
+
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long min, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.min = (count > 0 ? min : 0);
+			this.max = max;
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getSum() {
+			return this.sum;
+		}
+
+		public long getMin() {
+			return this.min;
+		}
+
+		public long getMax() {
+			return this.max;
+		}
+
+		public double getMean() {
+			return (this.count > 0 ? (double) this.sum / this.count : 0.0);
+		}
+
+		/**
+		 * <p>
+		 * Returns the value below which the given percentage (0-100) of the recorded values fall.
+		 * </p>
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (this.count == 0) { return 0; }
+			if (percentile >= 100.0) { return this.max; }
+			final double p = Math.max(0.0, percentile);
+			final long target = Math.max(1, (long) Math.ceil((p / 100.0) * this.count));
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= target) {
+					// Never report past the actual extremes
+					return Math.max(this.min, Math.min(this.max, LatencyHistogram.median(i)));
+				}
+			}
+			return this.max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d, min=%d, mean=%.0f, p50=%d, p90=%d, p99=%d, max=%d (ns)", this.count,
+				this.min, getMean(), getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+				this.max);
+		}
+	}
+
+	private static int index(long value) {
+		if (value < LatencyHistogram.SUB_COUNT) { return (int) Math.max(0, value); }
+		final int msb = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = msb - LatencyHistogram.SUB_BITS;
+		return (shift << LatencyHistogram.SUB_BITS) + (int) (value >>> shift);
+	}
+
+	private static long median(int index) {
+		if (index < (2 * LatencyHistogram.SUB_COUNT)) { return index; }
+		final int shift = (index >>> LatencyHistogram.SUB_BITS) - 1;
+		final long lower = (long) ((index & (LatencyHistogram.SUB_COUNT - 1)) + LatencyHistogram.SUB_COUNT) << shift;
+		return lower + ((1L << shift) >>> 1);
+	}
+
+	private final AtomicLongArray[] stripes;
+	private final int mask;
+
+	public LatencyHistogram() {
+		this(Math.max(1, Integer.getInteger(LatencyHistogram.STRIPES, LatencyHistogram.DEFAULT_STRIPES)));
+	}
+
+	public LatencyHistogram(int stripes) {
+		if (stripes < 1) { throw new IllegalArgumentException("Must have at least one stripe"); }
+		// Round up to a power of two, so the stripe can be picked with a mask
+		stripes = Integer.highestOneBit((stripes * 2) - 1);
+		this.stripes = new AtomicLongArray[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = LatencyHistogram.newStripe();
+		}
+		this.mask = stripes - 1;
+	}
+
+	private static AtomicLongArray newStripe() {
+		AtomicLongArray stripe = new AtomicLongArray(LatencyHistogram.STRIPE_SIZE);
+		stripe.set(LatencyHistogram.MIN, Long.MAX_VALUE);
+		return stripe;
+	}
+
+	public int getStripes() {
+		return this.stripes.length;
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		final AtomicLongArray stripe = this.stripes[(int) Thread.currentThread().getId() & this.mask];
+		stripe.incrementAndGet(LatencyHistogram.index(Math.min(nanos, LatencyHistogram.MAX_TRACKABLE)));
+		stripe.addAndGet(LatencyHistogram.SUM, nanos);
+		stripe.accumulateAndGet(LatencyHistogram.MIN, nanos, Math::min);
+		stripe.accumulateAndGet(LatencyHistogram.MAX, nanos, Math::max);
+	}
+
+	public Snapshot snapshot() {
+		final long[] counts = new long[LatencyHistogram.BUCKETS];
+		long count = 0;
+		long sum = 0;
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		for (AtomicLongArray stripe : this.stripes) {
+			for (int i = 0; i < counts.length; i++) {
+				final long c = stripe.get(i);
+				counts[i] += c;
+				count += c;
+			}
+			sum += stripe.get(LatencyHistogram.SUM);
+			min = Math.min(min, stripe.get(LatencyHistogram.MIN));
+			max = Math.max(max, stripe.get(LatencyHistogram.MAX));
+		}
+		return new Snapshot(counts, count, sum, min, max);
+	}
+
+	/**
+	 * <p>
+	 * Clears the histogram. Values recorded while it's being cleared may be lost.
+	 * </p>
+	 */
+	public void reset() {
+		for (AtomicLongArray stripe : this.stripes) {
+			for (int i = 0; i < LatencyHistogram.STRIPE_SIZE; i++) {
+				stripe.set(i, (i == LatencyHistogram.MIN) ? Long.MAX_VALUE : 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,511 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Appends reports to a series of rotating files through a bounded queue, which is drained by a
+ * single background thread. Each report is assigned its file and offset as it's queued, so the
+ * caller gets a {@link Reference} to where it will be found right away, without waiting for it
+ * to be written.
+ * </p>
+ * <p>
+ * Every writer puts its files into a new subdirectory of the one it's given, named after the time
+ * it was started, so reports from earlier runs are never overwritten.
+ * </p>
+ * <p>
+ * What happens when the queue is full is decided by the {@link Backpressure} policy. Only
+ * {@link Backpressure#BLOCK} ever makes the callers wait for the writer.
+ * </p>
+ */
+public class ReportWriter implements AutoCloseable {
+
+	public static enum Backpressure {
+		//
+		/**
+		 * Wait for room in the queue, so no report is ever lost
+		 */
+		BLOCK, //
+
+		/**
+		 * Drop the reports which don't fit in the queue
+		 */
+		DROP, //
+
+		/**
+		 * Once the queue is half full, only keep one in every N reports, and drop those which don't
+		 * fit in the queue
+		 */
+		SAMPLE, //
+		//
+		;
+	}
+
+	/**
+	 * <p>
+	 * Where a report was (or will be) written: the file, and the offset and length of the report
+	 * within it.
+	 * </p>
+	 */
+	public static final class Reference {
+		private final Path file;
+		private final long offset;
+		private final int length;
+
+		private Reference(Path file, long offset, int length) {
+			this.file = file;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public Path getFile() {
+			return this.file;
+		}
+
+		public long getOffset() {
+			return this.offset;
+		}
+
+		public int getLength() {
+			return this.length;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s@%d+%d", this.file, this.offset, this.length);
+		}
+	}
+
+	public static final class Stats {
+		private final long queued;
+		private final long written;
+		private final long dropped;
+		private final long bytes;
+		private final long files;
+		private final long pending;
+
+		Stats(long queued, long written, long dropped, long bytes, long files, long pending) {
+			this.queued = queued;
+			this.written = written;
+			this.dropped = dropped;
+			this.bytes = bytes;
+			this.files = files;
+			this.pending = pending;
+		}
+
+		public long getQueued() {
+			return this.queued;
+		}
+
+		public long getWritten() {
+			return this.written;
+		}
+
+		public long getDropped() {
+			return this.dropped;
+		}
+
+		public long getBytes() {
+			return this.bytes;
+		}
+
+		public long getFiles() {
+			return this.files;
+		}
+
+		public long getPending() {
+			return this.pending;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats [queued=%d, written=%d, dropped=%d, bytes=%d, files=%d, pending=%d]",
+				this.queued, this.written, this.dropped, this.bytes, this.files, this.pending);
+		}
+	}
+
+	public static final class Builder {
+		private Path directory = null;
+		private String prefix = "report";
+		private String suffix = ".out";
+		private long maxFileSize = 64L * 1024 * 1024;
+		private int queueSize = 1024;
+		private int bufferSize = 1024 * 1024;
+		private Backpressure backpressure = Backpressure.DROP;
+		private int sampleRate = 10;
+
+		public Builder withDirectory(Path directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Sets the names of the files, which will be {@code <prefix>-<number><suffix>}.
+		 * </p>
+		 */
+		public Builder withNames(String prefix, String suffix) {
+			this.prefix = Objects.requireNonNull(prefix, "Must provide a file name prefix");
+			this.suffix = Objects.requireNonNull(suffix, "Must provide a file name suffix");
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Sets the size past which a new file is started. Reports are never split, so a file may
+		 * exceed this size if it holds a single report larger than it.
+		 * </p>
+		 */
+		public Builder withMaxFileSize(long maxFileSize) {
+			this.maxFileSize = maxFileSize;
+			return this;
+		}
+
+		public Builder withQueueSize(int queueSize) {
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		public Builder withBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		public Builder withBackpressure(Backpressure backpressure, int sampleRate) {
+			this.backpressure = Objects.requireNonNull(backpressure, "Must provide a backpressure policy");
+			this.sampleRate = sampleRate;
+			return this;
+		}
+
+		public ReportWriter build() throws IOException {
+			return new ReportWriter(this);
+		}
+	}
+
+	private static final class Entry {
+		private final int file;
+		private final byte[] data;
+
+		private Entry(int file, byte[] data) {
+			this.file = file;
+			this.data = data;
+		}
+	}
+
+	private static final Entry CLOSE = new Entry(-1, null);
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Path directory;
+	private final String prefix;
+	private final String suffix;
+	private final long maxFileSize;
+	private final int bufferSize;
+	private final Backpressure backpressure;
+	private final int sampleRate;
+	private final BlockingQueue<Entry> queue;
+	private final int sampleThreshold;
+	private final Thread writer;
+
+	// Guards the assignment of the references, so they're queued in the order they're assigned
+	private final Lock lock = new ReentrantLock();
+	private int file = 1;
+	private long position = 0;
+	private long sampled = 0;
+	private boolean closed = false;
+
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder files = new LongAdder();
+	private volatile IOException failure = null;
+
+	private ReportWriter(Builder builder) throws IOException {
+		this.directory = ReportWriter.createRunDirectory(Files.createDirectories(
+			Objects.requireNonNull(builder.directory, "Must provide the directory to write the reports into")));
+		this.prefix = builder.prefix;
+		this.suffix = builder.suffix;
+		if (builder.maxFileSize <= 0) {
+			throw new IllegalArgumentException("The maximum file size must be a positive number");
+		}
+		this.maxFileSize = builder.maxFileSize;
+		if (builder.queueSize <= 0) {
+			throw new IllegalArgumentException("The queue size must be a positive number");
+		}
+		this.queue = new ArrayBlockingQueue<>(builder.queueSize);
+		this.sampleThreshold = Math.max(1, builder.queueSize / 2);
+		this.bufferSize = Math.max(8192, builder.bufferSize);
+		this.backpressure = builder.backpressure;
+		this.sampleRate = Math.max(1, builder.sampleRate);
+		this.writer = new Thread(this::drain, "ReportWriter-" + this.directory.getFileName() + "-" + this.prefix);
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	private static Path createRunDirectory(Path parent) throws IOException {
+		final String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		for (int i = 1;; i++) {
+			try {
+				// Creating it is atomic, so no two writers ever get the same one
+				return Files.createDirectory(parent.resolve(i == 1 ? name : name + "-" + i));
+			} catch (FileAlreadyExistsException e) {
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the directory this writer's files are put into, which is unique to it.
+	 * </p>
+	 */
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	public Backpressure getBackpressure() {
+		return this.backpressure;
+	}
+
+	/**
+	 * <p>
+	 * Returns the file with the given number.
+	 * </p>
+	 */
+	public Path getFile(int number) {
+		return this.directory.resolve(String.format("%s-%06d%s", this.prefix, number, this.suffix));
+	}
+
+	/**
+	 * <p>
+	 * Queues the given report to be written, and returns where it will be found, or {@code null} if
+	 * it was dropped (as per the {@link Backpressure} policy, because the writer failed, or because
+	 * the calling thread was interrupted while waiting). The array is not copied, so it must not be
+	 * modified afterwards.
+	 * </p>
+	 */
+	public Reference write(byte[] data) {
+		Objects.requireNonNull(data, "Must provide the data to write");
+		if (this.failure != null) {
+			this.dropped.increment();
+			return null;
+		}
+		try {
+			this.lock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.dropped.increment();
+			return null;
+		}
+		try {
+			if (this.closed) { throw new IllegalStateException("This report writer is already closed"); }
+
+			int file = this.file;
+			long position = this.position;
+			if ((position > 0) && ((position + data.length) > this.maxFileSize)) {
+				file++;
+				position = 0;
+			}
+
+			final Entry entry = new Entry(file, data);
+			if (!enqueue(entry)) {
+				this.dropped.increment();
+				return null;
+			}
+			this.file = file;
+			this.position = position + data.length;
+			this.queued.increment();
+			return new Reference(getFile(file), position, data.length);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private boolean enqueue(Entry entry) {
+		switch (this.backpressure) {
+			case BLOCK:
+				try {
+					this.queue.put(entry);
+					return true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+
+			case SAMPLE:
+				if ((this.queue.size() >= this.sampleThreshold) && ((this.sampled++ % this.sampleRate) != 0)) {
+					return false;
+				}
+				return this.queue.offer(entry);
+
+			case DROP:
+			default:
+				return this.queue.offer(entry);
+		}
+	}
+
+	private void drain() {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(this.bufferSize);
+		FileChannel channel = null;
+		int current = 0;
+		try {
+			while (true) {
+				Entry entry = this.queue.poll();
+				if (entry == null) {
+					// Nothing else is waiting, so this is a good time to push out what we have
+					channel = flush(channel, buffer);
+					entry = this.queue.take();
+				}
+				if (entry == ReportWriter.CLOSE) {
+					break;
+				}
+				if (this.failure != null) {
+					this.dropped.increment();
+					continue;
+				}
+
+				try {
+					if (entry.file != current) {
+						channel = flush(channel, buffer);
+						if (channel != null) {
+							channel.close();
+						}
+						channel = FileChannel.open(getFile(entry.file), StandardOpenOption.CREATE_NEW,
+							StandardOpenOption.WRITE);
+						current = entry.file;
+						this.files.increment();
+					}
+					if (entry.data.length > buffer.remaining()) {
+						channel = flush(channel, buffer);
+					}
+					if (entry.data.length > buffer.capacity()) {
+						// Too big to buffer, so write it straight out
+						ReportWriter.write(channel, ByteBuffer.wrap(entry.data));
+					} else {
+						buffer.put(entry.data);
+					}
+					this.written.increment();
+					this.bytes.add(entry.data.length);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+			flush(channel, buffer);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					this.log.warn("Failed to close the report file {}", getFile(current), e);
+				}
+			}
+		}
+	}
+
+	private void fail(IOException e) {
+		// Everything after the first failure is dropped, so the callers never wait on a dead writer
+		this.failure = e;
+		this.dropped.increment();
+		this.log.error("Failed to write the reports into {}, the remaining reports will be dropped", this.directory,
+			e);
+	}
+
+	private FileChannel flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		if ((channel == null) || (buffer.position() == 0) || (this.failure != null)) { return channel; }
+		buffer.flip();
+		try {
+			ReportWriter.write(channel, buffer);
+		} finally {
+			buffer.clear();
+		}
+		return channel;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public Stats getStats() {
+		return new Stats(this.queued.sum(), this.written.sum(), this.dropped.sum(), this.bytes.sum(),
+			this.files.sum(), this.queue.size());
+	}
+
+	/**
+	 * <p>
+	 * Stops accepting reports, and waits until all those already queued have been written. If the
+	 * calling thread is interrupted, it stops waiting (with its interrupt flag restored): the reports
+	 * already queued are still written if the writer could be told to stop, and dropped otherwise.
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		this.lock.lock();
+		try {
+			if (this.closed) { return; }
+			this.closed = true;
+			this.queue.put(ReportWriter.CLOSE);
+		} catch (InterruptedException e) {
+			// The writer would never stop otherwise
+			this.writer.interrupt();
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			this.lock.unlock();
+		}
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
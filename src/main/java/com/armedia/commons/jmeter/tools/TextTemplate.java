@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import javax.script.Bindings;
+import javax.script.ScriptException;
+
+import org.apache.commons.lang3.concurrent.ConcurrentException;
+import org.apache.commons.lang3.concurrent.LazyInitializer;
+
+/**
+ * <p>
+ * A text template with embedded JEXL expressions (<code>${expression}</code> or
+ * <code>#{expression}</code>), parsed once into its literal and expression segments. Evaluating
+ * the template only evaluates its expressions (all of them at once, through a single script which
+ * is compiled once and shared by all templates with the same expressions) and splices their
+ * values between the literals. Templates without any expressions are returned as-is without
+ * evaluating anything.
+ * </p>
+ * <p>
+ * An expression may be escaped by preceding it with a backslash (<code>\${literal}</code>), and
+ * expressions which aren't closed are kept as literal text. Expressions which evaluate to
+ * {@code null} are rendered as empty strings.
+ * </p>
+ * <p>
+ * Compiled templates are cached by their raw text, so they can be re-used across samples and
+ * threads. The cache's size is controlled by the {@value #CACHE_SIZE} system property.
+ * </p>
+ */
+public final class TextTemplate {
+
+	public static final String LANGUAGE = "jexl3";
+
+	public static final String CACHE_SIZE = "gherkin.templateCacheSize";
+	private static final int DEFAULT_CACHE_SIZE = 256;
+
+	private static final ConcurrentMemo<String, TextTemplate> CACHE = new ConcurrentMemo<>(
+		Math.max(1, Integer.getInteger(TextTemplate.CACHE_SIZE, TextTemplate.DEFAULT_CACHE_SIZE)));
+
+	public static TextTemplate compile(String text) {
+		Objects.requireNonNull(text, "Must provide the text to compile");
+		return TextTemplate.CACHE.computeIfAbsent(text, TextTemplate::new);
+	}
+
+	public static BoundedCache.Stats getCacheStats() {
+		return TextTemplate.CACHE.getStats();
+	}
+
+	public static void clearCache() {
+		TextTemplate.CACHE.clear();
+	}
+
+	private static int findEnd(String text, int start) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = start; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			switch (c) {
+				case '\'':
+				case '"':
+					quote = c;
+					break;
+				case '{':
+					depth++;
+					break;
+				case '}':
+					if (depth == 0) { return i; }
+					depth--;
+					break;
+				default:
+					break;
+			}
+		}
+		return -1;
+	}
+
+	private final String text;
+	private final List<String> literals;
+	private final List<String> expressions;
+	private final LazyInitializer<JSR223Script> script = new LazyInitializer<JSR223Script>() {
+		@Override
+		protected JSR223Script initialize() throws ConcurrentException {
+			List<String> expressions = TextTemplate.this.expressions;
+			// A single script evaluates all the expressions, returning their values as an array
+			String source = (expressions.size() == 1 ? expressions.get(0)
+				: "[(" + String.join("), (", expressions) + ")]");
+			try {
+				return new JSR223Script.Builder().withLanguage(TextTemplate.LANGUAGE).withSource(source).build();
+			} catch (ScriptException | IOException e) {
+				throw new ConcurrentException(e);
+			}
+		}
+	};
+
+	private TextTemplate(String text) {
+		this.text = text;
+		List<String> literals = new ArrayList<>();
+		List<String> expressions = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int pos = 0;
+		while (pos < text.length()) {
+			char c = text.charAt(pos);
+			boolean opener = ((c == '$') || (c == '#')) && ((pos + 1) < text.length())
+				&& (text.charAt(pos + 1) == '{');
+			if ((c == '\\') && ((pos + 2) < text.length()) && ((text.charAt(pos + 1) == '$')
+				|| (text.charAt(pos + 1) == '#')) && (text.charAt(pos + 2) == '{')) {
+				// Escaped expression: keep it verbatim, sans the backslash
+				literal.append(text.charAt(pos + 1)).append('{');
+				pos += 3;
+				continue;
+			}
+			if (opener) {
+				int end = TextTemplate.findEnd(text, pos + 2);
+				if (end > 0) {
+					literals.add(literal.toString());
+					literal.setLength(0);
+					expressions.add(text.substring(pos + 2, end));
+					pos = end + 1;
+					continue;
+				}
+			}
+			literal.append(c);
+			pos++;
+		}
+		// Avoid keeping two copies of constant texts
+		literals.add(expressions.isEmpty() && (literal.length() == text.length()) ? text : literal.toString());
+		this.literals = Collections.unmodifiableList(literals);
+		this.expressions = Collections.unmodifiableList(expressions);
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	public boolean isConstant() {
+		return this.expressions.isEmpty();
+	}
+
+	/**
+	 * <p>
+	 * Returns the literal segments, which are always one more than the expressions, and surround
+	 * them.
+	 * </p>
+	 */
+	public List<String> getLiterals() {
+		return this.literals;
+	}
+
+	public List<String> getExpressions() {
+		return this.expressions;
+	}
+
+	private static String render(Object value) {
+		return (value != null ? value.toString() : "");
+	}
+
+	private JSR223Script getScript() throws ScriptException, IOException {
+		try {
+			return this.script.get();
+		} catch (ConcurrentException e) {
+			Throwable cause = e.getCause();
+			if (ScriptException.class.isInstance(cause)) { throw ScriptException.class.cast(cause); }
+			if (IOException.class.isInstance(cause)) { throw IOException.class.cast(cause); }
+			throw new RuntimeException("Unexpected exception compiling the template's expressions", cause);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Evaluates the template with the given bindings, which are not used at all if the template
+	 * has no expressions.
+	 * </p>
+	 */
+	public String evaluate(Bindings bindings) throws ScriptException, IOException {
+		if (isConstant()) { return this.literals.get(0); }
+		return splice(getScript().execute(bindings));
+	}
+
+	private String splice(Object result) {
+		StringBuilder b = new StringBuilder(this.text.length());
+		b.append(this.literals.get(0));
+		for (int i = 0; i < this.expressions.size(); i++) {
+			final Object value;
+			if (this.expressions.size() == 1) {
+				value = result;
+			} else if ((result != null) && result.getClass().isArray() && (Array.getLength(result) > i)) {
+				value = Array.get(result, i);
+			} else if (List.class.isInstance(result) && (List.class.cast(result).size() > i)) {
+				value = List.class.cast(result).get(i);
+			} else {
+				value = null;
+			}
+			b.append(TextTemplate.render(value)).append(this.literals.get(i + 1));
+		}
+		return b.toString();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TextTemplate [literals=%s, expressions=%s]", this.literals, this.expressions);
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * <p>
+ * A {@link Bindings} implementation which resolves names from a thread's {@link JMeterVariables}
+ * on demand, instead of copying all of them up front. Values put into the bindings (or removed
+ * from them) only override the variables locally, and are never written back to the variables.
+ * </p>
+ * <p>
+ * Lookups by name are as cheap as a lookup in the variables themselves. Iterating over the
+ * bindings (or asking for their size) is supported, but requires merging the variables and the
+ * local overrides, so it should be avoided in hot paths. Like the variables, instances are meant
+ * to be used by a single thread.
+ * </p>
+ */
+public final class VariableBindings extends AbstractMap<String, Object> implements Bindings {
+
+	private final JMeterVariables variables;
+	private final Map<String, Object> local = new HashMap<>();
+	private final Set<String> removed = new HashSet<>();
+
+	public VariableBindings(JMeterVariables variables) {
+		this.variables = variables;
+	}
+
+	public JMeterVariables getVariables() {
+		return this.variables;
+	}
+
+	private static String checkKey(Object key) {
+		Objects.requireNonNull(key, "The key may not be null");
+		if (!String.class.isInstance(key)) { throw new ClassCastException("The key must be a String"); }
+		String name = String.class.cast(key);
+		if (name.isEmpty()) { throw new IllegalArgumentException("The key may not be empty"); }
+		return name;
+	}
+
+	private Object getVariable(String name) {
+		if ((this.variables == null) || this.removed.contains(name)) { return null; }
+		return this.variables.getObject(name);
+	}
+
+	@Override
+	public Object put(String name, Object value) {
+		name = VariableBindings.checkKey(name);
+		boolean overridden = this.local.containsKey(name);
+		Object old = this.local.put(name, value);
+		if (!overridden) {
+			old = getVariable(name);
+		}
+		this.removed.remove(name);
+		return old;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends Object> toMerge) {
+		toMerge.forEach(this::put);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		String name = VariableBindings.checkKey(key);
+		return this.local.containsKey(name) || (getVariable(name) != null);
+	}
+
+	@Override
+	public Object get(Object key) {
+		String name = VariableBindings.checkKey(key);
+		if (this.local.containsKey(name)) { return this.local.get(name); }
+		return getVariable(name);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		String name = VariableBindings.checkKey(key);
+		boolean overridden = this.local.containsKey(name);
+		Object old = this.local.remove(name);
+		if (!overridden) {
+			old = getVariable(name);
+		}
+		if (this.variables != null) {
+			// Hide the variable from now on, but leave the variables untouched
+			this.removed.add(name);
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		this.local.clear();
+		if (this.variables != null) {
+			this.variables.getIterator().forEachRemaining((e) -> this.removed.add(e.getKey()));
+		}
+	}
+
+	private Map<String, Object> merge() {
+		Map<String, Object> merged = new LinkedHashMap<>();
+		if (this.variables != null) {
+			Iterator<Map.Entry<String, Object>> it = this.variables.getIterator();
+			while (it.hasNext()) {
+				Map.Entry<String, Object> e = it.next();
+				if (!this.removed.contains(e.getKey())) {
+					merged.put(e.getKey(), e.getValue());
+				}
+			}
+		}
+		merged.putAll(this.local);
+		return merged;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return Collections.unmodifiableMap(merge()).entrySet();
+	}
+}
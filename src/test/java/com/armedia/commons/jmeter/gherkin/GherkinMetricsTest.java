@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GherkinMetricsTest {
+
+	@Test
+	public void testCounters() {
+		final AtomicLong now = new AtomicLong(0);
+		final GherkinMetrics metrics = new GherkinMetrics(TimeUnit.SECONDS.toNanos(10), now::get);
+
+		metrics.increment(GherkinMetrics.Counter.RUNS);
+		metrics.increment(GherkinMetrics.Counter.RUNS);
+		metrics.increment(GherkinMetrics.Counter.FAILURES);
+		metrics.add(GherkinMetrics.Counter.OUTPUT_BYTES, 100);
+		metrics.add(GherkinMetrics.Counter.STORY_PARSE_NANOS, 3_500_000);
+		Assertions.assertEquals(2, metrics.getRuns());
+		Assertions.assertEquals(1, metrics.getFailures());
+		Assertions.assertEquals(100, metrics.getOutputBytes());
+		Assertions.assertEquals(3.5, metrics.getStoryParseMillis(), 0.0001);
+
+		// No window has completed yet
+		Assertions.assertEquals(0, metrics.getRecentRuns());
+		Assertions.assertEquals(0, metrics.getWindowSeconds(), 0.0001);
+
+		now.set(TimeUnit.SECONDS.toNanos(10));
+		Assertions.assertEquals(2, metrics.getRecentRuns());
+		Assertions.assertEquals(1, metrics.getRecentFailures());
+		Assertions.assertEquals(10, metrics.getWindowSeconds(), 0.0001);
+
+		metrics.increment(GherkinMetrics.Counter.RUNS);
+		now.set(TimeUnit.SECONDS.toNanos(15));
+		// The window is still the prior one
+		Assertions.assertEquals(2, metrics.getRecentRuns());
+		now.set(TimeUnit.SECONDS.toNanos(25));
+		Assertions.assertEquals(1, metrics.getRecentRuns());
+		Assertions.assertEquals(0, metrics.getRecentFailures());
+		Assertions.assertEquals(15, metrics.getWindowSeconds(), 0.0001);
+		Assertions.assertEquals(3, metrics.getRuns());
+
+		metrics.reset();
+		Assertions.assertEquals(0, metrics.getRuns());
+		Assertions.assertEquals(0, metrics.getRecentRuns());
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final GherkinMetrics metrics = new GherkinMetrics();
+		Assertions.assertNull(metrics.getObjectName());
+		Assertions.assertTrue(metrics.register("Some \"Config\"", "1"));
+		final ObjectName name = metrics.getObjectName();
+		Assertions.assertNotNull(name);
+		Assertions.assertTrue(server.isRegistered(name));
+
+		metrics.increment(GherkinMetrics.Counter.RUNS);
+		Assertions.assertEquals(1L, server.getAttribute(name, "Runs"));
+		Assertions.assertNotNull(server.getAttribute(name, "ScriptCacheSize"));
+
+		metrics.unregister();
+		Assertions.assertNull(metrics.getObjectName());
+		Assertions.assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void testRegisterCollision() throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final GherkinMetrics first = new GherkinMetrics();
+		final GherkinMetrics second = new GherkinMetrics();
+		try {
+			Assertions.assertTrue(first.register("Same Name", "1"));
+			// The second one gets its own name, and doesn't replace the first one
+			Assertions.assertTrue(second.register("Same Name", "2"));
+			Assertions.assertNotEquals(first.getObjectName(), second.getObjectName());
+			Assertions.assertEquals("\"2\"", second.getObjectName().getKeyProperty("id"));
+			Assertions.assertTrue(server.isRegistered(first.getObjectName()));
+			Assertions.assertTrue(server.isRegistered(second.getObjectName()));
+
+			first.increment(GherkinMetrics.Counter.RUNS);
+			Assertions.assertEquals(1L, server.getAttribute(first.getObjectName(), "Runs"));
+			Assertions.assertEquals(0L, server.getAttribute(second.getObjectName(), "Runs"));
+		} finally {
+			first.unregister();
+			second.unregister();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jbehave.core.steps.ParameterConverters;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BindingParameterConvertersTest {
+
+	@Test
+	public void testBind() {
+		BindingParameterConverters converters = new BindingParameterConverters();
+		Map<String, Object> vars = new HashMap<>();
+		vars.put("user", "bob");
+		vars.put("count", 5);
+		vars.put("dollar", "$1");
+
+		// Nothing is bound until a resolver is given
+		Assertions.assertEquals("${user}", converters.bind("${user}"));
+		Assertions.assertNull(converters.bindTo(vars::get));
+		try {
+			Assertions.assertNull(converters.bind(null));
+			Assertions.assertEquals("", converters.bind(""));
+			Assertions.assertEquals("plain text", converters.bind("plain text"));
+			Assertions.assertEquals("bob", converters.bind("${user}"));
+			Assertions.assertEquals("bob", converters.bind("${ user }"));
+			Assertions.assertEquals("bob has 5 items", converters.bind("${user} has ${count} items"));
+			Assertions.assertEquals("costs $1", converters.bind("costs ${dollar}"));
+			Assertions.assertEquals("${missing} stays", converters.bind("${missing} stays"));
+			Assertions.assertEquals("${unclosed", converters.bind("${unclosed"));
+
+			Assertions.assertEquals("bob", converters.convert("${user}", String.class));
+			Assertions.assertEquals(5L, converters.convert("${count}", long.class));
+		} finally {
+			Function<String, Object> previous = converters.bindTo(null);
+			Assertions.assertNotNull(previous);
+		}
+		Assertions.assertEquals("${user}", converters.bind("${user}"));
+	}
+
+	@Test
+	public void testNewInstanceAdding() {
+		BindingParameterConverters converters = new BindingParameterConverters();
+		ParameterConverters.ParameterConverter<StringBuilder> extra = new ParameterConverters.ParameterConverter<StringBuilder>() {
+			@Override
+			public boolean accept(Type type) {
+				return (type == StringBuilder.class);
+			}
+
+			@Override
+			public StringBuilder convertValue(String value, Type type) {
+				return new StringBuilder(value).reverse();
+			}
+		};
+
+		ParameterConverters.ParameterConverter<Integer> length = new ParameterConverters.ParameterConverter<Integer>() {
+			@Override
+			public boolean accept(Type type) {
+				return (type == Integer.class);
+			}
+
+			@Override
+			public Integer convertValue(String value, Type type) {
+				return value.length();
+			}
+		};
+
+		ParameterConverters a = converters.newInstanceAdding(extra);
+		Assertions.assertEquals("cba", a.convert("abc", StringBuilder.class).toString());
+
+		// Each call gets its own instance, which keeps its converter while others are added
+		ParameterConverters b = converters.newInstanceAdding(length);
+		Assertions.assertNotSame(a, b);
+		Assertions.assertEquals("cba", a.convert("abc", StringBuilder.class).toString());
+		Assertions.assertEquals(3, b.convert("abc", Integer.class));
+		Assertions.assertEquals(123, a.convert("123", Integer.class));
+
+		// ... and adding to an instance keeps what was already added to it
+		ParameterConverters c = a.newInstanceAdding(length);
+		Assertions.assertEquals("cba", c.convert("abc", StringBuilder.class).toString());
+		Assertions.assertEquals(3, c.convert("abc", Integer.class));
+
+		// Everything else is still converted (and bound) by the original converters
+		Map<String, Object> vars = new HashMap<>();
+		vars.put("count", 5);
+		converters.bindTo(vars::get);
+		try {
+			Assertions.assertEquals(5L, a.convert("${count}", long.class));
+		} finally {
+			converters.bindTo(null);
+		}
+	}
+}
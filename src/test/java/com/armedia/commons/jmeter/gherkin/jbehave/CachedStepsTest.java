@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.util.List;
+
+import org.jbehave.core.configuration.Configuration;
+import org.jbehave.core.configuration.MostUsefulConfiguration;
+import org.jbehave.core.parsers.RegexPrefixCapturingPatternParser;
+import org.jbehave.core.parsers.StepMatcher;
+import org.jbehave.core.steps.InstanceStepsFactory;
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepType;
+import org.jbehave.core.steps.Steps;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.armedia.commons.jmeter.gherkin.jbehave.steps.example.Steps1;
+
+public class CachedStepsTest {
+
+	@Test
+	public void testPatternParser() {
+		CachingStepPatternParser parser = new CachingStepPatternParser(new RegexPrefixCapturingPatternParser());
+		StepMatcher a = parser.parseStep(StepType.GIVEN, "a value of $v");
+		StepMatcher b = parser.parseStep(StepType.GIVEN, "a value of $v");
+		Assertions.assertEquals(1, parser.size());
+		Assertions.assertNotSame(a, b);
+		Assertions.assertEquals(a.pattern().resolved(), b.pattern().resolved());
+		Assertions.assertArrayEquals(new String[] {
+			"v"
+		}, b.parameterNames());
+
+		// Matchers don't share their match state
+		Assertions.assertTrue(a.matches("a value of 1"));
+		Assertions.assertTrue(b.matches("a value of 2"));
+		Assertions.assertEquals("1", a.parameter(1));
+		Assertions.assertEquals("2", b.parameter(1));
+		Assertions.assertFalse(a.matches("another value"));
+
+		parser.parseStep(StepType.WHEN, "a value of $v");
+		Assertions.assertEquals(2, parser.size());
+	}
+
+	@Test
+	public void testCandidates() {
+		Configuration configuration = new MostUsefulConfiguration();
+		InstanceStepsFactory factory = new InstanceStepsFactory(configuration, new Steps1());
+		List<StepCandidate> expected = new Steps(configuration, Steps1.class, factory).listCandidates();
+
+		CachedSteps steps = new CachedSteps(configuration, Steps1.class, factory);
+		List<StepCandidate> first = steps.listCandidates();
+		List<StepCandidate> second = steps.listCandidates();
+		Assertions.assertEquals(expected.size(), first.size());
+		Assertions.assertNotSame(first, second);
+		for (int i = 0; i < expected.size(); i++) {
+			Assertions.assertEquals(expected.get(i).getPatternAsString(), first.get(i).getPatternAsString());
+			Assertions.assertEquals(expected.get(i).getStepType(), first.get(i).getStepType());
+			Assertions.assertEquals(expected.get(i).getMethod(), first.get(i).getMethod());
+			// Candidates are only built once per instance
+			Assertions.assertSame(first.get(i), second.get(i));
+		}
+
+		// Other instances get their own candidates
+		List<StepCandidate> other = new CachedSteps(configuration, Steps1.class, factory).listCandidates();
+		Assertions.assertEquals(first.size(), other.size());
+		Assertions.assertNotSame(first.get(0), other.get(0));
+	}
+}
@@ -26,17 +26,44 @@
  *******************************************************************************/
 package com.armedia.commons.jmeter.gherkin.jbehave;
 
+import java.io.File;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.jbehave.core.annotations.AsParameterConverter;
+import org.jbehave.core.annotations.Given;
 import org.jbehave.core.io.LoadFromClasspath;
+import org.jbehave.core.model.Story;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
 
+import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveRunner.Result;
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.Syntax;
+import com.armedia.commons.jmeter.gherkin.jbehave.steps.BasicSteps;
+import com.armedia.commons.jmeter.tools.BoundedCache;
+import com.armedia.commons.jmeter.tools.LatencyHistogram;
 
 public class JBehaveRunnerTest {
 	private static final String TEST1 = "" + //
@@ -85,4 +112,527 @@ public class JBehaveRunnerTest {
 		});
 	}
 
+	@Test
+	public void testParseCache() throws Exception {
+		BoundedCache.Stats before = JBehaveRunner.getStoryCacheStats();
+		Story a = JBehaveRunner.parse(Syntax.JBEHAVE, "Cached", JBehaveRunnerTest.TEST1);
+		Story b = JBehaveRunner.parse(Syntax.JBEHAVE, "Cached", new String(JBehaveRunnerTest.TEST1));
+		Assertions.assertSame(a, b);
+
+		// Different names, syntaxes or contents must yield different stories
+		Assertions.assertNotSame(a, JBehaveRunner.parse(Syntax.JBEHAVE, "Other", JBehaveRunnerTest.TEST1));
+		Assertions.assertNotSame(a, JBehaveRunner.parse(Syntax.GHERKIN, "Cached", JBehaveRunnerTest.TEST1));
+		Assertions.assertNotSame(a, JBehaveRunner.parse(Syntax.JBEHAVE, "Cached", JBehaveRunnerTest.TEST2));
+
+		// Story instances are passed through as-is
+		Assertions.assertSame(a, JBehaveRunner.parse(Syntax.GHERKIN, "Whatever", a));
+
+		BoundedCache.Stats after = JBehaveRunner.getStoryCacheStats();
+		Assertions.assertTrue(after.getHits() > before.getHits());
+		Assertions.assertTrue(after.getMisses() > before.getMisses());
+	}
+
+	@Test
+	public void testPrepare() throws Exception {
+		String example = new LoadFromClasspath().loadStoryAsText("com/armedia/commons/jmeter/scripts/example.story");
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Example", example, null)) {
+			Result first = prepared.perform();
+			Result second = prepared.perform();
+			Assertions.assertSame(prepared.getStory(), first.getStory());
+			Assertions.assertSame(first.getStory(), second.getStory());
+
+			// State must not leak from one run into the next
+			Assertions.assertFalse(first.getFailures().isEmpty());
+			Assertions.assertEquals(first.getFailures().size(), second.getFailures().size());
+			Assertions.assertFalse(second.getOutput().isEmpty());
+			Assertions.assertEquals(first.getOutput().length(), second.getOutput().length());
+		}
+
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Test1", JBehaveRunnerTest.TEST1, null)) {
+			Result previous = null;
+			for (int i = 0; i < 3; i++) {
+				Result result = prepared.perform();
+				Assertions.assertTrue(result.getFailures().isEmpty());
+				Assertions.assertEquals(StandardCharsets.UTF_8, result.getCharset());
+				Assertions.assertArrayEquals(result.getOutput().getBytes(result.getCharset()),
+					result.getOutputBytes());
+				// The buffers are re-used, but the results must not share them
+				if (previous != null) {
+					Assertions.assertNotSame(previous.getOutputBytes(), result.getOutputBytes());
+					Assertions.assertArrayEquals(previous.getOutputBytes(), result.getOutputBytes());
+				}
+				previous = result;
+			}
+		}
+	}
+
+	@Test
+	public void testStepScanShared() throws Exception {
+		String pkg = JBehaveRunner.class.getPackage().getName();
+		JBehaveRunner a = new JBehaveRunner(Arrays.asList(pkg, "org.jbehave.core.steps"));
+		JBehaveRunner b = new JBehaveRunner(Arrays.asList("org.jbehave.core.steps", pkg, pkg));
+		Assertions.assertTrue(a.getStepScanTime() >= 0);
+		// The second runner re-uses the first one's scan
+		Assertions.assertSame(a.getStepTypes(), b.getStepTypes());
+		Assertions.assertEquals(a.getStepScanTime(), b.getStepScanTime());
+		// ... but different scopes get their own
+		JBehaveRunner c = new JBehaveRunner(Collections.singletonList(pkg));
+		Assertions.assertNotSame(a.getStepTypes(), c.getStepTypes());
+
+		// ... as do other class loaders, which may see other classes
+		final JBehaveRunner shared = JBehaveRunner.get(Collections.singletonList(pkg), null);
+		Assertions.assertSame(shared, JBehaveRunner.get(Collections.singletonList(pkg), null));
+		final Thread thread = Thread.currentThread();
+		final ClassLoader previous = thread.getContextClassLoader();
+		try (URLClassLoader cl = new URLClassLoader(new URL[0], JBehaveRunnerTest.class.getClassLoader())) {
+			thread.setContextClassLoader(cl);
+			JBehaveRunner d = new JBehaveRunner(Arrays.asList(pkg, "org.jbehave.core.steps"));
+			Assertions.assertNotSame(a.getStepTypes(), d.getStepTypes());
+			Assertions.assertNotSame(shared, JBehaveRunner.get(Collections.singletonList(pkg), null));
+		} finally {
+			thread.setContextClassLoader(previous);
+		}
+
+		// Only the caller which actually scans counts the scan's time
+		try (URLClassLoader cl = new URLClassLoader(new URL[0], JBehaveRunnerTest.class.getClassLoader())) {
+			thread.setContextClassLoader(cl);
+			GherkinMetrics first = new GherkinMetrics();
+			GherkinMetrics second = new GherkinMetrics();
+			JBehaveRunner.get(Collections.singletonList(pkg), null, first);
+			JBehaveRunner.get(Collections.singletonList(pkg), Collections.singletonMap("x", ""), second);
+			Assertions.assertTrue(first.get(GherkinMetrics.Counter.STEP_SCAN_NANOS) > 0);
+			Assertions.assertEquals(0, second.get(GherkinMetrics.Counter.STEP_SCAN_NANOS));
+		} finally {
+			thread.setContextClassLoader(previous);
+		}
+	}
+
+	public static class IndexedSteps {
+		@Given("an indexed step")
+		public void indexed() {
+		}
+	}
+
+	@Test
+	public void testStepIndexCoverage() throws Exception {
+		Path root = Files.createTempDirectory("steps-index");
+		Path index = root.resolve(StepIndexProcessor.INDEX);
+		Files.createDirectories(index.getParent());
+		try (Writer w = Files.newBufferedWriter(index, StandardCharsets.UTF_8)) {
+			StepIndexProcessor.writeIndex(w, Collections.singleton(IndexedSteps.class.getName()));
+		}
+		final Thread thread = Thread.currentThread();
+		final ClassLoader previous = thread.getContextClassLoader();
+		try (URLClassLoader cl = new URLClassLoader(new URL[] {
+			root.toUri().toURL()
+		}, JBehaveRunnerTest.class.getClassLoader())) {
+			thread.setContextClassLoader(cl);
+			// The unused scope ensures this scan isn't shared with any other
+			JBehaveRunner runner = new JBehaveRunner(Collections.singletonList("test.unused." + System.nanoTime()));
+			// The index only covers its own classpath root, so the others must still be scanned
+			Set<Class<?>> types = runner.getStepTypes();
+			Assertions.assertTrue(types.contains(IndexedSteps.class), types.toString());
+			Assertions.assertTrue(types.contains(BasicSteps.class), types.toString());
+		} finally {
+			thread.setContextClassLoader(previous);
+			try (Stream<Path> s = Files.walk(root)) {
+				s.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@Test
+	public void testStepMemos() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Memo1", JBehaveRunnerTest.TEST1, null)) {
+			Assertions.assertTrue(prepared.perform().getFailures().isEmpty());
+		}
+
+		// The same text is matched against the same candidates, so the memo must be used
+		BoundedCache.Stats before = runner.getStepMatchStats();
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Memo2", JBehaveRunnerTest.TEST1, null)) {
+			Assertions.assertTrue(prepared.perform().getFailures().isEmpty());
+		}
+		BoundedCache.Stats after = runner.getStepMatchStats();
+		Assertions.assertTrue(after.getHits() >= (before.getHits() + 3));
+		Assertions.assertTrue(after.getSize() >= 3);
+
+		// Parameters are extracted again on every run
+		String sleep = "" + //
+			"Scenario: Sleepy Scenario\n" + //
+			"\n" + //
+			"Given debug\n" + //
+			"Then sleep for 0 seconds\n" + //
+			"\n" + //
+			"" //
+		;
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Sleepy", sleep, null)) {
+			Assertions.assertTrue(prepared.perform().getFailures().isEmpty());
+			before = JBehaveRunner.getStepParameterStats();
+			Assertions.assertTrue(prepared.perform().getFailures().isEmpty());
+			after = JBehaveRunner.getStepParameterStats();
+			Assertions.assertTrue(after.getHits() > before.getHits());
+		}
+	}
+
+	@Test
+	public void testSharedRunner() throws Exception {
+		String pkg = JBehaveRunner.class.getPackage().getName();
+		JBehaveRunner a = JBehaveRunner.get(Arrays.asList(pkg, "org.jbehave.core.steps"), null);
+		JBehaveRunner b = JBehaveRunner.get(Arrays.asList("org.jbehave.core.steps", pkg, pkg),
+			Collections.emptyMap());
+		Assertions.assertSame(a, b);
+		Assertions.assertNotSame(a,
+			JBehaveRunner.get(Arrays.asList(pkg, "org.jbehave.core.steps"), Collections.singletonMap("x", "")));
+
+		// Each thread prepares its own story from the shared runner
+		final JBehaveRunner runner = JBehaveRunner.get(Collections.singletonList(pkg), null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					int failures = 0;
+					try (JBehaveRunner.PreparedStory prepared = runner.prepare("Shared", JBehaveRunnerTest.TEST1,
+						null)) {
+						for (int i = 0; i < 10; i++) {
+							failures += prepared.perform().getFailures().size();
+						}
+					}
+					return failures;
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				Assertions.assertEquals(0, f.get().intValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public static final class Token {
+		private final Object owner;
+
+		private Token(Object owner) {
+			this.owner = owner;
+		}
+	}
+
+	@Gherkin.Steps
+	public static class ConvertingSteps {
+		@AsParameterConverter
+		public Token newToken(String value) {
+			return new Token(this);
+		}
+
+		@Given("a token named $token")
+		public void token(Token token) {
+			if (token.owner != this) {
+				throw new IllegalStateException("The token was converted by another story's steps");
+			}
+		}
+	}
+
+	@Test
+	public void testThreadConverters() throws Exception {
+		// The converters are shared, but each thread's conversions use its own story's steps
+		final String story = "Scenario: Tokens\n\nGiven a token named first\nGiven a token named second\n";
+		final JBehaveRunner runner = JBehaveRunner.get(
+			Collections.singletonList(JBehaveRunner.class.getPackage().getName()), null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					int failures = 0;
+					try (JBehaveRunner.PreparedStory prepared = runner.prepare("Tokens", story,
+						new JBehaveSettings().setFailOnPending(true))) {
+						for (int i = 0; i < 10; i++) {
+							failures += prepared.perform().getFailures().size();
+						}
+					}
+					return failures;
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				Assertions.assertEquals(0, f.get().intValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long measureAllocation(JBehaveRunner runner, JBehaveSettings.OutputFormat format, int rounds)
+		throws Exception {
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		JBehaveSettings settings = new JBehaveSettings().setOutputFormat(format);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Allocation", JBehaveRunnerTest.TEST1, settings)) {
+			// Warm up, so the measurement isn't skewed by one-time initializations
+			for (int i = 0; i < rounds; i++) {
+				prepared.perform();
+			}
+			final long thread = Thread.currentThread().getId();
+			final long start = mx.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < rounds; i++) {
+				Assertions.assertTrue(prepared.perform().getFailures().isEmpty());
+			}
+			return (mx.getThreadAllocatedBytes(thread) - start) / rounds;
+		}
+	}
+
+	@Test
+	public void testNullOutput() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		GherkinMetrics metrics = new GherkinMetrics();
+		JBehaveSettings settings = new JBehaveSettings().setOutputFormat(JBehaveSettings.OutputFormat.NULL)
+			.setMetrics(metrics);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Discarded", JBehaveRunnerTest.TEST1, settings)) {
+			for (int i = 0; i < 3; i++) {
+				Result result = prepared.perform();
+				Assertions.assertTrue(result.getFailures().isEmpty());
+				// The output is never produced, rather than produced and then dropped
+				Assertions.assertEquals(0, result.getOutputBytes().length);
+			}
+		}
+		Assertions.assertEquals(3, metrics.getRuns());
+		Assertions.assertEquals(0, metrics.getOutputBytes());
+
+		settings.setOutputFormat(JBehaveSettings.OutputFormat.XML);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Kept", JBehaveRunnerTest.TEST1, settings)) {
+			Assertions.assertTrue(prepared.perform().getOutputBytes().length > 0);
+		}
+	}
+
+	@Test
+	@Tag("benchmark")
+	public void testOutputAllocation(TestReporter reporter) throws Exception {
+		Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		Assumptions.assumeTrue(
+			((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported());
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		final int rounds = 1000;
+		long xml = JBehaveRunnerTest.measureAllocation(runner, JBehaveSettings.OutputFormat.XML, rounds);
+		long events = JBehaveRunnerTest.measureAllocation(runner, JBehaveSettings.OutputFormat.EVENTS, rounds);
+		long none = JBehaveRunnerTest.measureAllocation(runner, JBehaveSettings.OutputFormat.NULL, rounds);
+		reporter.publishEntry("Allocated bytes per sample",
+			String.format("XML=%d EVENTS=%d NULL=%d", xml, events, none));
+		Assertions.assertTrue(events < xml);
+		Assertions.assertTrue(none < xml);
+	}
+
+	@Test
+	public void testTimings() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Timed", JBehaveRunnerTest.TEST1, null)) {
+			// Nothing is recorded unless asked for
+			Assertions.assertNull(prepared.perform().getTiming());
+
+			Gherkin.Timing story = prepared.perform(null, null, true).getTiming();
+			Assertions.assertNotNull(story);
+			Assertions.assertEquals(Gherkin.Timing.Kind.STORY, story.getKind());
+			Assertions.assertEquals(Gherkin.Timing.Outcome.SUCCESSFUL, story.getOutcome());
+			Assertions.assertEquals(1, story.getChildren().size());
+
+			Gherkin.Timing scenario = story.getChildren().get(0);
+			Assertions.assertEquals(Gherkin.Timing.Kind.SCENARIO, scenario.getKind());
+			Assertions.assertEquals("First Scenario", scenario.getName());
+			Assertions.assertTrue(scenario.getStartNanos() >= story.getStartNanos());
+			Assertions.assertTrue(scenario.getEndNanos() <= story.getEndNanos());
+
+			List<Gherkin.Timing> steps = scenario.getChildren();
+			Assertions.assertEquals(3, steps.size());
+			Assertions.assertEquals("Given this is the first test", steps.get(0).getName());
+			long last = scenario.getStartNanos();
+			for (Gherkin.Timing step : steps) {
+				Assertions.assertEquals(Gherkin.Timing.Kind.STEP, step.getKind());
+				Assertions.assertEquals(Gherkin.Timing.Outcome.SUCCESSFUL, step.getOutcome());
+				Assertions.assertTrue(step.getStartNanos() >= last);
+				Assertions.assertTrue(step.getEndNanos() <= scenario.getEndNanos());
+				last = step.getEndNanos();
+			}
+
+			// The next run starts over
+			Assertions.assertNotSame(story, prepared.perform(null, null, true).getTiming());
+			Assertions.assertNull(prepared.perform().getTiming());
+		}
+
+		// Steps are named after their pattern, so all the texts matching it share one name
+		String tokens = "Scenario: Tokens\n\nGiven a token named first\nGiven a token named second\n"
+			+ "Given an unmatched step\n";
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Tokens", tokens, null)) {
+			List<Gherkin.Timing> steps = prepared.perform(null, null, true).getTiming().getChildren().get(0)
+				.getChildren();
+			Assertions.assertEquals(3, steps.size());
+			Assertions.assertEquals("Given a token named $token", steps.get(0).getName());
+			Assertions.assertEquals("Given a token named $token", steps.get(1).getName());
+			// ... except for those which aren't performed
+			Assertions.assertEquals(Gherkin.Timing.Outcome.PENDING, steps.get(2).getOutcome());
+			Assertions.assertEquals("Given an unmatched step", steps.get(2).getName());
+		}
+
+		String example = new LoadFromClasspath().loadStoryAsText("com/armedia/commons/jmeter/scripts/example.story");
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Example", example, null)) {
+			Gherkin.Timing story = prepared.perform(null, null, true).getTiming();
+			Assertions.assertEquals(Gherkin.Timing.Outcome.FAILED, story.getOutcome());
+			Gherkin.Timing scenario = story.getChildren().get(0);
+			Assertions.assertEquals(Gherkin.Timing.Outcome.FAILED, scenario.getOutcome());
+			Assertions.assertNotNull(scenario.getFailure());
+		}
+	}
+
+	@Test
+	public void testCapturePolicy() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		String example = new LoadFromClasspath().loadStoryAsText("com/armedia/commons/jmeter/scripts/example.story");
+		JBehaveSettings settings = new JBehaveSettings().setOutputFormat(JBehaveSettings.OutputFormat.TEXT);
+
+		final byte[] full;
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Capture", JBehaveRunnerTest.TEST1, settings)) {
+			full = prepared.perform().getOutputBytes();
+		}
+
+		// Successful runs only carry a summary...
+		settings.setCapturePolicy(JBehaveSettings.CapturePolicy.ON_FAILURE);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Capture", JBehaveRunnerTest.TEST1, settings)) {
+			Result result = prepared.perform();
+			Assertions.assertTrue(result.getFailures().isEmpty());
+			Assertions.assertTrue(result.getOutputBytes().length < full.length);
+			Assertions.assertTrue(result.getOutput().contains("not captured"));
+			Assertions.assertEquals("text/plain", result.getContentType());
+			// ... which is only built once
+			Assertions.assertSame(result.getOutputBytes(), prepared.perform().getOutputBytes());
+		}
+		// ... while failed runs keep everything
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Example", example, settings)) {
+			Result result = prepared.perform();
+			Assertions.assertFalse(result.getFailures().isEmpty());
+			Assertions.assertFalse(result.getOutput().contains("not captured"));
+		}
+
+		settings.setCapturePolicy(JBehaveSettings.CapturePolicy.SAMPLED).setCaptureSampleRate(3);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Capture", JBehaveRunnerTest.TEST1, settings)) {
+			for (int i = 0; i < 7; i++) {
+				Result result = prepared.perform();
+				Assertions.assertEquals((i % 3) == 0, result.getOutputBytes().length == full.length, "Run #" + i);
+			}
+		}
+
+		// The runs are counted across all the threads performing the story, so their first ones aren't
+		// all kept
+		final JBehaveSettings sampled = new JBehaveSettings(settings);
+		final JBehaveRunner shared = new JBehaveRunner(
+			Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					int kept = 0;
+					try (JBehaveRunner.PreparedStory prepared = shared.prepare("Sampled", JBehaveRunnerTest.TEST1,
+						sampled)) {
+						for (int i = 0; i < 10; i++) {
+							if (!prepared.perform().getOutput().contains("not captured")) {
+								kept++;
+							}
+						}
+					}
+					return kept;
+				}));
+			}
+			int kept = 0;
+			for (Future<Integer> f : futures) {
+				kept += f.get();
+			}
+			// Runs #0, #3, ... #39
+			Assertions.assertEquals(14, kept);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		settings.setCapturePolicy(JBehaveSettings.CapturePolicy.TRUNCATED).setCaptureLimit(64);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Capture", JBehaveRunnerTest.TEST1, settings)) {
+			for (int i = 0; i < 3; i++) {
+				String output = prepared.perform().getOutput();
+				Assertions.assertTrue(output.startsWith("[... " + (full.length - 64) + " bytes omitted ...]"), output);
+				Assertions.assertTrue(output.endsWith(new String(full, full.length - 16, 16, StandardCharsets.UTF_8)), output);
+			}
+		}
+		settings.setCaptureLimit(full.length);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Capture", JBehaveRunnerTest.TEST1, settings)) {
+			Assertions.assertArrayEquals(full, prepared.perform().getOutputBytes());
+		}
+		// Failed runs keep everything, whatever the limit
+		settings.setCaptureLimit(64);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Example", example, settings)) {
+			Result result = prepared.perform();
+			Assertions.assertFalse(result.getFailures().isEmpty());
+			Assertions.assertTrue(result.getOutputBytes().length > 64);
+			Assertions.assertFalse(result.getOutput().contains("bytes omitted"), result.getOutput());
+			Assertions.assertTrue(result.getOutput().contains("KABOOM"), result.getOutput());
+		}
+	}
+
+	@Test
+	public void testStepLatencies() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		StepLatencies.reset();
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Latencies", JBehaveRunnerTest.TEST1, null)) {
+			for (int i = 0; i < 10; i++) {
+				prepared.perform();
+			}
+		}
+		Map<String, LatencyHistogram.Snapshot> snapshot = StepLatencies.snapshot();
+		for (String pattern : new String[] {
+			"Given this is the first test", "When we want to debug the first test", "Then start debugging the first test"
+		}) {
+			LatencyHistogram.Snapshot s = snapshot.get(pattern);
+			Assertions.assertNotNull(s, pattern);
+			Assertions.assertEquals(10, s.getCount(), pattern);
+		}
+		Assertions.assertTrue(StepLatencies.format().contains("Given this is the first test"));
+
+		// Dry runs don't count
+		StepLatencies.reset();
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Latencies", JBehaveRunnerTest.TEST1,
+			new JBehaveSettings().setDryRun(true))) {
+			prepared.perform();
+		}
+		Assertions.assertTrue(StepLatencies.snapshot().isEmpty());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		GherkinMetrics metrics = new GherkinMetrics();
+		JBehaveSettings settings = new JBehaveSettings().setMetrics(metrics);
+		final String story = JBehaveRunnerTest.TEST1 + "Then this step is not implemented anywhere\n";
+
+		// Only actual parses count
+		final String name = "Metrics-" + System.nanoTime();
+		Story parsed = JBehaveRunner.parse(Syntax.GHERKIN, name, story, metrics);
+		Assertions.assertSame(parsed, JBehaveRunner.parse(Syntax.GHERKIN, name, story, metrics));
+		Assertions.assertEquals(1, metrics.getStoryParses());
+		Assertions.assertTrue(metrics.getStoryParseMillis() > 0);
+
+		long bytes = 0;
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare(parsed, settings)) {
+			Assertions.assertTrue(metrics.getCandidateSteps() > 0);
+			for (int i = 0; i < 3; i++) {
+				bytes += prepared.perform().getOutputBytes().length;
+			}
+		}
+		Assertions.assertEquals(3, metrics.getRuns());
+		Assertions.assertEquals(0, metrics.getFailures());
+		Assertions.assertEquals(3, metrics.getPendingSteps());
+		Assertions.assertEquals(bytes, metrics.getOutputBytes());
+
+		String example = new LoadFromClasspath().loadStoryAsText("com/armedia/commons/jmeter/scripts/example.story");
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Example", example, settings)) {
+			prepared.perform();
+		}
+		Assertions.assertEquals(4, metrics.getRuns());
+		Assertions.assertEquals(1, metrics.getFailures());
+	}
 }
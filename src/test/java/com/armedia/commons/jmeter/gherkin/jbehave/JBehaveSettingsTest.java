@@ -34,6 +34,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.CapturePolicy;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.OutputFormat;
 import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveSettings.Syntax;
 
@@ -211,6 +212,25 @@ class JBehaveSettingsTest {
 		}
 	}
 
+	@Test
+	void testRecordLatencies() {
+		JBehaveSettings a = new JBehaveSettings();
+		Assertions.assertTrue(a.isRecordLatencies());
+
+		for (boolean r : new boolean[] {
+			false, true
+		}) {
+			Assertions.assertSame(a, a.setRecordLatencies(r));
+			Assertions.assertEquals(r, a.isRecordLatencies());
+			Assertions.assertEquals(r, new JBehaveSettings(a).isRecordLatencies());
+		}
+
+		// Stories prepared with one setting can't stand in for the other
+		JBehaveSettings b = new JBehaveSettings(a).setRecordLatencies(!a.isRecordLatencies());
+		Assertions.assertNotEquals(a, b);
+		Assertions.assertNotEquals(a.hashCode(), b.hashCode());
+	}
+
 	@Test
 	void testSyntax() {
 		JBehaveSettings a = new JBehaveSettings();
@@ -241,6 +261,41 @@ class JBehaveSettingsTest {
 		Assertions.assertEquals(JBehaveSettings.DEFAULT_OUTPUT_FORMAT, a.getOutputFormat());
 	}
 
+	@Test
+	void testCapturePolicy() {
+		JBehaveSettings a = new JBehaveSettings();
+
+		Assertions.assertEquals(JBehaveSettings.DEFAULT_CAPTURE_POLICY, a.getCapturePolicy());
+		Assertions.assertEquals(JBehaveSettings.DEFAULT_CAPTURE_SAMPLE_RATE, a.getCaptureSampleRate());
+		Assertions.assertEquals(JBehaveSettings.DEFAULT_CAPTURE_LIMIT, a.getCaptureLimit());
+
+		for (CapturePolicy cp : CapturePolicy.values()) {
+			Assertions.assertSame(a, a.setCapturePolicy(cp));
+			Assertions.assertEquals(cp, a.getCapturePolicy());
+			Assertions.assertEquals(a, new JBehaveSettings(a));
+		}
+
+		Assertions.assertSame(a, a.setCapturePolicy(null));
+		Assertions.assertEquals(JBehaveSettings.DEFAULT_CAPTURE_POLICY, a.getCapturePolicy());
+
+		Assertions.assertSame(a, a.setCaptureSampleRate(5));
+		Assertions.assertEquals(5, a.getCaptureSampleRate());
+		Assertions.assertSame(a, a.setCaptureSampleRate(-5));
+		Assertions.assertEquals(1, a.getCaptureSampleRate());
+
+		Assertions.assertSame(a, a.setCaptureLimit(1000));
+		Assertions.assertEquals(1000, a.getCaptureLimit());
+		Assertions.assertSame(a, a.setCaptureLimit(0));
+		Assertions.assertEquals(1, a.getCaptureLimit());
+
+		JBehaveSettings b = new JBehaveSettings(a);
+		Assertions.assertEquals(a, b);
+		b.setCaptureLimit(2);
+		Assertions.assertNotEquals(a, b);
+		Assertions.assertThrows(UnsupportedOperationException.class,
+			() -> JBehaveSettings.defaults().setCapturePolicy(CapturePolicy.SAMPLED));
+	}
+
 	@Test
 	void testHashCodeEquals() {
 		boolean[] dryRun = {
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jbehave.core.configuration.Configuration;
+import org.jbehave.core.configuration.MostUsefulConfiguration;
+import org.jbehave.core.parsers.RegexPrefixCapturingPatternParser;
+import org.jbehave.core.steps.InstanceStepsFactory;
+import org.jbehave.core.steps.StepCandidate;
+import org.jbehave.core.steps.StepFinder;
+import org.jbehave.core.steps.StepType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import com.armedia.commons.jmeter.tools.ConcurrentMemo;
+
+public class StepDispatcherTest {
+
+	private static final StepType[] TYPES = {
+		StepType.GIVEN, StepType.WHEN, StepType.THEN
+	};
+	private static final String[] NOUNS = {
+		"user", "account", "order", "invoice", "cart", "product", "session", "report", "folder", "document", //
+		"case", "task", "queue", "ticket", "record", "group", "role", "workflow", "message", "request", //
+		"response", "search", "filter", "batch", "upload" //
+	};
+	private static final String[] VERBS = {
+		"is created", "is deleted", "is updated", "is opened", "is closed", "is saved", "is loaded", "is sent",
+		"is received", "is approved", "is rejected", "is assigned", "is shared", "is locked", "is unlocked",
+		"is moved", "is copied", "is renamed", "is archived", "is restored", "is exported", "is imported",
+		"is printed", "is signed", "is validated", "is published", "is hidden", "is shown", "is sorted",
+		"is merged", "is split", "is tagged", "is flagged", "is indexed", "is counted", "is cached", "is expired",
+		"is renewed", "is paused", "is resumed"
+	};
+
+	public void step(String value) {
+		// Never invoked
+	}
+
+	private static final Configuration CONFIGURATION = new MostUsefulConfiguration() //
+		.useStepPatternParser(new CachingStepPatternParser(new RegexPrefixCapturingPatternParser()));
+
+	private static String getPattern(int i) {
+		return String.format("the %s %s with $value",
+			StepDispatcherTest.NOUNS[i % StepDispatcherTest.NOUNS.length],
+			StepDispatcherTest.VERBS[(i / StepDispatcherTest.NOUNS.length) % StepDispatcherTest.VERBS.length]);
+	}
+
+	private List<StepCandidate> getCandidates(int count) throws Exception {
+		Configuration cfg = StepDispatcherTest.CONFIGURATION;
+		Method method = StepDispatcherTest.class.getMethod("step", String.class);
+		InstanceStepsFactory factory = new InstanceStepsFactory(cfg, this);
+		List<StepCandidate> candidates = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			candidates.add(new StepCandidate(StepDispatcherTest.getPattern(i), 0,
+				StepDispatcherTest.TYPES[i % StepDispatcherTest.TYPES.length], method, StepDispatcherTest.class,
+				factory, cfg.stepsContext(), cfg.keywords(), cfg.stepPatternParser(), cfg.parameterConverters(),
+				cfg.parameterControls()));
+		}
+		return candidates;
+	}
+
+	private static List<String> getSteps(List<StepCandidate> candidates, int count, long seed) {
+		Random random = new Random(seed);
+		List<String> steps = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			StepCandidate c = candidates.get(random.nextInt(candidates.size()));
+			String word = StepDispatcherTest.CONFIGURATION.keywords().startingWordFor(c.getStepType());
+			steps.add(
+				String.format("%s %s", word, c.getPatternAsString().replace("$value", "value #" + random.nextInt())));
+		}
+		return steps;
+	}
+
+	private static StepCandidate match(StepFinder finder, String step, List<StepCandidate> candidates) {
+		for (StepCandidate c : finder.prioritise(step, new ArrayList<>(candidates))) {
+			if (c.matches(step)) { return c; }
+		}
+		return null;
+	}
+
+	private static MemoizingStepFinder newFinder() {
+		// An empty memo, so every step goes through the dispatcher
+		return new MemoizingStepFinder(new ConcurrentMemo<>(1), new AtomicReference<>(),
+			StepDispatcherTest.CONFIGURATION.keywords());
+	}
+
+	@Test
+	public void testLeadingWords() {
+		Assertions.assertEquals(Arrays.asList("the", "user", "is", "created", "with"),
+			StepDispatcher.getLeadingWords("the user is created with $value"));
+		Assertions.assertEquals(Arrays.asList("a"), StepDispatcher.getLeadingWords("  a\t$b c"));
+		Assertions.assertEquals(Arrays.asList("sleep", "for"),
+			StepDispatcher.getLeadingWords("sleep for cost:$seconds seconds"));
+		Assertions.assertEquals(Collections.emptyList(), StepDispatcher.getLeadingWords("$all"));
+		Assertions.assertEquals(Collections.emptyList(), StepDispatcher.getLeadingWords("this|that"));
+	}
+
+	@Test
+	public void testDispatch() throws Exception {
+		List<StepCandidate> candidates = getCandidates(100);
+		StepDispatcher dispatcher = new StepDispatcher(StepDispatcherTest.CONFIGURATION.keywords(), candidates);
+
+		BitSet found = dispatcher.dispatch("Given the user is created with x", candidates);
+		Assertions.assertNotNull(found);
+		Assertions.assertEquals(1, found.cardinality());
+		Assertions.assertTrue(candidates.get(found.nextSetBit(0)).matches("Given the user is created with x"));
+
+		// And steps may match any type
+		Assertions.assertEquals(1, dispatcher.dispatch("And the user is created with x", candidates).cardinality());
+
+		// Nothing plausible
+		Assertions.assertTrue(dispatcher.dispatch("When the user is created with x", candidates).isEmpty());
+		Assertions.assertTrue(dispatcher.dispatch("Given nothing to see here", candidates).isEmpty());
+
+		// Unknown keywords, or different candidates, can't be dispatched
+		Assertions.assertNull(dispatcher.dispatch("Maybe the user is created with x", candidates));
+		Assertions.assertNull(dispatcher.dispatch("Given the user is created with x", candidates.subList(0, 10)));
+		List<StepCandidate> reversed = new ArrayList<>(candidates);
+		Collections.reverse(reversed);
+		Assertions.assertNull(dispatcher.dispatch("Given the user is created with x", reversed));
+		// ... even if they only differ where nothing would be found
+		List<StepCandidate> other = new ArrayList<>(candidates);
+		other.set(99, getCandidates(101).get(100));
+		Assertions.assertFalse(dispatcher.accepts(other));
+		Assertions.assertNull(dispatcher.dispatch("Given the user is created with x", other));
+	}
+
+	@Test
+	public void testEquivalence() throws Exception {
+		for (int count : new int[] {
+			10, 100
+		}) {
+			List<StepCandidate> candidates = getCandidates(count);
+			StepFinder linear = new StepFinder();
+			MemoizingStepFinder dispatched = StepDispatcherTest.newFinder();
+			for (String text : StepDispatcherTest.getSteps(candidates, 200, count)) {
+				StepCandidate expected = StepDispatcherTest.match(linear, text, candidates);
+				Assertions.assertNotNull(expected, text);
+				Assertions.assertSame(expected, StepDispatcherTest.match(dispatched, text, candidates), text);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compares plain linear matching with dispatched matching for 10, 100 and 1000 step methods.
+	 * The timings are published to the test report. This only runs with the {@code benchmark}
+	 * profile.
+	 * </p>
+	 */
+	@Test
+	@Tag("benchmark")
+	public void testBenchmark(TestReporter reporter) throws Exception {
+		final int steps = 2000;
+		for (int count : new int[] {
+			10, 100, 1000
+		}) {
+			List<StepCandidate> candidates = getCandidates(count);
+			List<String> texts = StepDispatcherTest.getSteps(candidates, steps, count);
+
+			StepFinder linear = new StepFinder();
+			MemoizingStepFinder dispatched = StepDispatcherTest.newFinder();
+			long linearTime = 0;
+			long dispatchedTime = 0;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				texts.forEach((t) -> StepDispatcherTest.match(linear, t, candidates));
+				linearTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				texts.forEach((t) -> StepDispatcherTest.match(dispatched, t, candidates));
+				dispatchedTime = System.nanoTime() - start;
+			}
+			reporter.publishEntry(String.format("%d step methods", count),
+				String.format("linear %,d ns/step, dispatched %,d ns/step", linearTime / steps, dispatchedTime / steps));
+		}
+	}
+}
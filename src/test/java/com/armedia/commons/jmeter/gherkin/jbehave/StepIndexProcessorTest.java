@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class StepIndexProcessorTest {
+
+	private static final String BASE = "" + //
+		"package test.steps;\n" + //
+		"@com.armedia.commons.jmeter.gherkin.Gherkin.Steps\n" + //
+		"public class Base {\n" + //
+		"	@org.jbehave.core.annotations.Given(\"a base step\")\n" + //
+		"	public void base() {}\n" + //
+		"}\n" //
+	;
+
+	private static final String CHILD = "" + //
+		"package test.steps;\n" + //
+		"public class Child extends Base {\n" + //
+		"	@org.jbehave.core.annotations.When(\"a child step\")\n" + //
+		"	public void child() {}\n" + //
+		"	public static class Nested extends Base {}\n" + //
+		"	public static abstract class Abstract extends Base {}\n" + //
+		"	static class Hidden extends Base { Hidden() {} }\n" + //
+		"	public static class NoDefault extends Base { public NoDefault(int i) {} }\n" + //
+		"}\n" //
+	;
+
+	private static final String OTHER = "" + //
+		"package test.steps;\n" + //
+		"public class Other {\n" + //
+		"	@org.jbehave.core.annotations.Then(\"not a step class\")\n" + //
+		"	public void other() {}\n" + //
+		"}\n" //
+	;
+
+	private Set<String> compile(Path root, String... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assumptions.assumeTrue(compiler != null, "No system Java compiler is available");
+
+		Path src = Files.createDirectories(root.resolve("src/test/steps"));
+		Path out = Files.createDirectories(root.resolve("out"));
+		List<File> files = new ArrayList<>();
+		for (String source : sources) {
+			String name = source.replaceAll("(?s)^.*?public class (\\w+).*$", "$1");
+			Path p = src.resolve(name + ".java");
+			Files.write(p, source.getBytes(StandardCharsets.UTF_8));
+			files.add(p.toFile());
+		}
+
+		try (StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fm, null,
+				Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", out.toString()), null,
+				fm.getJavaFileObjectsFromFiles(files));
+			task.setProcessors(Collections.singletonList(new StepIndexProcessor()));
+			Assertions.assertTrue(task.call());
+		}
+
+		Path index = out.resolve(StepIndexProcessor.INDEX);
+		Assertions.assertTrue(Files.exists(index));
+		Set<String> ret = new TreeSet<>();
+		StepIndexProcessor.readIndex(new StringReader(new String(Files.readAllBytes(index), StandardCharsets.UTF_8)),
+			ret);
+		return ret;
+	}
+
+	@Test
+	public void testProcessor() throws Exception {
+		Path root = Files.createTempDirectory("steps-index");
+		try {
+			// Like the runtime scan, any class with a default constructor is accepted
+			final Set<String> expected = new TreeSet<>(Arrays.asList("test.steps.Base", "test.steps.Child",
+				"test.steps.Child$Nested", "test.steps.Child$Hidden"));
+			Set<String> index = compile(root, StepIndexProcessorTest.BASE, StepIndexProcessorTest.CHILD,
+				StepIndexProcessorTest.OTHER);
+			Assertions.assertEquals(expected, index);
+
+			// An incremental compilation must preserve the entries it didn't see
+			index = compile(root, StepIndexProcessorTest.OTHER);
+			Assertions.assertEquals(expected, index);
+		} finally {
+			try (Stream<Path> s = Files.walk(root)) {
+				s.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws Exception {
+		Set<String> index = new TreeSet<>(Arrays.asList("a.B", "a.C$D"));
+		StringWriter w = new StringWriter();
+		StepIndexProcessor.writeIndex(w, index);
+
+		Set<String> read = new TreeSet<>();
+		StepIndexProcessor.readIndex(new StringReader(w.toString()), read);
+		Assertions.assertEquals(index, read);
+
+		try (InputStream in = new ByteArrayInputStream(w.toString().getBytes(StandardCharsets.UTF_8))) {
+			Assertions.assertEquals(index, StepIndexProcessor.readIndex(in));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.gherkin.jbehave;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.jbehave.core.model.Scenario;
+import org.jbehave.core.model.Story;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin.Timing.Outcome;
+import com.armedia.commons.jmeter.gherkin.jbehave.StoryEvents.Event;
+import com.armedia.commons.jmeter.gherkin.jbehave.StoryEvents.Type;
+
+public class StoryEventsTest {
+
+	@Test
+	public void testRoundTrip() {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		StoryEvents.Reporter reporter = new StoryEvents.Reporter(new PrintStream(buf));
+		final String unicode = "Given a café with € and 😀 <tags> & \"quotes\"";
+		reporter.beforeStory(new Story("path", null, null, null, null, Collections.emptyList()), false);
+		reporter.beforeScenario(new Scenario("The Scenario", Collections.emptyList()));
+		reporter.beforeStep(unicode);
+		reporter.successful(unicode + " (resolved)");
+		reporter.beforeStep("When it fails");
+		reporter.failed("When it fails", new IllegalStateException("KABOOM"));
+		reporter.notPerformed("Then nothing");
+		reporter.afterScenario();
+		reporter.afterStory(false);
+
+		List<Event> events = StoryEvents.decode(buf.toByteArray());
+		Assertions.assertEquals(Type.STORY_START, events.get(0).getType());
+		Assertions.assertEquals(Type.SCENARIO_START, events.get(1).getType());
+		Assertions.assertEquals("The Scenario", events.get(1).getText());
+		Assertions.assertEquals(Type.STEP_START, events.get(2).getType());
+		Assertions.assertEquals(unicode, events.get(2).getText());
+		Assertions.assertEquals(Type.STEP_END, events.get(3).getType());
+		Assertions.assertEquals(Outcome.SUCCESSFUL, events.get(3).getOutcome());
+
+		Event failure = events.stream().filter((e) -> e.getType() == Type.FAILURE).findFirst().get();
+		Assertions.assertEquals(1, failure.getFailure());
+		Assertions.assertEquals(IllegalStateException.class.getName() + ": KABOOM", failure.getText());
+
+		Event storyEnd = events.get(events.size() - 1);
+		Assertions.assertEquals(Type.STORY_END, storyEnd.getType());
+		Assertions.assertEquals(Outcome.FAILED, storyEnd.getOutcome());
+		Assertions.assertEquals(1, storyEnd.getFailure());
+		long last = 0;
+		for (Event e : events) {
+			Assertions.assertTrue(e.getOffsetNanos() >= last);
+			last = e.getOffsetNanos();
+		}
+
+		String xml = StoryEvents.toXml(buf.toByteArray());
+		Assertions.assertTrue(xml.contains("<scenario name=\"The Scenario\""), xml);
+		Assertions.assertTrue(xml.contains("&lt;tags&gt; &amp; &quot;quotes&quot;"), xml);
+		Assertions.assertTrue(xml.contains("<failure>" + IllegalStateException.class.getName() + ": KABOOM</failure>"),
+			xml);
+		Assertions.assertTrue(xml.contains("name=\"Then nothing\""), xml);
+		Assertions.assertTrue(xml.contains("outcome=\"NOT_PERFORMED\""), xml);
+
+		String json = StoryEvents.toJson(buf.toByteArray());
+		Assertions.assertTrue(json.startsWith("["), json);
+		Assertions.assertTrue(json.contains("\"type\":\"scenario\""), json);
+		Assertions.assertTrue(json.contains("\\\"quotes\\\""), json);
+	}
+
+	@Test
+	public void testUnknownRecordsSkipped() {
+		// A record of an unknown type (99), followed by a valid STORY_START at offset 0
+		byte[] data = {
+			3, 99, 1, 2, //
+			3, 1, 0, 0 //
+		};
+		List<Event> events = StoryEvents.decode(data);
+		Assertions.assertEquals(1, events.size());
+		Assertions.assertEquals(Type.STORY_START, events.get(0).getType());
+		Assertions.assertEquals("", events.get(0).getText());
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> StoryEvents.decode(new byte[] {
+			5, 1, 0
+		}));
+	}
+
+	@Test
+	public void testRunner() throws Exception {
+		JBehaveRunner runner = new JBehaveRunner(Collections.singletonList(JBehaveRunner.class.getPackage().getName()));
+		JBehaveSettings settings = new JBehaveSettings().setOutputFormat(JBehaveSettings.OutputFormat.EVENTS);
+		try (JBehaveRunner.PreparedStory prepared = runner.prepare("Events", "" + //
+			"Scenario: Evented Scenario\n" + //
+			"\n" + //
+			"Given debug\n" + //
+			"Then sleep for 0 seconds\n" + //
+			"", settings)) {
+			JBehaveRunner.Result result = prepared.perform();
+			Assertions.assertTrue(result.getFailures().isEmpty());
+			Assertions.assertTrue(result.isBinary());
+			Assertions.assertEquals(JBehaveSettings.OutputFormat.EVENTS.contentType, result.getContentType());
+			// The text is rendered from the events
+			Assertions.assertTrue(result.getOutput().contains("<scenario name=\"Evented Scenario\""),
+				result.getOutput());
+			Assertions.assertTrue(result.getOutput().contains("<step name=\"Given debug\""), result.getOutput());
+		}
+	}
+}
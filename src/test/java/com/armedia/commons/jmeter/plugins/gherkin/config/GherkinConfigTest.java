@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.plugins.gherkin.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GherkinConfigTest {
+
+	private static GherkinConfig newConfig(String name) {
+		GherkinConfig config = new GherkinConfig();
+		config.setName(name);
+		config.setPackages("com.armedia.commons.jmeter.gherkin.jbehave.steps");
+		config.setScript("echo", "");
+		config.setTestScript("shared.label=Label");
+		return config;
+	}
+
+	@Test
+	public void testSharedObjects() {
+		final GherkinConfig a = GherkinConfigTest.newConfig("a");
+		final GherkinConfig b = GherkinConfigTest.newConfig("b");
+		Assertions.assertTrue(a.getSharedObjects().isEmpty());
+
+		a.testStarted();
+		b.testStarted();
+		try {
+			// The threads work on clones, which must find their original's objects
+			final GherkinConfig aClone = GherkinConfig.class.cast(a.clone());
+			final GherkinConfig bClone = GherkinConfig.class.cast(b.clone());
+			Assertions.assertEquals("a", aClone.getSharedObjects().get("label"));
+			Assertions.assertEquals("b", bClone.getSharedObjects().get("label"));
+
+			// Ending one configuration mustn't take away the other's objects, even with the same script
+			a.testEnded();
+			Assertions.assertTrue(a.getSharedObjects().isEmpty());
+			Assertions.assertTrue(aClone.getSharedObjects().isEmpty());
+			Assertions.assertEquals("b", bClone.getSharedObjects().get("label"));
+		} finally {
+			a.testEnded();
+			b.testEnded();
+		}
+		Assertions.assertTrue(b.getSharedObjects().isEmpty());
+	}
+}
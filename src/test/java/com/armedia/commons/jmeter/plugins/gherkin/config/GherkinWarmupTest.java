@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.plugins.gherkin.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jbehave.core.annotations.Given;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.armedia.commons.jmeter.gherkin.Gherkin;
+import com.armedia.commons.jmeter.gherkin.GherkinMetrics;
+import com.armedia.commons.jmeter.gherkin.jbehave.StepLatencies;
+
+public class GherkinWarmupTest {
+
+	private static final AtomicInteger COUNTED = new AtomicInteger(0);
+
+	@Gherkin.Steps
+	public static class CountingSteps {
+		@Given("a counted step")
+		public void counted() {
+			GherkinWarmupTest.COUNTED.incrementAndGet();
+		}
+	}
+
+	private static final String STORY = "Scenario: Counting\n\nGiven a counted step\n";
+
+	private static GherkinConfig newConfig(String name, String packages, int warmupIterations) {
+		GherkinConfig config = new GherkinConfig();
+		config.setName(name);
+		config.setPackages(packages);
+		config.setWarmupIterations(warmupIterations);
+		return config;
+	}
+
+	private static JBehaveEngine newEngine(GherkinConfig config) {
+		// Stands in for the engine of a thread working on a clone of the configuration
+		JBehaveEngine engine = new JBehaveEngine();
+		engine.setConfigId(GherkinConfig.class.cast(config.clone()).getInstanceId());
+		return engine;
+	}
+
+	@Test
+	public void testScopedWarmup() {
+		final GherkinConfig counting = GherkinWarmupTest.newConfig("counting",
+			GherkinWarmupTest.class.getPackage().getName(), 2);
+		final GherkinConfig other = GherkinWarmupTest.newConfig("other",
+			"com.armedia.commons.jmeter.gherkin.jbehave.steps.example", 3);
+		GherkinWarmupTest.COUNTED.set(0);
+		GherkinWarmup.addStory("story", GherkinWarmupTest.STORY);
+		counting.testStarted();
+		other.testStarted();
+		try {
+			// Nothing is performed until a thread pairs the story with the configuration in its scope
+			Assertions.assertEquals(0, GherkinWarmupTest.COUNTED.get());
+
+			JBehaveEngine engine = GherkinWarmupTest.newEngine(other);
+			GherkinWarmup.warmup(engine, "story", GherkinWarmupTest.STORY);
+			Assertions.assertEquals(0, GherkinWarmupTest.COUNTED.get());
+
+			engine = GherkinWarmupTest.newEngine(counting);
+			GherkinWarmup.warmup(engine, "story", GherkinWarmupTest.STORY);
+			Assertions.assertEquals(2, GherkinWarmupTest.COUNTED.get());
+			// The warm-up isn't part of the test, so its steps aren't timed, nor its runs counted...
+			Assertions.assertTrue(StepLatencies.snapshot().isEmpty());
+			final GherkinMetrics metrics = GherkinConfig.METRICS.get(counting.getInstanceId());
+			Assertions.assertEquals(0, metrics.getRuns());
+			// ... but its parsing is, since that's where it's done
+			Assertions.assertEquals(1, metrics.getStoryParses());
+
+			// ... and only once
+			GherkinWarmup.warmup(GherkinWarmupTest.newEngine(counting), "story", GherkinWarmupTest.STORY);
+			Assertions.assertEquals(2, GherkinWarmupTest.COUNTED.get());
+
+			// Stories which weren't registered when the test started aren't warmed up
+			GherkinWarmup.warmup(engine, "story", GherkinWarmupTest.STORY + "Given a counted step\n");
+			Assertions.assertEquals(2, GherkinWarmupTest.COUNTED.get());
+		} finally {
+			counting.testEnded();
+			other.testEnded();
+		}
+	}
+
+	@Test
+	public void testStoryAfterConfig() {
+		final GherkinConfig counting = GherkinWarmupTest.newConfig("late",
+			GherkinWarmupTest.class.getPackage().getName(), 1);
+		GherkinWarmupTest.COUNTED.set(0);
+		counting.testStarted();
+		try {
+			GherkinWarmup.addStory("late story", GherkinWarmupTest.STORY);
+			GherkinWarmup.warmup(GherkinWarmupTest.newEngine(counting), "late story", GherkinWarmupTest.STORY);
+			Assertions.assertEquals(1, GherkinWarmupTest.COUNTED.get());
+		} finally {
+			counting.testEnded();
+		}
+
+		// Once the test ends, there's nothing left to warm up against
+		GherkinWarmup.warmup(GherkinWarmupTest.newEngine(counting), "late story", GherkinWarmupTest.STORY);
+		Assertions.assertEquals(1, GherkinWarmupTest.COUNTED.get());
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.plugins.gherkin.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.armedia.commons.jmeter.gherkin.jbehave.JBehaveRunner;
+
+public class JBehaveEngineTest {
+
+	private static final String STORY = "Scenario: Preparing\n\nGiven a counted step\n";
+
+	@Test
+	public void testPreparedStories() throws Exception {
+		GherkinConfig config = new GherkinConfig();
+		config.setPackages(JBehaveEngineTest.class.getPackage().getName());
+		try (JBehaveEngine engine = new JBehaveEngine()) {
+			engine.init(config);
+			final JBehaveRunner.PreparedStory prepared = engine.prepareStory("story", JBehaveEngineTest.STORY);
+			Assertions.assertSame(prepared, engine.prepareStory("story", JBehaveEngineTest.STORY));
+			Assertions.assertNotSame(prepared, engine.prepareStory("other", JBehaveEngineTest.STORY));
+
+			// Changing the settings discards what was prepared with the prior ones
+			engine.setFailOnPending(!engine.isFailOnPending());
+			final JBehaveRunner.PreparedStory changed = engine.prepareStory("story", JBehaveEngineTest.STORY);
+			Assertions.assertNotSame(prepared, changed);
+			Assertions.assertEquals(engine.isFailOnPending(), changed.getSettings().isFailOnPending());
+			Assertions.assertSame(changed, engine.prepareStory("story", JBehaveEngineTest.STORY));
+
+			// ... including whether the step latencies are recorded
+			engine.setRecordLatencies(false);
+			final JBehaveRunner.PreparedStory unrecorded = engine.prepareStory("story", JBehaveEngineTest.STORY);
+			Assertions.assertFalse(unrecorded.getSettings().isRecordLatencies());
+			engine.setRecordLatencies(true);
+			Assertions.assertTrue(engine.prepareStory("story", JBehaveEngineTest.STORY).getSettings().isRecordLatencies());
+		}
+	}
+}
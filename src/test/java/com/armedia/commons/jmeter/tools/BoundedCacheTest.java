@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.concurrent.ConcurrentException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testConstructor() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(-1));
+		Assertions.assertEquals(10, new BoundedCache<>(10).getMaxSize());
+	}
+
+	@Test
+	public void testComputeIfAbsent() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10);
+		AtomicInteger calls = new AtomicInteger(0);
+		for (int i = 0; i < 5; i++) {
+			Assertions.assertEquals("value", cache.computeIfAbsent("key", () -> {
+				calls.incrementAndGet();
+				return "value";
+			}));
+		}
+		Assertions.assertEquals(1, calls.get());
+		BoundedCache.Stats stats = cache.getStats();
+		Assertions.assertEquals(1, stats.getSize());
+		Assertions.assertEquals(4, stats.getHits());
+		Assertions.assertEquals(1, stats.getMisses());
+		Assertions.assertEquals(0, stats.getEvictions());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<>(3);
+		for (int i = 0; i < 3; i++) {
+			final int v = i;
+			cache.computeIfAbsent(i, () -> v);
+		}
+		// Touch 0 so 1 becomes the eldest
+		Assertions.assertEquals(Integer.valueOf(0), cache.get(0));
+		cache.computeIfAbsent(3, () -> 3);
+		Assertions.assertEquals(3, cache.size());
+		Assertions.assertNull(cache.get(1));
+		Assertions.assertEquals(Integer.valueOf(0), cache.get(0));
+		Assertions.assertEquals(Integer.valueOf(2), cache.get(2));
+		Assertions.assertEquals(Integer.valueOf(3), cache.get(3));
+		Assertions.assertEquals(1, cache.getStats().getEvictions());
+	}
+
+	@Test
+	public void testWeightEviction() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache.Builder<String, String>() //
+			.withMaxSize(100) //
+			.withMaxWeight(10, String::length) //
+			.build();
+		cache.computeIfAbsent("a", () -> "aaaa");
+		cache.computeIfAbsent("b", () -> "bbbb");
+		Assertions.assertEquals(8, cache.getStats().getWeight());
+		cache.computeIfAbsent("c", () -> "cccc");
+		Assertions.assertEquals(2, cache.size());
+		Assertions.assertNull(cache.get("a"));
+		Assertions.assertEquals(8, cache.getStats().getWeight());
+
+		// A value heavier than the whole cache is still returned, and kept until the next one
+		Assertions.assertEquals("xxxxxxxxxxxx", cache.computeIfAbsent("x", () -> "xxxxxxxxxxxx"));
+		Assertions.assertEquals(1, cache.size());
+		Assertions.assertTrue(cache.remove("x"));
+		Assertions.assertEquals(0, cache.getStats().getWeight());
+	}
+
+	@Test
+	public void testLfuEviction() throws Exception {
+		BoundedCache<Integer, Integer> cache = new BoundedCache.Builder<Integer, Integer>() //
+			.withMaxSize(3) //
+			.withPolicy(BoundedCache.Policy.LFU) //
+			.build();
+		for (int i = 0; i < 3; i++) {
+			final int v = i;
+			cache.computeIfAbsent(i, () -> v);
+		}
+		// 0 is the least recently used, but 1 is the least frequently used
+		cache.get(0);
+		cache.get(0);
+		cache.get(2);
+		cache.get(1);
+		cache.get(2);
+		cache.computeIfAbsent(3, () -> 3);
+		Assertions.assertNull(cache.get(1));
+		Assertions.assertEquals(Integer.valueOf(0), cache.get(0));
+		Assertions.assertEquals(1, cache.getStats().getEvictions());
+	}
+
+	@Test
+	public void testIdleExpiration() throws Exception {
+		AtomicLong now = new AtomicLong(0);
+		BoundedCache<String, String> cache = new BoundedCache.Builder<String, String>() //
+			.withMaxSize(10) //
+			.withMaxIdle(10, TimeUnit.NANOSECONDS) //
+			.withTicker(now::get) //
+			.build();
+		cache.computeIfAbsent("a", () -> "A");
+		cache.computeIfAbsent("b", () -> "B");
+		now.set(8);
+		Assertions.assertEquals("B", cache.get("b"));
+		now.set(15);
+		Assertions.assertNull(cache.get("a"));
+		Assertions.assertEquals("B", cache.get("b"));
+		Assertions.assertEquals(1, cache.size());
+		Assertions.assertEquals(1, cache.getStats().getEvictions());
+	}
+
+	@Test
+	public void testEvictionDoesNotAffectHolders() throws Exception {
+		BoundedCache<Integer, Object> cache = new BoundedCache<>(1);
+		Object held = cache.computeIfAbsent(0, Object::new);
+		cache.computeIfAbsent(1, Object::new);
+		Assertions.assertNull(cache.get(0));
+		// A fresh value is computed for the evicted key, and the held one remains usable
+		Object fresh = cache.computeIfAbsent(0, Object::new);
+		Assertions.assertNotSame(held, fresh);
+		Assertions.assertNotNull(held.toString());
+	}
+
+	@Test
+	public void testFailuresAreNotCached() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10);
+		Assertions.assertThrows(ConcurrentException.class, () -> cache.computeIfAbsent("key", () -> {
+			throw new ConcurrentException(new Exception("boom"));
+		}));
+		Assertions.assertThrows(IllegalStateException.class, () -> cache.computeIfAbsent("key", () -> {
+			throw new IllegalStateException("boom");
+		}));
+		Assertions.assertEquals(0, cache.size());
+		Assertions.assertEquals("value", cache.computeIfAbsent("key", () -> "value"));
+	}
+
+	@Test
+	public void testRemoveAndClear() throws Exception {
+		BoundedCache<String, String> cache = new BoundedCache<>(10);
+		cache.computeIfAbsent("a", () -> "A");
+		cache.computeIfAbsent("b", () -> "B");
+		Assertions.assertFalse(cache.remove(null));
+		Assertions.assertFalse(cache.remove("c"));
+		Assertions.assertTrue(cache.remove("a"));
+		Assertions.assertEquals(1, cache.size());
+		cache.clear();
+		Assertions.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testConcurrentComputation() throws Exception {
+		final BoundedCache<String, Object> cache = new BoundedCache<>(10);
+		final AtomicInteger calls = new AtomicInteger(0);
+		final int threads = 16;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return cache.computeIfAbsent("key", () -> {
+						calls.incrementAndGet();
+						return new Object();
+					});
+				}));
+			}
+			start.countDown();
+			Object first = null;
+			for (Future<Object> f : futures) {
+				Object o = f.get();
+				if (first == null) {
+					first = o;
+				}
+				Assertions.assertSame(first, o);
+			}
+			Assertions.assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentMemoTest {
+
+	@Test
+	public void testConstructor() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentMemo<>(0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentMemo<>(-1));
+		Assertions.assertEquals(10, new ConcurrentMemo<>(10).getMaxSize());
+	}
+
+	@Test
+	public void testComputeIfAbsent() {
+		ConcurrentMemo<String, String> memo = new ConcurrentMemo<>(10);
+		AtomicInteger calls = new AtomicInteger(0);
+		for (int i = 0; i < 5; i++) {
+			Assertions.assertEquals("value", memo.computeIfAbsent("key", (k) -> {
+				calls.incrementAndGet();
+				return "value";
+			}));
+		}
+		Assertions.assertEquals(1, calls.get());
+		// Null values aren't memoized
+		Assertions.assertNull(memo.computeIfAbsent("null", (k) -> null));
+		Assertions.assertNull(memo.get("null"));
+
+		BoundedCache.Stats stats = memo.getStats();
+		Assertions.assertEquals(1, stats.getSize());
+		Assertions.assertEquals(4, stats.getHits());
+		Assertions.assertEquals(3, stats.getMisses());
+	}
+
+	@Test
+	public void testPut() {
+		ConcurrentMemo<String, String> memo = new ConcurrentMemo<>(10);
+		Assertions.assertEquals("a", memo.put("key", "a"));
+		// The first value wins
+		Assertions.assertEquals("a", memo.put("key", "b"));
+		Assertions.assertEquals("a", memo.get("key"));
+		Assertions.assertThrows(NullPointerException.class, () -> memo.put("key", null));
+		memo.clear();
+		Assertions.assertEquals(0, memo.size());
+	}
+
+	@Test
+	public void testBound() {
+		ConcurrentMemo<Integer, Integer> memo = new ConcurrentMemo<>(5);
+		for (int i = 0; i < 100; i++) {
+			memo.put(i, i);
+			Assertions.assertTrue(memo.size() <= 5);
+		}
+		Assertions.assertEquals(95, memo.getStats().getEvictions());
+	}
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * <p>
+ * A trivial script engine for tests: a script which names a binding evaluates to its value, the
+ * script {@code engine} evaluates to the engine itself, a script of the form
+ * {@code map.key=name} stores the value of the binding {@code name} into the map bound as
+ * {@code map}, and any other script evaluates to its own source.
+ * </p>
+ */
+public class EchoScriptEngineFactory implements ScriptEngineFactory {
+
+	public static final class Confined extends EchoScriptEngineFactory {
+		public Confined() {
+			super("echo-confined", null);
+		}
+	}
+
+	private static final class Engine extends AbstractScriptEngine implements Compilable {
+		private final ScriptEngineFactory factory;
+
+		private Engine(ScriptEngineFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Object eval(String script, ScriptContext context) {
+			if ("engine".equals(script)) { return this; }
+			Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+			if (bindings == null) { return script; }
+			if (bindings.containsKey(script)) { return bindings.get(script); }
+			final int dot = script.indexOf('.');
+			final int eq = script.indexOf('=');
+			if ((dot > 0) && (eq > dot)) {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> map = Map.class.cast(bindings.get(script.substring(0, dot)));
+				map.put(script.substring(dot + 1, eq), bindings.get(script.substring(eq + 1)));
+				return map;
+			}
+			return script;
+		}
+
+		@Override
+		public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+			try {
+				return eval(IOUtils.toString(reader), context);
+			} catch (IOException e) {
+				throw new ScriptException(e);
+			}
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return this.factory;
+		}
+
+		@Override
+		public CompiledScript compile(String script) {
+			return new CompiledScript() {
+				@Override
+				public Object eval(ScriptContext context) {
+					return Engine.this.eval(script, context);
+				}
+
+				@Override
+				public ScriptEngine getEngine() {
+					return Engine.this;
+				}
+			};
+		}
+
+		@Override
+		public CompiledScript compile(Reader script) throws ScriptException {
+			try {
+				return compile(IOUtils.toString(script));
+			} catch (IOException e) {
+				throw new ScriptException(e);
+			}
+		}
+	}
+
+	private final String name;
+	private final String threading;
+
+	public EchoScriptEngineFactory() {
+		this("echo", "MULTITHREADED");
+	}
+
+	protected EchoScriptEngineFactory(String name, String threading) {
+		this.name = name;
+		this.threading = threading;
+	}
+
+	@Override
+	public String getEngineName() {
+		return this.name;
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return "1.0";
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getNames() {
+		return Collections.singletonList(this.name);
+	}
+
+	@Override
+	public String getLanguageName() {
+		return this.name;
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return "1.0";
+	}
+
+	@Override
+	public Object getParameter(String key) {
+		switch (key) {
+			case ScriptEngine.NAME:
+			case ScriptEngine.ENGINE:
+			case ScriptEngine.LANGUAGE:
+				return this.name;
+			case ScriptEngine.ENGINE_VERSION:
+			case ScriptEngine.LANGUAGE_VERSION:
+				return "1.0";
+			case "THREADING":
+				return this.threading;
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public String getMethodCallSyntax(String obj, String m, String... args) {
+		return m;
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return toDisplay;
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		return String.join("\n", statements);
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new Engine(this);
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.SimpleBindings;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class JSR223ScriptTest {
+
+	private static JSR223Script build(String language, String source) throws Exception {
+		return new JSR223Script.Builder().withLanguage(language).withSource(source).build();
+	}
+
+	@Test
+	public void testExecute() throws Exception {
+		JSR223Script script = JSR223ScriptTest.build("echo", "value");
+		Assertions.assertEquals("value", script.execute(new SimpleBindings()));
+		SimpleBindings bindings = new SimpleBindings();
+		bindings.put("value", 42);
+		Assertions.assertEquals(42, script.execute(bindings));
+		Assertions.assertSame(script, JSR223ScriptTest.build("echo", "value"));
+	}
+
+	@Test
+	public void testAcquireRelease() throws Exception {
+		JSR223Script script = JSR223ScriptTest.build("echo", "acquired");
+		Assertions.assertSame(script, script.acquire());
+		script.acquire();
+		Assertions.assertEquals(2, script.getReferences());
+
+		// Purging doesn't affect scripts which are in use
+		JSR223Script.purge(script.getCacheKey());
+		Assertions.assertSame(script, JSR223ScriptTest.build("echo", "acquired"));
+		Assertions.assertSame(script, JSR223Script.getInstance(script.getCacheKey()));
+
+		script.release();
+		JSR223Script.purge(script.getCacheKey());
+		Assertions.assertSame(script, JSR223ScriptTest.build("echo", "acquired"));
+
+		// Once the last user is gone, the script may be dropped
+		script.release();
+		Assertions.assertEquals(0, script.getReferences());
+		Assertions.assertThrows(IllegalStateException.class, script::release);
+		JSR223Script.purge(script.getCacheKey());
+		Assertions.assertNotSame(script, JSR223ScriptTest.build("echo", "acquired"));
+	}
+
+	private static Object[] getEngines(JSR223Script script) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Object a = executor.submit(() -> script.execute(new SimpleBindings())).get();
+			Object b = executor.submit(() -> script.execute(new SimpleBindings())).get();
+			Object c = executor.submit(() -> script.execute(new SimpleBindings())).get();
+			return new Object[] {
+				a, b, c
+			};
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testThreading() throws Exception {
+		JSR223Script shared = JSR223ScriptTest.build("echo", "engine");
+		Assertions.assertFalse(shared.isThreadConfined());
+		Object[] engines = JSR223ScriptTest.getEngines(shared);
+		Assertions.assertSame(engines[0], engines[1]);
+		Assertions.assertSame(engines[0], engines[2]);
+
+		JSR223Script confined = JSR223ScriptTest.build("echo-confined", "engine");
+		Assertions.assertTrue(confined.isThreadConfined());
+		engines = JSR223ScriptTest.getEngines(confined);
+		Assertions.assertNotSame(engines[0], engines[1]);
+		// Each thread keeps its own engine
+		Assertions.assertTrue((engines[2] == engines[0]) || (engines[2] == engines[1]));
+	}
+
+	@Test
+	public void testThreadSafeLanguages() throws Exception {
+		final String previous = System.getProperty(JSR223Script.THREAD_SAFE_LANGUAGES);
+		try {
+			// Engines which don't declare their threading can be declared safe by name
+			System.setProperty(JSR223Script.THREAD_SAFE_LANGUAGES, "other, ECHO-confined");
+			JSR223Script script = JSR223ScriptTest.build("echo-confined", "engine " + System.nanoTime());
+			Assertions.assertFalse(script.isThreadConfined());
+
+			System.setProperty(JSR223Script.THREAD_SAFE_LANGUAGES, "other");
+			script = JSR223ScriptTest.build("echo-confined", "engine " + System.nanoTime());
+			Assertions.assertTrue(script.isThreadConfined());
+
+			// JEXL3 doesn't declare its threading either, but is known to be safe unless told otherwise
+			final EchoScriptEngineFactory jexl = new EchoScriptEngineFactory("JEXL3", null) {
+			};
+			Assertions.assertFalse(JSR223Script.isThreadSafe(jexl));
+			System.clearProperty(JSR223Script.THREAD_SAFE_LANGUAGES);
+			Assertions.assertTrue(JSR223Script.isThreadSafe(jexl));
+			Assertions.assertFalse(JSR223Script.isThreadSafe(new EchoScriptEngineFactory.Confined()));
+		} finally {
+			if (previous != null) {
+				System.setProperty(JSR223Script.THREAD_SAFE_LANGUAGES, previous);
+			} else {
+				System.clearProperty(JSR223Script.THREAD_SAFE_LANGUAGES);
+			}
+		}
+	}
+
+	@Test
+	public void testCompilations() throws Exception {
+		JSR223Script script = JSR223ScriptTest.build("echo", "compiled once");
+		long before = JSR223Script.getCompilations();
+		for (int i = 0; i < 5; i++) {
+			script.execute(new SimpleBindings());
+		}
+		Assertions.assertEquals(before + 1, JSR223Script.getCompilations());
+		Assertions.assertTrue(JSR223Script.getCacheStats().getSize() > 0);
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testConstructor() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(0));
+		Assertions.assertEquals(1, new LatencyHistogram(1).getStripes());
+		Assertions.assertEquals(4, new LatencyHistogram(3).getStripes());
+		Assertions.assertEquals(8, new LatencyHistogram(8).getStripes());
+	}
+
+	@Test
+	public void testRecord() {
+		LatencyHistogram histogram = new LatencyHistogram(4);
+		LatencyHistogram.Snapshot empty = histogram.snapshot();
+		Assertions.assertEquals(0, empty.getCount());
+		Assertions.assertEquals(0, empty.getMin());
+		Assertions.assertEquals(0, empty.getValueAtPercentile(50));
+
+		// 1..100,000 microseconds
+		long sum = 0;
+		for (long i = 1; i <= 100_000; i++) {
+			histogram.record(i * 1000);
+			sum += (i * 1000);
+		}
+		LatencyHistogram.Snapshot s = histogram.snapshot();
+		Assertions.assertEquals(100_000, s.getCount());
+		Assertions.assertEquals(sum, s.getSum());
+		Assertions.assertEquals(1000, s.getMin());
+		Assertions.assertEquals(100_000_000, s.getMax());
+		for (double p : new double[] {
+			1, 10, 50, 90, 99, 99.9
+		}) {
+			final double expected = p * 1_000_000;
+			final double actual = s.getValueAtPercentile(p);
+			Assertions.assertEquals(expected, actual, expected * 0.04, "p" + p);
+		}
+		Assertions.assertEquals(s.getMax(), s.getValueAtPercentile(100));
+
+		// Small values are exact, and huge ones are still counted
+		histogram.reset();
+		Assertions.assertEquals(0, histogram.snapshot().getCount());
+		histogram.record(7);
+		histogram.record(-1);
+		histogram.record(Long.MAX_VALUE);
+		s = histogram.snapshot();
+		Assertions.assertEquals(3, s.getCount());
+		Assertions.assertEquals(0, s.getMin());
+		Assertions.assertEquals(7, s.getValueAtPercentile(50));
+		Assertions.assertEquals(Long.MAX_VALUE, s.getMax());
+	}
+
+	@Test
+	public void testConcurrentRecord() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int threads = 8;
+		final int values = 100_000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < values; i++) {
+						histogram.record(i);
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		LatencyHistogram.Snapshot s = histogram.snapshot();
+		Assertions.assertEquals((long) threads * values, s.getCount());
+		Assertions.assertEquals(threads * (((long) values * (values - 1)) / 2), s.getSum());
+		Assertions.assertEquals(0, s.getMin());
+		Assertions.assertEquals(values - 1, s.getMax());
+	}
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReportWriterTest {
+
+	private static String read(ReportWriter.Reference ref) throws IOException {
+		try (FileChannel channel = FileChannel.open(ref.getFile(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(ref.getLength());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, ref.getOffset() + buffer.position()) < 0) {
+					break;
+				}
+			}
+			return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testBuilder(@TempDir Path dir) throws Exception {
+		Assertions.assertThrows(NullPointerException.class, () -> new ReportWriter.Builder().build());
+		Assertions.assertThrows(IllegalArgumentException.class,
+			() -> new ReportWriter.Builder().withDirectory(dir).withQueueSize(0).build());
+		Assertions.assertThrows(IllegalArgumentException.class,
+			() -> new ReportWriter.Builder().withDirectory(dir).withMaxFileSize(0).build());
+	}
+
+	@Test
+	public void testWriteAndRotate(@TempDir Path dir) throws Exception {
+		List<ReportWriter.Reference> refs = new ArrayList<>();
+		ReportWriter writer = new ReportWriter.Builder() //
+			.withDirectory(dir.resolve("reports")) //
+			.withNames("test", ".txt") //
+			.withMaxFileSize(100) //
+			.withBackpressure(ReportWriter.Backpressure.BLOCK, 1) //
+			.build();
+		try {
+			for (int i = 0; i < 50; i++) {
+				refs.add(writer.write(String.format("report #%02d\n", i).getBytes(StandardCharsets.UTF_8)));
+			}
+		} finally {
+			writer.close();
+		}
+		Assertions.assertThrows(IllegalStateException.class, () -> writer.write(new byte[1]));
+		// Closing again is harmless
+		writer.close();
+
+		for (int i = 0; i < refs.size(); i++) {
+			ReportWriter.Reference ref = refs.get(i);
+			Assertions.assertNotNull(ref);
+			Assertions.assertEquals(String.format("report #%02d\n", i), ReportWriterTest.read(ref));
+			Assertions.assertTrue((ref.getOffset() + ref.getLength()) <= 100, ref.toString());
+		}
+		// 11 bytes each, so 9 reports per file
+		Assertions.assertEquals(writer.getFile(1), refs.get(0).getFile());
+		Assertions.assertEquals(writer.getFile(2), refs.get(9).getFile());
+		Assertions.assertTrue(Files.exists(writer.getFile(6)));
+		Assertions.assertFalse(Files.exists(writer.getFile(7)));
+
+		ReportWriter.Stats stats = writer.getStats();
+		Assertions.assertEquals(50, stats.getQueued());
+		Assertions.assertEquals(50, stats.getWritten());
+		Assertions.assertEquals(0, stats.getDropped());
+		Assertions.assertEquals(550, stats.getBytes());
+		Assertions.assertEquals(6, stats.getFiles());
+		Assertions.assertEquals(0, stats.getPending());
+	}
+
+	@Test
+	public void testRuns(@TempDir Path dir) throws Exception {
+		// Writers started one after the other in the same directory never share their files
+		List<ReportWriter.Reference> refs = new ArrayList<>();
+		List<Path> directories = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			try (ReportWriter writer = new ReportWriter.Builder() //
+				.withDirectory(dir) //
+				.withBackpressure(ReportWriter.Backpressure.BLOCK, 1) //
+				.build()) {
+				Assertions.assertEquals(dir, writer.getDirectory().getParent());
+				Assertions.assertFalse(directories.contains(writer.getDirectory()));
+				directories.add(writer.getDirectory());
+				refs.add(writer.write(String.format("run #%d\n", i).getBytes(StandardCharsets.UTF_8)));
+			}
+		}
+		for (int i = 0; i < refs.size(); i++) {
+			Assertions.assertEquals(String.format("run #%d\n", i), ReportWriterTest.read(refs.get(i)));
+		}
+	}
+
+	@Test
+	public void testCloseInterrupted(@TempDir Path dir) throws Exception {
+		ReportWriter writer = new ReportWriter.Builder().withDirectory(dir).build();
+		Thread.currentThread().interrupt();
+		try {
+			writer.close();
+			Assertions.assertTrue(Thread.interrupted());
+		} finally {
+			// Clear the flag even if the assertion failed
+			Thread.interrupted();
+		}
+		Assertions.assertThrows(IllegalStateException.class, () -> writer.write(new byte[1]));
+	}
+
+	@Test
+	public void testBackpressure(@TempDir Path dir) throws Exception {
+		for (ReportWriter.Backpressure backpressure : ReportWriter.Backpressure.values()) {
+			final byte[] data = new byte[4096];
+			final ReportWriter writer = new ReportWriter.Builder() //
+				.withDirectory(dir.resolve(backpressure.name())) //
+				.withQueueSize(4) //
+				.withBackpressure(backpressure, 3) //
+				.build();
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<Integer>> futures = new ArrayList<>();
+			try {
+				for (int t = 0; t < 4; t++) {
+					futures.add(executor.submit(() -> {
+						int kept = 0;
+						for (int i = 0; i < 500; i++) {
+							if (writer.write(data) != null) {
+								kept++;
+							}
+						}
+						return kept;
+					}));
+				}
+				int kept = 0;
+				for (Future<Integer> f : futures) {
+					kept += f.get();
+				}
+				writer.close();
+
+				ReportWriter.Stats stats = writer.getStats();
+				Assertions.assertEquals(kept, stats.getQueued(), backpressure.name());
+				Assertions.assertEquals(kept, stats.getWritten(), backpressure.name());
+				Assertions.assertEquals(2000 - kept, stats.getDropped(), backpressure.name());
+				if (backpressure == ReportWriter.Backpressure.BLOCK) {
+					Assertions.assertEquals(2000, kept);
+				}
+			} finally {
+				executor.shutdownNow();
+				writer.close();
+			}
+		}
+	}
+}
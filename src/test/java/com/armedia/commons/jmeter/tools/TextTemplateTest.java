@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TextTemplateTest {
+
+	@Test
+	public void testConstant() throws Exception {
+		String text = "Given a story with no expressions\nThen nothing is evaluated";
+		TextTemplate template = TextTemplate.compile(text);
+		Assertions.assertTrue(template.isConstant());
+		Assertions.assertEquals(Collections.singletonList(text), template.getLiterals());
+		// No script engine is needed to evaluate these
+		Assertions.assertSame(text, template.evaluate(null));
+
+		// Escaped and unterminated expressions are literal text
+		template = TextTemplate.compile("a \\${b} c ${d");
+		Assertions.assertTrue(template.isConstant());
+		Assertions.assertEquals("a ${b} c ${d", template.evaluate(null));
+	}
+
+	@Test
+	public void testSegments() {
+		TextTemplate template = TextTemplate.compile("Given ${user} logs in as #{args[0]} with ${ {'a':'}'}.a }!");
+		Assertions.assertFalse(template.isConstant());
+		Assertions.assertEquals(Arrays.asList("user", "args[0]", " {'a':'}'}.a "), template.getExpressions());
+		Assertions.assertEquals(Arrays.asList("Given ", " logs in as ", " with ", "!"), template.getLiterals());
+		Assertions.assertEquals(Arrays.asList("", ""), TextTemplate.compile("${x}").getLiterals());
+	}
+
+	@Test
+	public void testCache() {
+		String text = "Cached ${template}";
+		BoundedCache.Stats before = TextTemplate.getCacheStats();
+		TextTemplate a = TextTemplate.compile(text);
+		Assertions.assertSame(a, TextTemplate.compile(new String(text)));
+		BoundedCache.Stats after = TextTemplate.getCacheStats();
+		Assertions.assertTrue(after.getHits() > before.getHits());
+	}
+}
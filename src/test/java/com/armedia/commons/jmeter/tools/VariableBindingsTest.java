@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * #%L
+ * Armedia JMeter Gherkin Plugin
+ * %%
+ * Copyright (C) 2020 Armedia, LLC
+ * %%
+ * This file is part of the Armedia JMeter Gherkin Plugin software.
+ *
+ * If the software was purchased under a paid Armedia JMeter Gherkin Plugin
+ * license, the terms of the paid license agreement will prevail.  Otherwise,
+ * the software is provided under the following open source license terms:
+ *
+ * Armedia JMeter Gherkin Plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Armedia JMeter Gherkin Plugin is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Armedia JMeter Gherkin Plugin. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ *******************************************************************************/
+package com.armedia.commons.jmeter.tools;
+
+import javax.script.Bindings;
+
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VariableBindingsTest {
+
+	@Test
+	public void testLookups() {
+		JMeterVariables vars = new JMeterVariables();
+		vars.put("user", "alice");
+		vars.putObject("count", 3);
+
+		Bindings bindings = new VariableBindings(vars);
+		Assertions.assertEquals("alice", bindings.get("user"));
+		Assertions.assertEquals(3, bindings.get("count"));
+		Assertions.assertTrue(bindings.containsKey("user"));
+		Assertions.assertFalse(bindings.containsKey("missing"));
+		Assertions.assertNull(bindings.get("missing"));
+
+		// Variables are resolved when looked up, not when the bindings are created
+		vars.put("late", "value");
+		Assertions.assertEquals("value", bindings.get("late"));
+		Assertions.assertEquals(vars.entrySet().size(), bindings.size());
+
+		Assertions.assertThrows(NullPointerException.class, () -> bindings.get(null));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> bindings.put("", "x"));
+	}
+
+	@Test
+	public void testOverrides() {
+		JMeterVariables vars = new JMeterVariables();
+		vars.put("user", "alice");
+		vars.put("role", "admin");
+
+		Bindings bindings = new VariableBindings(vars);
+		Assertions.assertEquals("alice", bindings.put("user", "bob"));
+		Assertions.assertEquals("bob", bindings.get("user"));
+		Assertions.assertNull(bindings.put("args", new String[0]));
+		Assertions.assertTrue(bindings.containsKey("args"));
+		Assertions.assertEquals("admin", bindings.remove("role"));
+		Assertions.assertFalse(bindings.containsKey("role"));
+		Assertions.assertFalse(bindings.entrySet().stream().anyMatch((e) -> "role".equals(e.getKey())));
+
+		// The variables themselves are never modified
+		Assertions.assertEquals("alice", vars.get("user"));
+		Assertions.assertEquals("admin", vars.get("role"));
+		Assertions.assertNull(vars.getObject("args"));
+
+		bindings.clear();
+		Assertions.assertTrue(bindings.isEmpty());
+		Assertions.assertNull(bindings.get("user"));
+
+		// Without variables, only the overrides are visible
+		Bindings empty = new VariableBindings(null);
+		Assertions.assertTrue(empty.isEmpty());
+		empty.put("a", 1);
+		Assertions.assertEquals(1, empty.get("a"));
+		Assertions.assertEquals(1, empty.size());
+	}
+}